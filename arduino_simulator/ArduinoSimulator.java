@@ -1,11 +1,14 @@
 package arduino_simulator;
 
 import arduino_simulator.sensors.Sensor;
+import driver_framework.FrameworkThread;
+import driver_framework.FrameworkUtils;
+import driver_framework.response.SensorFrameReader;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -13,8 +16,13 @@ import java.util.logging.Logger;
  * Usage recommendations:
  * 1. Configure Arduino ( set appropriate Sensor, baud rate and connect )
  * 2. Start Arduino {arduinoInstance.start()} making run simulator on a separate thread
+ *
+ * Frames ( readings of all sensors, optionally framed, see setFraming ) are paced the way a serial line would pace them:
+ * a frame takes 10 bits per byte ( start bit + 8 data bits + stop bit ) at the set baud rate, and at most setFrameRate(...) frames are sent each second.
+ * setMaxThroughput(true) drops pacing altogether, frames are written as fast as the reader takes them, several frames per write.
+ * Frames are written from a buffer allocated once on start, sensors write their readings straight into it.
  * */
-public class ArduinoSimulator extends Thread implements ArduinoSimulatorInterface{
+public class ArduinoSimulator extends FrameworkThread implements ArduinoSimulatorInterface{
     private static final String TAG = "ArduinoSimulator";
     Logger logger = Logger.getLogger(TAG);
 
@@ -23,29 +31,39 @@ public class ArduinoSimulator extends Thread implements ArduinoSimulatorInterfac
      * */
     public static final int ANALOG_UPPER_LIMIT = 1023;
     public static final int ANALOG_LOWER_LIMIT = 0;
-    private static final int MAX_ARRAY_LIST_SIZE = 1000;
 
-    private int baud = -1;
+    public static final int BITS_PER_BYTE = 10;//8N1 serial: start bit, 8 data bits, stop bit
+    private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_THROUGHPUT_WRITE_SIZE = 4096;//frames written at once in max throughput mode fill about this many bytes
+
+    private volatile int baud = -1;
+    private volatile int frameRate = 0;//frames per second at most, 0 if only baud rate limits it
+    private volatile boolean maxThroughput = false;
     private PipedInputStream pipedInputStream = null;//sensor input stream
     private PipedOutputStream pipedOutputStream = null;//sensor output stream
     private List<Sensor> sensors = null;
 
-    volatile private LinkedList<LinkedList<byte[]>> sensorDataList = new LinkedList<LinkedList<byte[]>>();
-    private boolean simulatorRunning = true;
+    private volatile boolean simulatorRunning = true;
     private boolean arduinoConnected = false;
 
+    private byte[] syncMarker = new byte[0];//sent before each frame if set
+    private boolean checksum = false;//XOR of frame's data sent after each frame if set
+    private boolean boardTick = false;//microseconds since simulator started sent after sync marker if set, as Arduino's micros()
+    private long startNanos = 0;//board's tick is counted from here
+
+    private byte[] frameBuffer;//frames being written, allocated on start
+    private int framedLength;//bytes of a single frame, framing included
+    private volatile long framesWritten = 0;
+
     public ArduinoSimulator(List<Sensor> sensors){
         this( sensors, 9600);
     }
 
     public ArduinoSimulator(List<Sensor> sensors, int baud){
-        for(int i = 0; i<sensors.size(); ++i)
-            sensorDataList.add(new LinkedList<byte[]>());
-
         this.sensors = sensors;
         this.baud = baud;
 
-        pipedInputStream = new PipedInputStream();
+        pipedInputStream = new PipedInputStream(PIPE_BUFFER_SIZE);
         try {
             pipedOutputStream = new PipedOutputStream(pipedInputStream);
 
@@ -54,8 +72,6 @@ public class ArduinoSimulator extends Thread implements ArduinoSimulatorInterfac
         }
     }
 
-
-    int iter = 0;
     /**
      * will continuously write data to a set output stream
      * */
@@ -67,53 +83,149 @@ public class ArduinoSimulator extends Thread implements ArduinoSimulatorInterfac
             logger.setLevel(Level.WARNING);
             logger.warning("Arduino was not connected before it is started");
         }
+        startNanos = System.nanoTime();
+        allocateFrameBuffer();
 
+        long frameDeadline = startNanos;
         while( simulatorRunning ) {
+            int n_frames = maxThroughput ? frameBuffer.length / framedLength : 1;
+            for( int i = 0; i<n_frames; ++i )
+                writeFrame(i * framedLength);
 
-            //find how long is all the data, add it to the list of new data
-            int all_data_size = 0;
-            ArrayList<byte[]> newDataList = new ArrayList<byte[]>();
-            for( int i = 0; i<sensors.size(); ++i ) {
-                byte[] newData = sensors.get(i).readDataValue();//gives a random number for light sensor for example, this will depend on implementation
-                newDataList.add(newData);
-                all_data_size += newData.length;
-            }
+            writeToOutputStream(frameBuffer, n_frames * framedLength);
+            framesWritten += n_frames;
 
-            //add all data to that previous list
-            //set raw data of all sensors registered
-            byte[] all_raw_data = new byte[all_data_size];
-            int offset = 0;
-            for( int i =0; i<sensors.size(); ++i ){
-                addNewData(newDataList.get(i), i);
-                for( int j = 0; j<newDataList.get(i).length; ++j )
-                    all_raw_data[offset + j] = newDataList.get(i)[j];
+            if( !maxThroughput )
+                frameDeadline = waitForNextFrame(frameDeadline);
+        }
 
-                offset += newDataList.get(i).length;
-            }
+        closeStreams();
+    }
 
-            writeToOutputStream( all_raw_data );
+    /**
+     * frame's length is known once each sensor gave its first reading, readings have the same length afterwards
+     * */
+    private void allocateFrameBuffer() {
+        int dataLength = 0;
+        for( Sensor sensor : sensors )
+            dataLength += sensor.readDataValue().length;
+
+        framedLength = dataLength;
+        if( syncMarker.length > 0 )
+            framedLength += syncMarker.length + (boardTick ? 4 : 0) + (checksum ? 1 : 0);
+        int n_frames = Math.max(1, MAX_THROUGHPUT_WRITE_SIZE / framedLength);
+        frameBuffer = new byte[n_frames * framedLength];
+    }
+
+    /**
+     * reads every sensor into the frame starting at given offset of frame buffer, framing it if set
+     * */
+    private void writeFrame(int offset) {
+        int dataOffset = offset;
+        if( syncMarker.length > 0 ){
+            System.arraycopy(syncMarker, 0, frameBuffer, offset, syncMarker.length);
+            dataOffset += syncMarker.length;
+            if( boardTick ){
+                FrameworkUtils.writeInt(frameBuffer, dataOffset, (int)((System.nanoTime() - startNanos) / 1000));
+                dataOffset += 4;
+            }
+        }
 
-            ++iter;
+        int position = dataOffset;
+        for( Sensor sensor : sensors )
+            position += sensor.readDataValue(frameBuffer, position);
 
+        if( checksum ){
+            int checkedOffset = offset + syncMarker.length;//board tick is checked as well
+            frameBuffer[position] = SensorFrameReader.checksum(frameBuffer, checkedOffset, position - checkedOffset);
         }
+    }
 
-        closeStreams();
+    /**
+     * parks until the next frame is due, deadlines are absolute so pacing doesn't drift.
+     * If reader held simulator back for longer than a frame, missed frames are not caught up on
+     * @return deadline of the frame after the one just written
+     * */
+    private long waitForNextFrame(long frameDeadline) {
+        long framePeriod = getFramePeriodNanos();
+        long now = System.nanoTime();
+        long nextDeadline = frameDeadline + framePeriod;
+        if( nextDeadline < now - framePeriod )
+            nextDeadline = now;
+
+        long remaining;
+        while( simulatorRunning && (remaining = nextDeadline - System.nanoTime()) > 0 )
+            LockSupport.parkNanos(this, remaining);
+        return nextDeadline;
+    }
+
+    /**
+     * @return time a single frame takes at the set baud and frame rate, in nanoseconds
+     * */
+    public long getFramePeriodNanos() {
+        long period = baud > 0 ? framedLength * BITS_PER_BYTE * 1_000_000_000L / baud : 0;
+        if( frameRate > 0 )
+            period = Math.max(period, 1_000_000_000L / frameRate);
+        return period;
     }
 
     /**
-     * adds new data with respect to limit, using linked list to keep these times constant
+     * sets how many frames are sent each second at most, baud rate still applies. 0 for no limit other than baud rate
      * */
-    private void addNewData(byte[] newData, int i) {
-        if( sensorDataList.get(i).size() == MAX_ARRAY_LIST_SIZE )
-            sensorDataList.get(i).removeFirst();
+    public void setFrameRate(int frameRate) {
+        this.frameRate = Math.max(frameRate, 0);
+    }
+
+    public int getFrameRate() {
+        return frameRate;
+    }
 
-        sensorDataList.get(i).addLast(newData);
+    /**
+     * ignores baud and frame rate, frames are written as fast as the reader takes them. Used for stress tests and benchmarks
+     * */
+    public void setMaxThroughput(boolean maxThroughput) {
+        this.maxThroughput = maxThroughput;
     }
 
+    public boolean isMaxThroughput() {
+        return maxThroughput;
+    }
 
-    private void writeToOutputStream(byte[] newData) {
+    /**
+     * @return frames written since simulator started
+     * */
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    /**
+     * makes simulator send sync marker before and optionally a checksum ( XOR of all data bytes ) after each frame, call before starting it
+     * @param syncMarker bytes sent before each frame, null or empty for none
+     * @param checksum if true, XOR of all data bytes is sent after each frame. Only sent if sync marker is set
+     * @see driver_framework.response.SensorFrameReader
+     * */
+    public void setFraming(byte[] syncMarker, boolean checksum) {
+        setFraming(syncMarker, checksum, false);
+    }
+
+    /**
+     * same as above, optionally sending board's tick ( microseconds since simulator started, 4 bytes big endian, wraps around ) after the sync marker.
+     * Checksum covers the tick as well
+     * @see driver_framework.response.SampleTimestamps
+     * */
+    public void setFraming(byte[] syncMarker, boolean checksum, boolean boardTick) {
+        this.syncMarker = syncMarker == null ? new byte[0] : syncMarker;
+        this.checksum = checksum && this.syncMarker.length > 0;
+        this.boardTick = boardTick && this.syncMarker.length > 0;
+    }
+
+    /**
+     * writes frames and flushes them, reader waiting for data is only woken up by flushing
+     * */
+    private void writeToOutputStream(byte[] data, int length) {
         try {
-            pipedOutputStream.write(newData);
+            pipedOutputStream.write(data, 0, length);
+            pipedOutputStream.flush();
         } catch (IOException e) {
             if( e.getMessage().equals("Read end dead")) {
                 //means client disconnected
@@ -144,6 +256,7 @@ public class ArduinoSimulator extends Thread implements ArduinoSimulatorInterfac
      * */
     @Override
     public int serialBegin(int baud) {
+        if( baud <= 0 ) return -1;
         this.baud = baud;
         return this.baud;
     }
@@ -0,0 +1,71 @@
+package arduino_simulator.sensors;
+
+import driver_framework.FrameworkUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * asks the server to aggregate a sensor's samples over a window of time or of a number of samples,
+ * client then gets one READING_SENSOR_DATA_AGGREGATED ( min, max, mean, last and count of values ) per window instead of every sample.
+ *
+ * Encoded window, follows CONFIGURE request if SensorEntry.CONFIGURE_FLAG_AGGREGATED is set = | window type (1 byte) | window size (4 bytes) |
+ * */
+public class AggregationWindow {
+
+    public enum Type{
+        MILLIS((byte)1),//window closes with the first sample taken at least size milliseconds after window opened
+        SAMPLES((byte)2);//window closes once it holds size samples
+
+        private final byte mByte;
+        Type(byte mByte) { this.mByte = mByte; }
+        public byte getValue() { return mByte; }
+
+        public static Type getTypeFromByte(byte typeByte){
+            for( Type type : values() )
+                if( type.mByte == typeByte ) return type;
+            return null;
+        }
+    }
+
+    public static final int AGGREGATION_WINDOW_BYTE_LENGTH = 1 + 4;//type + size
+
+    private final Type type;
+    private final int size;
+
+    public AggregationWindow(Type type, int size) {
+        if( size <= 0 ) throw new IllegalArgumentException("Aggregation window size has to be positive: " + size);
+        this.type = type;
+        this.size = size;
+    }
+
+    public Type getType() {
+        return type;
+    }
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return window as it follows CONFIGURE request, used on client's side
+     * */
+    public byte[] encode(){
+        return ByteBuffer.allocate(AGGREGATION_WINDOW_BYTE_LENGTH).put(type.getValue()).putInt(size).array();
+    }
+
+    /**
+     * reads window encoded by encode()
+     * @return null if window type is unknown, sensor's samples are sent as they are then
+     * */
+    public static AggregationWindow decode(InputStream inputStream) throws IOException {
+        byte[] windowBytes = new byte[AGGREGATION_WINDOW_BYTE_LENGTH];
+        if( FrameworkUtils.readFully(inputStream, windowBytes, 0, windowBytes.length) != windowBytes.length )
+            throw new IOException("Returned -1 while trying to get aggregation window");
+
+        Type type = Type.getTypeFromByte(windowBytes[0]);
+        int size = FrameworkUtils.readInt(windowBytes, 1);
+        if( type == null || size <= 0 ) return null;
+        return new AggregationWindow(type, size);
+    }
+}
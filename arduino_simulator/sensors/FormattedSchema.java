@@ -0,0 +1,195 @@
+package arduino_simulator.sensors;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * names and types of a sensor's formatted values, lets a sensor send them as packed primitives ( READING_SENSOR_DATA_PACKED ) instead of JSON text.
+ * Schema is sent once on CONNECT if client asks for it ( see Request.CONNECT_FLAG_PACKED_FORMATTED_DATA ), after that each sample only carries values,
+ * big endian, in order of fields and with sizes given by their types.
+ *
+ * Usage ( in SensorEntry subclass, schema is built once ):
+ *      private static final FormattedSchema FORMATTED_SCHEMA = new FormattedSchema().addField("lux", FieldType.FLOAT32);
+ *
+ *      public FormattedSchema getFormattedSchema(){
+ *          return FORMATTED_SCHEMA;
+ *      }
+ *
+ * Encoded schema = | n fields (1 byte) | ( field type (1 byte) | name length (1 byte) | name, UTF-8 ) x n |
+ *
+ * @see PackedSink
+ * @see SensorEntry#formatRawData(byte[], PackedSink)
+ * */
+public class FormattedSchema {
+
+    public enum FieldType{
+        INT8((byte)1, 1),
+        INT16((byte)2, 2),
+        INT32((byte)3, 4),
+        INT64((byte)4, 8),
+        FLOAT32((byte)5, 4),
+        FLOAT64((byte)6, 8),
+        BOOLEAN((byte)7, 1);
+
+        private final byte mByte;
+        private final int byteLength;
+        FieldType(byte mByte, int byteLength) {
+            this.mByte = mByte;
+            this.byteLength = byteLength;
+        }
+
+        public byte getValue() {
+            return mByte;
+        }
+
+        /**
+         * @return number of bytes a value of this type takes within a sample
+         * */
+        public int getByteLength() {
+            return byteLength;
+        }
+
+        public boolean isFloatingPoint() {
+            return this == FLOAT32 || this == FLOAT64;
+        }
+
+        public static FieldType getFieldTypeFromByte(byte fieldTypeByte){
+            for( FieldType fieldType : values() )
+                if( fieldType.mByte == fieldTypeByte ) return fieldType;
+            return null;
+        }
+    }
+
+    public static class Field{
+        private final String name;
+        private final FieldType fieldType;
+
+        public Field(String name, FieldType fieldType) {
+            this.name = name;
+            this.fieldType = fieldType;
+        }
+
+        public String getName() {
+            return name;
+        }
+        public FieldType getFieldType() {
+            return fieldType;
+        }
+    }
+
+    private static final int MAX_FIELDS = 255;
+    private static final int MAX_NAME_BYTE_LENGTH = 255;
+
+    private final List<Field> fields = new ArrayList<>();
+    private FieldType[] fieldTypes = new FieldType[0];//type of each field, read for every packed sample
+    private int valuesByteLength = 0;
+    private byte[] encodedSchema = null;//cached, schema doesn't change once it is sent
+
+    public FormattedSchema addField(String name, FieldType fieldType){
+        if( encodedSchema != null ) throw new IllegalStateException("Schema can't change once it has been encoded");
+        if( fields.size() == MAX_FIELDS ) throw new IllegalArgumentException("Schema can't have more than " + MAX_FIELDS + " fields");
+        if( name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_BYTE_LENGTH ) throw new IllegalArgumentException("Field name longer than " + MAX_NAME_BYTE_LENGTH + " bytes: " + name);
+
+        fields.add(new Field(name, fieldType));
+        fieldTypes = Arrays.copyOf(fieldTypes, fields.size());
+        fieldTypes[fields.size() - 1] = fieldType;
+        valuesByteLength += fieldType.getByteLength();
+        return this;
+    }
+
+    public List<Field> getFields() {
+        return Collections.unmodifiableList(fields);
+    }
+
+    public int getFieldCount() {
+        return fieldTypes.length;
+    }
+
+    /**
+     * same as getFields().get(fieldIndex).getFieldType(), without wrapping the fields on every sample
+     * */
+    public FieldType getFieldType(int fieldIndex) {
+        return fieldTypes[fieldIndex];
+    }
+
+    /**
+     * @return number of bytes values of one sample take
+     * */
+    public int getValuesByteLength() {
+        return valuesByteLength;
+    }
+
+    /**
+     * @return schema as it is sent on CONNECT
+     * */
+    public byte[] encode(){
+        if( encodedSchema != null ) return encodedSchema;
+
+        int n_bytes = 1;
+        List<byte[]> names = new ArrayList<>(fields.size());
+        for( Field field : fields ){
+            byte[] name = field.name.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            n_bytes += 2 + name.length;
+        }
+
+        byte[] encoded = new byte[n_bytes];
+        int offset = 0;
+        encoded[offset++] = (byte) fields.size();
+        for( int i = 0; i<fields.size(); ++i ){
+            byte[] name = names.get(i);
+            encoded[offset++] = fields.get(i).fieldType.getValue();
+            encoded[offset++] = (byte) name.length;
+            System.arraycopy(name, 0, encoded, offset, name.length);
+            offset += name.length;
+        }
+
+        encodedSchema = encoded;
+        return encodedSchema;
+    }
+
+    /**
+     * reads schema encoded by encode(), used on client's side
+     * */
+    public static FormattedSchema decode(byte[] data, int offset){
+        FormattedSchema formattedSchema = new FormattedSchema();
+        int n_fields = data[offset++] & 0xFF;
+        for( int i = 0; i<n_fields; ++i ){
+            FieldType fieldType = FieldType.getFieldTypeFromByte(data[offset++]);
+            if( fieldType == null ) throw new IllegalArgumentException("Unknown field type " + data[offset - 1]);
+            int nameLength = data[offset++] & 0xFF;
+            formattedSchema.addField(new String(data, offset, nameLength, StandardCharsets.UTF_8), fieldType);
+            offset += nameLength;
+        }
+        return formattedSchema;
+    }
+
+    /**
+     * reads one sample's values packed according to this schema, used on client's side
+     * @return Byte, Short, Integer, Long, Float, Double or Boolean for each field, in order of fields
+     * */
+    public Object[] decodeValues(byte[] data, int offset){
+        Object[] values = new Object[fields.size()];
+        for( int i = 0; i<fields.size(); ++i ){
+            FieldType fieldType = fields.get(i).fieldType;
+            long bits = 0;
+            for( int j = 0; j<fieldType.getByteLength(); ++j )
+                bits = (bits << 8) | (data[offset + j] & 0xFF);
+            offset += fieldType.getByteLength();
+
+            values[i] = switch (fieldType) {
+                case INT8 -> (byte) bits;
+                case INT16 -> (short) bits;
+                case INT32 -> (int) bits;
+                case INT64 -> bits;
+                case FLOAT32 -> Float.intBitsToFloat((int) bits);
+                case FLOAT64 -> Double.longBitsToDouble(bits);
+                case BOOLEAN -> bits != 0;
+            };
+        }
+        return values;
+    }
+}
@@ -0,0 +1,401 @@
+package arduino_simulator.sensors;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * writes UTF-8 encoded JSON straight into a reusable byte array, used for formatted sensor data instead of building a JSONObject and a String for every sample.
+ * Encoded field names ( "name": ) are cached, so writing the same fields sample after sample doesn't allocate.
+ *
+ * Usage ( within SensorEntry.formatRawData(byte[] rawData, JsonSink out) ):
+ *      out.beginObject();
+ *      out.field("x", x);
+ *      out.field("y", y);
+ *      out.endObject();
+ *
+ * Commas between fields and array values are written automatically.
+ * Numbers that aren't finite ( NaN, infinity ) are written as null, and strings are escaped the same as json-simple does ( e.g. / as \/ ),
+ * so a JSONObject written through the sink gives the same bytes as toJSONString().getBytes(UTF_8).
+ *
+ * @see SensorEntry#formatRawData(byte[], JsonSink)
+ * */
+public class JsonSink {
+
+    private static final int MAX_DEPTH = 63;//one bit of needsComma per depth
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+    private byte[] buffer;
+    private int position = 0;
+    private int start = 0;//JSON starts here, bytes before it are reserved for the caller
+
+    private int depth = 0;
+    private long needsComma = 0;//bit per depth, set once an object or array at that depth got its first element
+
+    private static final int MAX_CACHED_FIELD_NAMES = 256;//names beyond this are encoded each time, keeps maps with changing keys from growing the cache
+    private final Map<String, byte[]> fieldNameCache = new HashMap<>();//field name -> "field name":
+
+    public JsonSink() {
+        this(64);
+    }
+
+    public JsonSink(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * clears written JSON, buffer and cached field names are kept
+     * */
+    public void reset() {
+        reset(0);
+    }
+
+    /**
+     * clears written JSON and leaves room for prefixLength bytes in front of it, caller fills them in through getBuffer() afterwards
+     * */
+    public void reset(int prefixLength) {
+        ensureCapacity(prefixLength);
+        position = prefixLength;
+        start = prefixLength;
+        depth = 0;
+        needsComma = 0;
+    }
+
+    /**
+     * @return array JSON is written to, valid up to length(). Returned array changes once it has to grow
+     * */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return number of bytes used in getBuffer(), including reserved prefix
+     * */
+    public int length() {
+        return position;
+    }
+
+    /**
+     * @return number of bytes of JSON written since last reset
+     * */
+    public int jsonLength() {
+        return position - start;
+    }
+
+    public JsonSink beginObject() {
+        beforeValue();
+        return open('{');
+    }
+
+    public JsonSink beginObject(String name) {
+        name(name);
+        return open('{');
+    }
+
+    public JsonSink endObject() {
+        return close('}');
+    }
+
+    public JsonSink beginArray() {
+        beforeValue();
+        return open('[');
+    }
+
+    public JsonSink beginArray(String name) {
+        name(name);
+        return open('[');
+    }
+
+    public JsonSink endArray() {
+        return close(']');
+    }
+
+    public JsonSink field(String name, int value) {
+        name(name);
+        writeLong(value);
+        return this;
+    }
+
+    public JsonSink field(String name, long value) {
+        name(name);
+        writeLong(value);
+        return this;
+    }
+
+    public JsonSink field(String name, double value) {
+        name(name);
+        writeDouble(value);
+        return this;
+    }
+
+    public JsonSink field(String name, float value) {
+        name(name);
+        writeFloat(value);
+        return this;
+    }
+
+    public JsonSink field(String name, boolean value) {
+        name(name);
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonSink field(String name, String value) {
+        name(name);
+        writeString(value);
+        return this;
+    }
+
+    public JsonSink nullField(String name) {
+        name(name);
+        writeBytes(NULL);
+        return this;
+    }
+
+    //array values
+
+    public JsonSink value(int value) {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public JsonSink value(long value) {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public JsonSink value(double value) {
+        beforeValue();
+        writeDouble(value);
+        return this;
+    }
+
+    public JsonSink value(float value) {
+        beforeValue();
+        writeFloat(value);
+        return this;
+    }
+
+    public JsonSink value(boolean value) {
+        beforeValue();
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonSink value(String value) {
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    /**
+     * writes any value json-simple knows how to write: null, String, Number, Boolean, Map ( e.g. JSONObject ), List ( e.g. JSONArray ) and arrays of these
+     * used as fallback for sensors that only provide formatRawData(byte[] rawData)
+     * */
+    public JsonSink value(Object value) {
+        beforeValue();
+        writeObject(value);
+        return this;
+    }
+
+    /**
+     * writes all fields of the map, e.g. a JSONObject
+     * */
+    public JsonSink object(Map<?, ?> map) {
+        beforeValue();
+        writeMap(map);
+        return this;
+    }
+
+    private void writeObject(Object value) {
+        if( value == null ) writeBytes(NULL);
+        else if( value instanceof String ) writeString((String) value);
+        else if( value instanceof Double ) writeDouble((Double) value);
+        else if( value instanceof Float ) writeFloat((Float) value);
+        else if( value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte ) writeLong(((Number) value).longValue());
+        else if( value instanceof Number ) writeAscii(value.toString());//BigInteger, BigDecimal
+        else if( value instanceof Boolean ) writeBytes((Boolean) value ? TRUE : FALSE);
+        else if( value instanceof Map ) writeMap((Map<?, ?>) value);
+        else if( value instanceof List ) writeList((List<?>) value);
+        else if( value instanceof Object[] ) writeList(Arrays.asList((Object[]) value));
+        else writeString(value.toString());
+    }
+
+    private void writeMap(Map<?, ?> map) {
+        open('{');
+        for( Map.Entry<?, ?> entry : map.entrySet() ){
+            name(String.valueOf(entry.getKey()));
+            writeObject(entry.getValue());
+        }
+        close('}');
+    }
+
+    private void writeList(List<?> list) {
+        open('[');
+        for( Object value : list ){
+            beforeValue();
+            writeObject(value);
+        }
+        close(']');
+    }
+
+    private JsonSink open(char bracket) {
+        if( depth == MAX_DEPTH ) throw new IllegalStateException("JSON nested deeper than " + MAX_DEPTH + " levels");
+        writeByte((byte) bracket);
+        ++depth;
+        needsComma &= ~(1L << depth);
+        return this;
+    }
+
+    private JsonSink close(char bracket) {
+        if( depth == 0 ) throw new IllegalStateException("Nothing to close");
+        --depth;
+        writeByte((byte) bracket);
+        return this;
+    }
+
+    /**
+     * writes comma if this isn't the first element of current object or array
+     * */
+    private void beforeValue() {
+        long bit = 1L << depth;
+        if( (needsComma & bit) != 0 )
+            writeByte((byte) ',');
+        needsComma |= bit;
+    }
+
+    private void name(String name) {
+        beforeValue();
+        byte[] encodedName = fieldNameCache.get(name);
+        if( encodedName == null ){
+            int mark = position;
+            writeString(name);
+            writeByte((byte) ':');
+            if( fieldNameCache.size() < MAX_CACHED_FIELD_NAMES )
+                fieldNameCache.put(name, Arrays.copyOfRange(buffer, mark, position));
+            return;
+        }
+        writeBytes(encodedName);
+    }
+
+    private void writeLong(long value) {
+        if( value == Long.MIN_VALUE ){
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        ensureCapacity(position + 20);
+        if( value < 0 ){
+            buffer[position++] = '-';
+            value = -value;
+        }
+
+        int n_digits = 1;
+        for( long v = value; v >= 10; v /= 10 )
+            ++n_digits;
+
+        int end = position + n_digits;
+        for( int i = end - 1; i >= position; --i ){
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position = end;
+    }
+
+    private void writeDouble(double value) {
+        if( Double.isNaN(value) || Double.isInfinite(value) )
+            writeBytes(NULL);
+        else if( value == (long) value && Math.abs(value) < 1e7 && (value != 0 || 1 / value > 0) ){//whole numbers are written the same as Double.toString does, without allocating
+            writeLong((long) value);
+            writeByte((byte) '.');
+            writeByte((byte) '0');
+        }
+        else
+            writeAscii(Double.toString(value));
+    }
+
+    private void writeFloat(float value) {
+        if( Float.isNaN(value) || Float.isInfinite(value) ) writeBytes(NULL);
+        else writeAscii(Float.toString(value));//digits of the float, not of its widened double
+    }
+
+    private void writeAscii(String ascii) {
+        ensureCapacity(position + ascii.length());
+        for( int i = 0; i<ascii.length(); ++i )
+            buffer[position++] = (byte) ascii.charAt(i);
+    }
+
+    /**
+     * writes quoted and escaped string encoded as UTF-8, escapes the same characters as json-simple's JSONValue.escape
+     * */
+    private void writeString(String value) {
+        ensureCapacity(position + value.length() * 6 + 2);//worst case: every char escaped as \\uXXXX
+        buffer[position++] = '"';
+        for( int i = 0; i<value.length(); ++i ){
+            char c = value.charAt(i);
+            if( c == '"' || c == '\\' || c == '/' ){
+                buffer[position++] = '\\';
+                buffer[position++] = (byte) c;
+            }
+            else if( c < 0x20 || (c >= 0x7F && c <= 0x9F) || (c >= 0x2000 && c <= 0x20FF) ){//control characters, and the ranges json-simple escapes as well
+                buffer[position++] = '\\';
+                switch (c) {
+                    case '\b' -> buffer[position++] = 'b';
+                    case '\f' -> buffer[position++] = 'f';
+                    case '\n' -> buffer[position++] = 'n';
+                    case '\r' -> buffer[position++] = 'r';
+                    case '\t' -> buffer[position++] = 't';
+                    default -> {
+                        buffer[position++] = 'u';
+                        buffer[position++] = HEX_DIGITS[c >> 12];
+                        buffer[position++] = HEX_DIGITS[(c >> 8) & 0xF];
+                        buffer[position++] = HEX_DIGITS[(c >> 4) & 0xF];
+                        buffer[position++] = HEX_DIGITS[c & 0xF];
+                    }
+                }
+            }
+            else if( c < 0x80 )
+                buffer[position++] = (byte) c;
+            else if( c < 0x800 ){
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if( Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1)) ){
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+            else if( Character.isSurrogate(c) )
+                buffer[position++] = '?';//unpaired surrogate can't be encoded, same replacement String.getBytes() uses
+            else{
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buffer[position++] = '"';
+    }
+
+    private void writeByte(byte b) {
+        ensureCapacity(position + 1);
+        buffer[position++] = b;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(position + bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if( buffer.length < capacity )
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+    }
+}
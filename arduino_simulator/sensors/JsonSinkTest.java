@@ -0,0 +1,166 @@
+package arduino_simulator.sensors;
+
+import org.json.simple.JSONValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * compares JSON written by JsonSink to json-simple's toJSONString().getBytes(UTF_8), byte for byte.
+ * Formatted data of sensors that only override formatRawData(byte[] rawData) goes through JsonSink, so clients have to get the same bytes json-simple wrote.
+ * Exits with status 1 if any of them fails
+ * */
+public class JsonSinkTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testStrings();
+        testDoubles();
+        testIntegers();
+        testNested();
+        testStreaming();
+        testPrefix();
+
+        if( failures > 0 ){
+            System.out.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All JSON sink tests passed");
+    }
+
+    private static void testStrings(){
+        String[] strings = {
+                "",
+                "plain ASCII text 0123456789",
+                "quotes \" backslash \\ slash /",
+                "non-ASCII \u00e9\u00fc\u00df \u00b0C \u6f22\u5b57 \u20ac",
+                "surrogate pairs \ud83d\ude00 \ud834\udd1e",
+                "unpaired surrogates \ud83d x \ude00",
+                "control \b\f\n\r\t \u0000\u0001\u001f",
+                "DEL and C1 \u007f\u0080\u009f\u00a0",
+                "general punctuation \u2000\u2028\u2029\u20ff\u2100"
+        };
+        for( String string : strings ){
+            compare("string value " + escapeForName(string), map("value", string));
+            compare("string name " + escapeForName(string), map(string, 1));
+        }
+    }
+
+    private static void testDoubles(){
+        double[] doubles = {
+                0.0, -0.0, 1.0, -1.5, 0.1, 1.0 / 3,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                9_999_999.0, 1e7, -1e7, 123_456_789.0, 9_007_199_254_740_993.0, 1e21, Double.MAX_VALUE,
+                0.001, 1e-3, 1e-4, 1e-5, 1e-300, Double.MIN_VALUE, -Double.MIN_VALUE
+        };
+        for( double value : doubles )
+            compare("double " + value, map("value", value));
+
+        float[] floats = {0.0f, -0.0f, 0.1f, 1.5f, 3.4e38f, 1e-10f, Float.NaN, Float.NEGATIVE_INFINITY};
+        for( float value : floats )
+            compare("float " + value, map("value", value));
+    }
+
+    private static void testIntegers(){
+        Object[] integers = {0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, (short) -300, (byte) 7};
+        for( Object value : integers )
+            compare(value.getClass().getSimpleName() + " " + value, map("value", value));
+    }
+
+    private static void testNested(){
+        List<Object> list = new ArrayList<>(Arrays.asList(1, 2.5, "three", null, true, false));
+        list.add(map("inner", -0.0));
+        list.add(Collections.emptyList());
+
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("x", 1);
+        nested.put("list", list);
+        nested.put("empty", Collections.emptyMap());
+        nested.put("deeper", map("level", map("\u00e9", Arrays.asList(map("a", Double.NaN), Collections.singletonList("\ud83d\ude00")))));
+        nested.put("null", null);
+        compare("nested maps and lists", nested);
+    }
+
+    /**
+     * fields written one by one give the same bytes as the same map written by json-simple
+     * */
+    private static void testStreaming(){
+        JsonSink sink = new JsonSink();
+        for( int sample = 0; sample<3; ++sample ){//field names come from the cache after the first sample
+            sink.reset();
+            sink.beginObject()
+                    .field("int", sample)
+                    .field("long", Long.MIN_VALUE)
+                    .field("double", sample / 3.0)
+                    .field("float", sample / 3.0f)
+                    .field("bool", sample % 2 == 0)
+                    .field("text", "\u00b0C/\ud83d\ude00")
+                    .nullField("none")
+                    .beginArray("array").value(1).value(-0.0).value(0.1f).value("a").beginObject().field("b", 2).endObject().endArray()
+                    .beginObject("object").field("c", Double.NaN).endObject()
+                    .endObject();
+
+            Map<String, Object> expected = new LinkedHashMap<>();
+            expected.put("int", sample);
+            expected.put("long", Long.MIN_VALUE);
+            expected.put("double", sample / 3.0);
+            expected.put("float", sample / 3.0f);
+            expected.put("bool", sample % 2 == 0);
+            expected.put("text", "\u00b0C/\ud83d\ude00");
+            expected.put("none", null);
+            expected.put("array", Arrays.asList(1, -0.0, 0.1f, "a", map("b", 2)));
+            expected.put("object", map("c", Double.NaN));
+            check("streaming sample " + sample, jsonSimple(expected), Arrays.copyOf(sink.getBuffer(), sink.length()));
+        }
+    }
+
+    private static void testPrefix(){
+        JsonSink sink = new JsonSink(4);
+        sink.reset(10);
+        sink.object(map("value", "\u6f22"));
+        byte[] expected = jsonSimple(map("value", "\u6f22"));
+        check("JSON follows reserved prefix", expected, Arrays.copyOfRange(sink.getBuffer(), 10, sink.length()));
+        check("JSON length excludes prefix", sink.jsonLength() == expected.length && sink.length() == 10 + expected.length);
+    }
+
+    private static void compare(String name, Map<String, Object> map){
+        JsonSink sink = new JsonSink(1);//grows while writing
+        sink.object(map);
+        check(name, jsonSimple(map), Arrays.copyOf(sink.getBuffer(), sink.length()));
+    }
+
+    private static byte[] jsonSimple(Map<String, Object> map){
+        return JSONValue.toJSONString(map).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, Object> map(String key, Object value){
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put(key, value);
+        return map;
+    }
+
+    private static String escapeForName(String string){
+        StringBuilder name = new StringBuilder();
+        for( char c : string.toCharArray() )
+            name.append(c < 0x20 || c > 0x7e ? String.format("\\u%04x", (int) c) : String.valueOf(c));
+        return name.toString();
+    }
+
+    private static void check(String name, byte[] expected, byte[] actual){
+        if( Arrays.equals(expected, actual) ) return;
+        ++failures;
+        System.out.println("FAILED: " + name + "\n\texpected " + new String(expected, StandardCharsets.UTF_8) + "\n\tgot      " + new String(actual, StandardCharsets.UTF_8));
+    }
+
+    private static void check(String name, boolean passed){
+        if( passed ) return;
+        ++failures;
+        System.out.println("FAILED: " + name);
+    }
+}
@@ -1,5 +1,7 @@
 package arduino_simulator.sensors;
 
+import driver_framework.FrameworkUtils;
+
 import java.math.BigInteger;
 
 import static arduino_simulator.SensorType.LIGHT_SENSOR;
@@ -22,6 +24,15 @@ public class LightSensor extends SensorImpl{
         return sensorDataByteArray;
     }
 
+    /**
+     * writes reading without boxing it first, same bytes as readDataValueAnalog()
+     * */
+    @Override
+    public int readDataValue(byte[] destination, int offset) {
+        FrameworkUtils.writeInt(destination, offset, Sensor.getRandomAnalogData());
+        return 4;
+    }
+
     /*
      * this way I can get ready data from the sensor itself though this is not the case in real life.
      * Driver framework should perform this conversion if they want to have it
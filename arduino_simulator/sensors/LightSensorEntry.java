@@ -0,0 +1,42 @@
+package arduino_simulator.sensors;
+
+import arduino_simulator.ArduinoSimulator;
+import arduino_simulator.SensorType;
+import driver_framework.FrameworkUtils;
+import org.json.simple.JSONObject;
+
+/**
+ * entry of simulator's LightSensor, its analog reading arrives as a 4 byte integer and is formatted as { "analog" : reading }
+ * used by tools running a simulated board against the framework, e.g. SensorServerLoadTest
+ *
+ * @see LightSensor
+ * */
+public class LightSensorEntry extends SensorEntry {
+
+    public static final int DATA_SAMPLE_BYTE_LENGTH = 4;
+
+    public LightSensorEntry(int sensorID) {
+        super(SensorType.LIGHT_SENSOR, sensorID, DATA_SAMPLE_BYTE_LENGTH, ArduinoSimulator.ANALOG_LOWER_LIMIT, ArduinoSimulator.ANALOG_UPPER_LIMIT);
+        setSensorValueEncoding(FormattedSchema.FieldType.INT32);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")//JSONObject is a raw HashMap
+    public JSONObject formatRawData(byte[] rawData) {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("analog", FrameworkUtils.readInt(rawData, 0));
+        return jsonObject;
+    }
+
+    @Override
+    public void formatRawData(byte[] rawData, JsonSink out) {
+        out.beginObject()
+                .field("analog", FrameworkUtils.readInt(rawData, 0))
+                .endObject();
+    }
+
+    @Override
+    public Object[] getSensorValue(byte[] rawData) {
+        return new Object[]{ FrameworkUtils.readInt(rawData, 0) };
+    }
+}
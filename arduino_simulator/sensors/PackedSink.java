@@ -0,0 +1,135 @@
+package arduino_simulator.sensors;
+
+import java.util.Arrays;
+
+/**
+ * writes a sample's formatted values as packed big endian primitives into a reusable byte array, in order of sensor's FormattedSchema fields.
+ * Counterpart of JsonSink for clients that asked for READING_SENSOR_DATA_PACKED.
+ *
+ * Usage ( within SensorEntry.formatRawData(byte[] rawData, PackedSink out), for schema ( "lux" FLOAT32, "valid" BOOLEAN ) ):
+ *      out.putFloat32(lux);
+ *      out.putBoolean(valid);
+ *
+ * @see FormattedSchema
+ * */
+public class PackedSink {
+
+    private byte[] buffer;
+    private int position = 0;
+    private int start = 0;//values start here, bytes before it are reserved for the caller
+    private FormattedSchema schema = null;//schema values are written for, if caller knows it
+
+    public PackedSink() {
+        this(32);
+    }
+
+    public PackedSink(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * clears written values and leaves room for prefixLength bytes in front of them, caller fills them in through getBuffer() afterwards
+     * */
+    public void reset(int prefixLength) {
+        reset(prefixLength, null);
+    }
+
+    /**
+     * same as reset(prefixLength), schema of the values to be written is kept so it isn't looked up again for each sample
+     * */
+    public void reset(int prefixLength, FormattedSchema schema) {
+        ensureCapacity(prefixLength);
+        position = prefixLength;
+        start = prefixLength;
+        this.schema = schema;
+    }
+
+    /**
+     * @return schema given to reset, null if it wasn't given
+     * */
+    public FormattedSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return array values are written to, valid up to length(). Returned array changes once it has to grow
+     * */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return number of bytes used in getBuffer(), including reserved prefix
+     * */
+    public int length() {
+        return position;
+    }
+
+    /**
+     * @return number of bytes of values written since last reset
+     * */
+    public int valuesLength() {
+        return position - start;
+    }
+
+    public PackedSink putInt8(byte value) {
+        return put(value, 1);
+    }
+
+    public PackedSink putInt16(short value) {
+        return put(value, 2);
+    }
+
+    public PackedSink putInt32(int value) {
+        return put(value, 4);
+    }
+
+    public PackedSink putInt64(long value) {
+        return put(value, 8);
+    }
+
+    public PackedSink putFloat32(float value) {
+        return put(Float.floatToIntBits(value), 4);
+    }
+
+    public PackedSink putFloat64(double value) {
+        return put(Double.doubleToLongBits(value), 8);
+    }
+
+    public PackedSink putBoolean(boolean value) {
+        return put(value ? 1 : 0, 1);
+    }
+
+    /**
+     * writes a boxed value as given type, used as fallback for sensors that only provide getSensorValue(rawData)
+     * */
+    public PackedSink put(FormattedSchema.FieldType fieldType, Object value) {
+        if( fieldType == FormattedSchema.FieldType.BOOLEAN )
+            return putBoolean(value instanceof Boolean ? (Boolean) value : ((Number) value).longValue() != 0);
+
+        Number number = value instanceof Boolean ? ((Boolean) value ? 1 : 0) : (Number) value;
+        return switch (fieldType) {
+            case INT8 -> putInt8(number.byteValue());
+            case INT16 -> putInt16(number.shortValue());
+            case INT32 -> putInt32(number.intValue());
+            case INT64 -> putInt64(number.longValue());
+            case FLOAT32 -> putFloat32(number.floatValue());
+            default -> putFloat64(number.doubleValue());
+        };
+    }
+
+    private PackedSink put(long bits, int byteLength) {
+        ensureCapacity(position + byteLength);
+        for( int i = byteLength - 1; i >= 0; --i ){
+            buffer[position + i] = (byte) bits;
+            bits >>= 8;
+        }
+        position += byteLength;
+        return this;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if( buffer.length < capacity )
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+    }
+}
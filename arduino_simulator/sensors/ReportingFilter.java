@@ -0,0 +1,291 @@
+package arduino_simulator.sensors;
+
+import java.util.Arrays;
+
+/**
+ * one step of a sensor's ReportingFilterChain, decides together with other filters whether a sample is sent to the client.
+ * Filters keep state of one client's stream of one sensor ( last reported values, last report's time ), so each client configuration gets its own instances.
+ *
+ * Value filters see sample's numeric values as doubles, in order of SensorEntry.getSensorValueAsDouble ( or getSensorValue ) values.
+ * A filter may replace values for the filters after it ( e.g. MOVING_AVERAGE smooths them ), data sent to the client stays raw.
+ *
+ * Encoded filter = | filter type (1 byte) | parameter (8 bytes, double) |
+ *
+ * @see ReportingFilterChain
+ * */
+public abstract class ReportingFilter {
+
+    public enum Type{
+        ABSOLUTE_DEADBAND((byte)1),//parameter: difference any value has to change by since last report
+        PERCENT_DEADBAND((byte)2),//parameter: percentage of last reported value any value has to change by
+        MIN_INTERVAL((byte)3),//parameter: milliseconds, samples are not sent more often than this
+        MAX_INTERVAL((byte)4),//parameter: milliseconds, a sample is sent at least this often even if unchanged ( heartbeat )
+        MOVING_AVERAGE((byte)5),//parameter: smoothing factor 0 < alpha <= 1 of the exponential moving average, filters after it see smoothed values
+        SWINGING_DOOR((byte)6);//parameter: deviation, samples lying within it of the line from the last reported sample are not sent
+
+        private final byte mByte;
+        Type(byte mByte) { this.mByte = mByte; }
+        public byte getValue() { return mByte; }
+
+        public static Type getTypeFromByte(byte typeByte){
+            for( Type type : values() )
+                if( type.mByte == typeByte ) return type;
+            return null;
+        }
+    }
+
+    /**
+     * SUPPRESS vetoes the sample unless another filter FORCEs it
+     * */
+    public enum Decision{
+        PASS,
+        SUPPRESS,
+        FORCE
+    }
+
+    public static final int REPORTING_FILTER_BYTE_LENGTH = 1 + 8;//type + parameter
+
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    protected final double parameter;
+
+    protected ReportingFilter(double parameter) {
+        this.parameter = parameter;
+    }
+
+    public static ReportingFilter create(Type type, double parameter){
+        return switch (type) {
+            case ABSOLUTE_DEADBAND -> new AbsoluteDeadband(parameter);
+            case PERCENT_DEADBAND -> new PercentDeadband(parameter);
+            case MIN_INTERVAL -> new MinInterval(parameter);
+            case MAX_INTERVAL -> new MaxInterval(parameter);
+            case MOVING_AVERAGE -> new MovingAverage(parameter);
+            case SWINGING_DOOR -> new SwingingDoor(parameter);
+        };
+    }
+
+    public abstract Type getType();
+
+    public double getParameter() {
+        return parameter;
+    }
+
+    /**
+     * @param values sample's values, filter may overwrite them for filters following it
+     * @param n_values number of valid values, 0 if sensor's values are not numeric, value filters PASS such samples
+     * @param timeNanos System.nanoTime() of the sample
+     * */
+    public abstract Decision filter(double[] values, int n_values, long timeNanos);
+
+    /**
+     * called once the sample has been sent, with values as they were after the last filter
+     * */
+    public abstract void reported(double[] values, int n_values, long timeNanos);
+
+    /**
+     * @return filter of the same type and parameter, without any state
+     * */
+    public ReportingFilter copy(){
+        return create(getType(), parameter);
+    }
+
+    protected static long toNanos(double millis){
+        return (long) (millis * NANOS_PER_MILLI);
+    }
+
+    /**
+     * base of filters comparing values to the last reported ones
+     * */
+    abstract static class LastReportedValues extends ReportingFilter{
+        protected double[] lastReported = new double[0];
+        protected int n_lastReported = 0;
+
+        LastReportedValues(double parameter) {
+            super(parameter);
+        }
+
+        @Override
+        public Decision filter(double[] values, int n_values, long timeNanos) {
+            if( n_values == 0 || n_values != n_lastReported ) return Decision.PASS;//not numeric or nothing to compare to
+            for( int i = 0; i<n_values; ++i )
+                if( changed(values[i], lastReported[i]) ) return Decision.PASS;
+            return Decision.SUPPRESS;
+        }
+
+        @Override
+        public void reported(double[] values, int n_values, long timeNanos) {
+            if( lastReported.length < n_values ) lastReported = new double[n_values];
+            System.arraycopy(values, 0, lastReported, 0, n_values);
+            n_lastReported = n_values;
+        }
+
+        abstract boolean changed(double value, double lastReportedValue);
+    }
+
+    public static class AbsoluteDeadband extends LastReportedValues{
+        public AbsoluteDeadband(double difference) {
+            super(difference);
+        }
+
+        @Override
+        public Type getType() {
+            return Type.ABSOLUTE_DEADBAND;
+        }
+
+        @Override
+        boolean changed(double value, double lastReportedValue) {
+            return Math.abs(value - lastReportedValue) >= parameter;//same as IMPRECISE_OPTIMIZED precision, difference 0 sends every sample
+        }
+    }
+
+    public static class PercentDeadband extends LastReportedValues{
+        public PercentDeadband(double percentage) {
+            super(percentage);
+        }
+
+        @Override
+        public Type getType() {
+            return Type.PERCENT_DEADBAND;
+        }
+
+        @Override
+        boolean changed(double value, double lastReportedValue) {
+            double change = Math.abs(value - lastReportedValue);
+            return change != 0 && change >= Math.abs(lastReportedValue) * parameter / 100;
+        }
+    }
+
+    public static class MinInterval extends ReportingFilter{
+        private long lastReportedNanos;
+        private boolean hasReported = false;
+
+        public MinInterval(double millis) {
+            super(millis);
+        }
+
+        @Override
+        public Type getType() {
+            return Type.MIN_INTERVAL;
+        }
+
+        @Override
+        public Decision filter(double[] values, int n_values, long timeNanos) {
+            return hasReported && timeNanos - lastReportedNanos < toNanos(parameter) ? Decision.SUPPRESS : Decision.PASS;
+        }
+
+        @Override
+        public void reported(double[] values, int n_values, long timeNanos) {
+            lastReportedNanos = timeNanos;
+            hasReported = true;
+        }
+    }
+
+    public static class MaxInterval extends ReportingFilter{
+        private long lastReportedNanos;
+        private boolean hasReported = false;
+
+        public MaxInterval(double millis) {
+            super(millis);
+        }
+
+        @Override
+        public Type getType() {
+            return Type.MAX_INTERVAL;
+        }
+
+        @Override
+        public Decision filter(double[] values, int n_values, long timeNanos) {
+            return !hasReported || timeNanos - lastReportedNanos >= toNanos(parameter) ? Decision.FORCE : Decision.PASS;
+        }
+
+        @Override
+        public void reported(double[] values, int n_values, long timeNanos) {
+            lastReportedNanos = timeNanos;
+            hasReported = true;
+        }
+    }
+
+    public static class MovingAverage extends ReportingFilter{
+        private double[] averages = new double[0];
+        private int n_averages = 0;
+
+        public MovingAverage(double alpha) {
+            super(alpha);
+            if( !(alpha > 0 && alpha <= 1) ) throw new IllegalArgumentException("Smoothing factor has to be within (0, 1]: " + alpha);
+        }
+
+        @Override
+        public Type getType() {
+            return Type.MOVING_AVERAGE;
+        }
+
+        @Override
+        public Decision filter(double[] values, int n_values, long timeNanos) {
+            if( n_values != n_averages ){//first sample starts the average
+                if( averages.length < n_values ) averages = new double[n_values];
+                System.arraycopy(values, 0, averages, 0, n_values);
+                n_averages = n_values;
+                return Decision.PASS;
+            }
+            for( int i = 0; i<n_values; ++i ){
+                averages[i] += parameter * (values[i] - averages[i]);
+                values[i] = averages[i];
+            }
+            return Decision.PASS;
+        }
+
+        @Override
+        public void reported(double[] values, int n_values, long timeNanos) {}
+    }
+
+    /**
+     * swinging door trending: sample is sent once no straight line from the last reported sample passes within deviation of all samples since then.
+     * Streaming variant, the sample breaking the door is sent ( rather than the one before it ), so a client interpolating between reported samples
+     * stays within about deviation of suppressed ones
+     * */
+    public static class SwingingDoor extends ReportingFilter{
+        private double[] anchors = new double[0];
+        private double[] upperSlopes = new double[0];//smallest slope towards value + deviation seen since anchor
+        private double[] lowerSlopes = new double[0];//largest slope towards value - deviation seen since anchor
+        private int n_anchors = 0;
+        private long anchorNanos;
+
+        public SwingingDoor(double deviation) {
+            super(deviation);
+        }
+
+        @Override
+        public Type getType() {
+            return Type.SWINGING_DOOR;
+        }
+
+        @Override
+        public Decision filter(double[] values, int n_values, long timeNanos) {
+            if( n_values == 0 || n_values != n_anchors ) return Decision.PASS;//not numeric or nothing to compare to
+            double elapsedMillis = (double) (timeNanos - anchorNanos) / NANOS_PER_MILLI;
+            if( elapsedMillis <= 0 ) return Decision.SUPPRESS;
+
+            boolean doorOpen = false;
+            for( int i = 0; i<n_values; ++i ){
+                upperSlopes[i] = Math.min(upperSlopes[i], (values[i] + parameter - anchors[i]) / elapsedMillis);
+                lowerSlopes[i] = Math.max(lowerSlopes[i], (values[i] - parameter - anchors[i]) / elapsedMillis);
+                if( lowerSlopes[i] > upperSlopes[i] ) doorOpen = true;
+            }
+            return doorOpen ? Decision.PASS : Decision.SUPPRESS;
+        }
+
+        @Override
+        public void reported(double[] values, int n_values, long timeNanos) {
+            if( anchors.length < n_values ){
+                anchors = new double[n_values];
+                upperSlopes = new double[n_values];
+                lowerSlopes = new double[n_values];
+            }
+            System.arraycopy(values, 0, anchors, 0, n_values);
+            Arrays.fill(upperSlopes, 0, n_values, Double.POSITIVE_INFINITY);
+            Arrays.fill(lowerSlopes, 0, n_values, Double.NEGATIVE_INFINITY);
+            n_anchors = n_values;
+            anchorNanos = timeNanos;
+        }
+    }
+}
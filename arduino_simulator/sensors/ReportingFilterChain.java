@@ -0,0 +1,128 @@
+package arduino_simulator.sensors;
+
+import driver_framework.FrameworkUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * filters deciding which samples of a sensor are sent to a client, used instead of sensor's precision once configured.
+ * Sample is sent if none of the filters suppresses it, or if any of them forces it ( e.g. MAX_INTERVAL heartbeat ). First sample is always sent.
+ * Filters run in order they were added, so a MOVING_AVERAGE placed first smooths values the deadbands after it compare.
+ *
+ * Usage ( by driver developer, as default for all clients ):
+ *      sensorEntry.setReportingFilterChain(new ReportingFilterChain()
+ *              .addFilter(ReportingFilter.Type.ABSOLUTE_DEADBAND, 5)
+ *              .addFilter(ReportingFilter.Type.MAX_INTERVAL, 1000));
+ *
+ * Encoded chain, follows CONFIGURE request if SensorEntry.CONFIGURE_FLAG_REPORTING_FILTERS is set = | n filters (1 byte) | encoded filter x n |
+ *
+ * @see ReportingFilter
+ * */
+public class ReportingFilterChain {
+
+    private static final int MAX_FILTERS = 255;
+
+    private static final String TAG = "ReportingFilterChain";
+    private static final Logger logger = Logger.getLogger( TAG );
+
+    private final List<ReportingFilter> filters = new ArrayList<>();
+    private double[] values = new double[0];//sample's values, reused for each sample
+    private boolean hasReported = false;
+
+    public ReportingFilterChain addFilter(ReportingFilter.Type type, double parameter){
+        return addFilter(ReportingFilter.create(type, parameter));
+    }
+
+    public ReportingFilterChain addFilter(ReportingFilter filter){
+        if( filters.size() == MAX_FILTERS ) throw new IllegalArgumentException("Chain can't have more than " + MAX_FILTERS + " filters");
+        filters.add(filter);
+        return this;
+    }
+
+    public List<ReportingFilter> getFilters() {
+        return Collections.unmodifiableList(filters);
+    }
+
+    /**
+     * @return chain of the same filters without any state, for a new client's configuration
+     * */
+    public ReportingFilterChain copy(){
+        ReportingFilterChain chain = new ReportingFilterChain();
+        for( ReportingFilter filter : filters )
+            chain.addFilter(filter.copy());
+        return chain;
+    }
+
+    /**
+     * @return chain as it follows CONFIGURE request, used on client's side
+     * */
+    public byte[] encode(){
+        ByteBuffer encoded = ByteBuffer.allocate(1 + filters.size() * ReportingFilter.REPORTING_FILTER_BYTE_LENGTH);
+        encoded.put((byte) filters.size());
+        for( ReportingFilter filter : filters )
+            encoded.put(filter.getType().getValue()).putDouble(filter.getParameter());
+        return encoded.array();
+    }
+
+    /**
+     * reads chain encoded by encode(), filters of unknown types are skipped
+     * */
+    public static ReportingFilterChain decode(InputStream inputStream) throws IOException {
+        int n_filters = inputStream.read();
+        if( n_filters == -1 ) throw new IOException("Returned -1 while trying to get number of reporting filters");
+
+        ReportingFilterChain chain = new ReportingFilterChain();
+        byte[] filterBytes = new byte[ReportingFilter.REPORTING_FILTER_BYTE_LENGTH];
+        for( int i = 0; i<n_filters; ++i ){
+            if( FrameworkUtils.readFully(inputStream, filterBytes, 0, filterBytes.length) != filterBytes.length )
+                throw new IOException("Returned -1 while trying to get reporting filter");
+
+            ReportingFilter.Type type = ReportingFilter.Type.getTypeFromByte(filterBytes[0]);
+            double parameter = ByteBuffer.wrap(filterBytes, 1, 8).getDouble();
+            if( type == null ){
+                logger.warning("Skipping reporting filter of unknown type " + filterBytes[0]);
+                continue;
+            }
+            try {
+                chain.addFilter(type, parameter);
+            } catch (IllegalArgumentException e) {
+                logger.warning("Skipping reporting filter " + type + ": " + e.getMessage());
+            }
+        }
+        return chain;
+    }
+
+    /**
+     * runs the sample through all filters, remembers it as the last reported one if it is to be sent
+     * @param timeNanos System.nanoTime() of the sample
+     * @return true if sample is to be sent
+     * */
+    public boolean shouldReport(SensorEntry sensor, byte[] rawData, long timeNanos){
+        int n_values = sensor.readSensorValues(rawData, values);
+        if( n_values > values.length ){
+            values = new double[n_values];
+            sensor.readSensorValues(rawData, values);
+        }
+
+        boolean forced = false;
+        boolean suppressed = false;
+        for( int i = 0; i<filters.size(); ++i ){//every filter sees every sample, some of them track more than last report
+            ReportingFilter.Decision decision = filters.get(i).filter(values, n_values, timeNanos);
+            if( decision == ReportingFilter.Decision.FORCE ) forced = true;
+            else if( decision == ReportingFilter.Decision.SUPPRESS ) suppressed = true;
+        }
+
+        if( suppressed && !forced && hasReported ) return false;
+
+        for( int i = 0; i<filters.size(); ++i )
+            filters.get(i).reported(values, n_values, timeNanos);
+        hasReported = true;
+        return true;
+    }
+}
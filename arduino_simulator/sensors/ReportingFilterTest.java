@@ -0,0 +1,182 @@
+package arduino_simulator.sensors;
+
+import arduino_simulator.SensorType;
+import org.json.simple.JSONObject;
+
+import java.nio.ByteBuffer;
+
+/**
+ * tests of each ReportingFilter's decisions and of how ReportingFilterChain combines them. Exits with status 1 if any of them fails
+ * */
+public class ReportingFilterTest {
+
+    private static final long MS = 1_000_000;
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testAbsoluteDeadband();
+        testPercentDeadband();
+        testMinInterval();
+        testMaxInterval();
+        testMovingAverage();
+        testSwingingDoor();
+        testForceOverridesSuppress();
+        testNonNumericValues();
+
+        if( failures > 0 ){
+            System.out.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All reporting filter tests passed");
+    }
+
+    private static void testAbsoluteDeadband(){
+        ReportingFilter filter = ReportingFilter.create(ReportingFilter.Type.ABSOLUTE_DEADBAND, 5);
+        check("absolute deadband passes first sample", filter.filter(values(100), 1, 0) == ReportingFilter.Decision.PASS);
+        filter.reported(values(100), 1, 0);
+        check("absolute deadband suppresses change within it", filter.filter(values(104.9), 1, MS) == ReportingFilter.Decision.SUPPRESS);
+        check("absolute deadband passes change of its size", filter.filter(values(95), 1, MS) == ReportingFilter.Decision.PASS);
+        check("absolute deadband passes if any value changed", filter.filter(values(100, 7), 2, MS) == ReportingFilter.Decision.PASS);
+    }
+
+    private static void testPercentDeadband(){
+        ReportingFilter filter = ReportingFilter.create(ReportingFilter.Type.PERCENT_DEADBAND, 10);
+        filter.reported(values(100), 1, 0);
+        check("percent deadband suppresses change within it", filter.filter(values(105), 1, MS) == ReportingFilter.Decision.SUPPRESS);
+        check("percent deadband passes change of its size", filter.filter(values(110), 1, MS) == ReportingFilter.Decision.PASS);
+        filter.reported(values(0), 1, 0);
+        check("percent deadband passes any change from 0", filter.filter(values(0.001), 1, MS) == ReportingFilter.Decision.PASS);
+        check("percent deadband suppresses unchanged 0", filter.filter(values(0), 1, MS) == ReportingFilter.Decision.SUPPRESS);
+    }
+
+    private static void testMinInterval(){
+        ReportingFilter filter = ReportingFilter.create(ReportingFilter.Type.MIN_INTERVAL, 50);
+        check("min interval passes first sample", filter.filter(values(1), 1, 0) == ReportingFilter.Decision.PASS);
+        filter.reported(values(1), 1, 0);
+        check("min interval suppresses sample within it", filter.filter(values(2), 1, 49 * MS) == ReportingFilter.Decision.SUPPRESS);
+        check("min interval passes sample after it", filter.filter(values(2), 1, 50 * MS) == ReportingFilter.Decision.PASS);
+    }
+
+    private static void testMaxInterval(){
+        ReportingFilter filter = ReportingFilter.create(ReportingFilter.Type.MAX_INTERVAL, 100);
+        check("max interval forces first sample", filter.filter(values(1), 1, 0) == ReportingFilter.Decision.FORCE);
+        filter.reported(values(1), 1, 0);
+        check("max interval passes sample within it", filter.filter(values(1), 1, 99 * MS) == ReportingFilter.Decision.PASS);
+        check("max interval forces sample after it", filter.filter(values(1), 1, 100 * MS) == ReportingFilter.Decision.FORCE);
+    }
+
+    private static void testMovingAverage(){
+        ReportingFilter filter = ReportingFilter.create(ReportingFilter.Type.MOVING_AVERAGE, 0.5);
+        double[] sample = values(0, 10);
+        check("moving average passes first sample", filter.filter(sample, 2, 0) == ReportingFilter.Decision.PASS);
+        check("moving average starts with first sample", sample[0] == 0 && sample[1] == 10);
+        sample = values(10, 10);
+        check("moving average passes every sample", filter.filter(sample, 2, MS) == ReportingFilter.Decision.PASS);
+        check("moving average smooths values", sample[0] == 5 && sample[1] == 10);
+
+        boolean rejected = false;
+        try {
+            ReportingFilter.create(ReportingFilter.Type.MOVING_AVERAGE, 0);
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        check("moving average rejects smoothing factor 0", rejected);
+    }
+
+    private static void testSwingingDoor(){
+        ReportingFilter filter = ReportingFilter.create(ReportingFilter.Type.SWINGING_DOOR, 1);
+        check("swinging door passes first sample", filter.filter(values(0), 1, 0) == ReportingFilter.Decision.PASS);
+        filter.reported(values(0), 1, 0);
+        for( int t = 1; t<=3; ++t )
+            check("swinging door suppresses straight line at " + t + "ms", filter.filter(values(t), 1, t * MS) == ReportingFilter.Decision.SUPPRESS);
+        check("swinging door passes sample off the line", filter.filter(values(10), 1, 4 * MS) == ReportingFilter.Decision.PASS);
+
+        filter.reported(values(10), 1, 4 * MS);
+        check("swinging door starts again from reported sample", filter.filter(values(10.5), 1, 5 * MS) == ReportingFilter.Decision.SUPPRESS);
+    }
+
+    private static void testForceOverridesSuppress(){
+        SensorEntry sensor = new NumericSensorEntry();
+        ReportingFilterChain chain = new ReportingFilterChain()
+                .addFilter(ReportingFilter.Type.ABSOLUTE_DEADBAND, 5)
+                .addFilter(ReportingFilter.Type.MAX_INTERVAL, 100);
+
+        check("chain sends first sample", chain.shouldReport(sensor, sample(0), 0));
+        check("chain holds back sample a filter suppresses", !chain.shouldReport(sensor, sample(1), 10 * MS));
+        check("chain sends suppressed sample a filter forces", chain.shouldReport(sensor, sample(1), 100 * MS));
+        check("forced sample is the last reported one", !chain.shouldReport(sensor, sample(5), 110 * MS));
+        check("chain sends sample no filter suppresses", chain.shouldReport(sensor, sample(7), 120 * MS));
+
+        ReportingFilterChain intervals = new ReportingFilterChain()
+                .addFilter(ReportingFilter.Type.MIN_INTERVAL, 200)
+                .addFilter(ReportingFilter.Type.MAX_INTERVAL, 100);
+        intervals.shouldReport(sensor, sample(0), 0);
+        check("chain holds back sample within min interval", !intervals.shouldReport(sensor, sample(0), 50 * MS));
+        check("max interval forces sample min interval suppresses", intervals.shouldReport(sensor, sample(0), 100 * MS));
+    }
+
+    private static void testNonNumericValues(){
+        SensorEntry sensor = new NonNumericSensorEntry();
+        check("non numeric sensor has no values", sensor.readSensorValues(new byte[1], new double[1]) == 0);
+        for( ReportingFilter.Type type : new ReportingFilter.Type[]{ReportingFilter.Type.ABSOLUTE_DEADBAND, ReportingFilter.Type.PERCENT_DEADBAND, ReportingFilter.Type.SWINGING_DOOR} ){
+            ReportingFilter filter = ReportingFilter.create(type, 5);
+            filter.reported(new double[0], 0, 0);
+            check(type + " passes non numeric sample", filter.filter(new double[0], 0, MS) == ReportingFilter.Decision.PASS);
+        }
+
+        ReportingFilterChain chain = new ReportingFilterChain()
+                .addFilter(ReportingFilter.Type.ABSOLUTE_DEADBAND, 5)
+                .addFilter(ReportingFilter.Type.SWINGING_DOOR, 5);
+        boolean allSent = true;
+        for( int i = 0; i<10; ++i )
+            allSent &= chain.shouldReport(sensor, new byte[1], i * MS);
+        check("chain of value filters sends every non numeric sample", allSent);
+    }
+
+    private static double[] values(double... values){
+        return values;
+    }
+
+    private static byte[] sample(int value){
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    private static void check(String name, boolean passed){
+        if( passed ) return;
+        ++failures;
+        System.out.println("FAILED: " + name);
+    }
+
+    private static class NumericSensorEntry extends SensorEntry {
+        NumericSensorEntry() {
+            super(SensorType.LIGHT_SENSOR, 1, 4, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            setSensorValueEncoding(FormattedSchema.FieldType.INT32);
+        }
+
+        @Override
+        public JSONObject formatRawData(byte[] rawData) {
+            return new JSONObject();
+        }
+
+        @Override
+        public Object[] getSensorValue(byte[] rawData) {
+            return new Object[]{ ByteBuffer.wrap(rawData).getInt() };
+        }
+    }
+
+    private static class NonNumericSensorEntry extends SensorEntry {
+        NonNumericSensorEntry() {
+            super(SensorType.LIGHT_SENSOR, 2, 1, 0, 1);
+        }
+
+        @Override
+        public JSONObject formatRawData(byte[] rawData) {
+            return new JSONObject();
+        }
+
+        @Override
+        public Object[] getSensorValue(byte[] rawData) {
+            return new Object[]{ rawData[0] == 0 ? "off" : "on" };
+        }
+    }
+}
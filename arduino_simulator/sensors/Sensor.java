@@ -18,6 +18,17 @@ public interface Sensor{
      * @return int or Byte[] depending on sensor's data type. Caller has to cast Object to int or byte[] afterwards if they want to use it. -1 indicates analog data, null indicates digital data if there is an invalid attempt of casting.
      * */
     public byte[] readDataValue();
+
+    /**
+     * same as readDataValue(), reading is written into destination instead of a new array. Simulator writes its frames this way
+     * sensors should override it if they can take a reading without allocating, this one copies readDataValue()
+     * @return number of bytes written, has to be the same on every call
+     * */
+    public default int readDataValue(byte[] destination, int offset){
+        byte[] dataValue = readDataValue();
+        System.arraycopy(dataValue, 0, destination, offset, dataValue.length);
+        return dataValue.length;
+    }
     /**
      * -1 indicates error, meaning some sensor that is not digital will return -1 for example
      *  digital value is of a single byte 0 - false, otherwise - true
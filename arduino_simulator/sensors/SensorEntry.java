@@ -1,11 +1,10 @@
 package arduino_simulator.sensors;
 import arduino_simulator.SensorType;
+import driver_framework.FrameworkUtils;
 import org.json.simple.JSONObject;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.math.BigInteger;
-import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 
 /**
@@ -13,25 +12,121 @@ import java.util.logging.Logger;
  * part of this data is shared on the initial handshake performed when we connect to the device driver. Device developer is in charge of implementing abstract methods: <br> <br>
  * public abstract JSONObject formatRawData(byte[] rawData);
  * public abstract Object[] getSensorValue(byte[] rawData);
+ * optionally, public void formatRawData(byte[] rawData, JsonSink out) can be overridden in order to format data without allocating on every sample
+ * optionally, public FormattedSchema getFormattedSchema() lets clients receive formatted values as packed primitives instead of JSON
  * */
 public abstract class SensorEntry {
 
     public static final int DEFAULT_SAMPLE_RATE = 500;//default sample rate indicates that each sample reading is to be performed on half a second
 
-    //entries modifiable by android application developer
-    private int sampleRate = DEFAULT_SAMPLE_RATE;
-    private boolean formatted = false;//sends formatted data also if used wants formatted data
-    private SensorPrecision sensorPrecision = new SensorPrecision();
+    //entries modifiable by android application developer, defaults for each client's own configuration
+    private final SensorConfiguration configuration = new SensorConfiguration();
 
     public void configureSensor(InputStream inputStream){
-        try {
-            byte[] sampleRateBytes = new byte[4];
-            inputStream.read(sampleRateBytes, 0, sampleRateBytes.length);
-            this.sampleRate = new BigInteger(sampleRateBytes).intValue();//set sample rate
-            sensorPrecision.getSensorPrecision(inputStream);//set precision
-            this.formatted = inputStream.read() == 1;//set formatted
-        } catch (IOException e) {
-            e.printStackTrace();
+        configuration.configure(inputStream);
+    }
+
+    /**
+     * Settings android application developer changes through CONNECT_SENSOR, DISCONNECT_SENSOR and CONFIGURE requests.
+     * SensorEntry keeps the defaults, each client gets its own copy through newConfiguration() so clients sharing the same sensors don't affect each other
+     * */
+    public static class SensorConfiguration{
+        private int sampleRate = DEFAULT_SAMPLE_RATE;
+        private boolean formatted = false;//sends formatted data also if used wants formatted data
+        private boolean deltaEncoded = false;//raw data is sent as deltas to the previous sample, see DeltaEncoding
+        private SensorPrecision sensorPrecision = new SensorPrecision();
+        private ReportingFilterChain reportingFilterChain = null;//decides which samples are sent instead of precision if set
+        private AggregationWindow aggregationWindow = null;//samples are sent as aggregates over this window if set
+        private volatile boolean connected = false;
+
+        public SensorConfiguration(){}
+
+        /**
+         * copies sample rate, formatting and precision, copy is not connected
+         * */
+        public SensorConfiguration(SensorConfiguration configuration){
+            configure(configuration);
+        }
+
+        /**
+         * takes over sample rate, formatting and precision of given configuration, connected flag is left as it is.
+         * Used to apply a configuration received once to many sensors, each gets its own reporting filter chain
+         * */
+        public void configure(SensorConfiguration configuration){
+            this.sampleRate = configuration.sampleRate;
+            this.formatted = configuration.formatted;
+            this.deltaEncoded = configuration.deltaEncoded;
+            this.sensorPrecision = new SensorPrecision(configuration.sensorPrecision);
+            this.reportingFilterChain = configuration.reportingFilterChain == null ? null : configuration.reportingFilterChain.copy();
+            this.aggregationWindow = configuration.aggregationWindow;
+        }
+
+        /**
+         * reads sample rate ( 4 bytes ), precision ( 1 + 8 bytes ) and flags ( 1 byte ) following CONFIGURE request,
+         * followed by reporting filter chain if CONFIGURE_FLAG_REPORTING_FILTERS is set, then by aggregation window if CONFIGURE_FLAG_AGGREGATED is set
+         * @see #CONFIGURE_FLAG_FORMATTED
+         * @see #CONFIGURE_FLAG_DELTA_ENCODED
+         * @see #CONFIGURE_FLAG_REPORTING_FILTERS
+         * @see #CONFIGURE_FLAG_AGGREGATED
+         * */
+        public void configure(InputStream inputStream){
+            try {
+                byte[] sampleRateBytes = new byte[4];
+                FrameworkUtils.readFully(inputStream, sampleRateBytes, 0, sampleRateBytes.length);
+                this.sampleRate = FrameworkUtils.readInt(sampleRateBytes, 0);//set sample rate
+                sensorPrecision.getSensorPrecision(inputStream);//set precision
+                int flags = inputStream.read();
+                if( flags == -1 ) flags = 0;
+                this.formatted = (flags & CONFIGURE_FLAG_FORMATTED) != 0;//set formatted
+                this.deltaEncoded = (flags & CONFIGURE_FLAG_DELTA_ENCODED) != 0;
+                this.reportingFilterChain = (flags & CONFIGURE_FLAG_REPORTING_FILTERS) != 0 ? ReportingFilterChain.decode(inputStream) : null;
+                this.aggregationWindow = (flags & CONFIGURE_FLAG_AGGREGATED) != 0 ? AggregationWindow.decode(inputStream) : null;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+        public void setSampleRate(int sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+        public boolean isFormatted() {
+            return formatted;
+        }
+        public void setFormatted(boolean formatted) {
+            this.formatted = formatted;
+        }
+        public boolean isDeltaEncoded() {
+            return deltaEncoded;
+        }
+        public void setDeltaEncoded(boolean deltaEncoded) {
+            this.deltaEncoded = deltaEncoded;
+        }
+        public SensorPrecision getSensorPrecision() {
+            return sensorPrecision;
+        }
+        public void setSensorPrecision(SensorPrecision sensorPrecision) {
+            this.sensorPrecision = sensorPrecision;
+        }
+        public ReportingFilterChain getReportingFilterChain() {
+            return reportingFilterChain;
+        }
+        public void setReportingFilterChain(ReportingFilterChain reportingFilterChain) {
+            this.reportingFilterChain = reportingFilterChain;
+        }
+        public AggregationWindow getAggregationWindow() {
+            return aggregationWindow;
+        }
+        public void setAggregationWindow(AggregationWindow aggregationWindow) {
+            this.aggregationWindow = aggregationWindow;
+        }
+        public boolean isConnected() {
+            return connected;
+        }
+        public void setConnected(boolean connected) {
+            this.connected = connected;
         }
     }
 
@@ -41,7 +136,7 @@ public abstract class SensorEntry {
      * */
     public static class SensorPrecision{
         Precision precision = Precision.PRECISE;
-        Double difference = 0.0;
+        double difference = 0.0;
 
         public Precision getPrecision() {
             return precision;
@@ -49,14 +144,18 @@ public abstract class SensorEntry {
         public void setPrecision(Precision precision) {
             this.precision = precision;
         }
-        public Double getDifference() {
+        public double getDifference() {
             return difference;
         }
-        public void setDifference(Double difference) {
+        public void setDifference(double difference) {
             this.difference = difference;
         }
 
         public SensorPrecision(){};
+        public SensorPrecision(SensorPrecision sensorPrecision){
+            this.precision = sensorPrecision.precision;
+            this.difference = sensorPrecision.difference;
+        }
         public void getSensorPrecision(InputStream inputStream){
             int n_total = 8 + 1;//8 bytes for precision offset and 1 for precision type
             try {
@@ -67,8 +166,8 @@ public abstract class SensorEntry {
                 this.precision = precisionByteInt == 0 ? Precision.PRECISE : Precision.IMPRECISE_OPTIMIZED;
 
                 byte[] differenceBytes = new byte[8];//get the difference after that
-                inputStream.read(differenceBytes, 0, differenceBytes.length);
-                this.difference = ByteBuffer.wrap(differenceBytes).getDouble();
+                FrameworkUtils.readFully(inputStream, differenceBytes, 0, differenceBytes.length);
+                this.difference = Double.longBitsToDouble(FrameworkUtils.readLong(differenceBytes, 0));
 
             } catch (IOException e) {
                 e.printStackTrace();
@@ -104,9 +203,16 @@ public abstract class SensorEntry {
     }
 
     private int maxValue = -1;
-    private boolean isConnected = false;
+    private FormattedSchema.FieldType sensorValueEncoding = null;//type of values raw data consists of, null if unknown
+
+    public final static int SENSOR_ENTRY_BYTE_LENGTH = 1 + 4 + 4 + 4 + 4; // type + id + sample_byte_length + min value + max value
+    public final static int CONFIGURE_BYTE_LENGTH = 4 + 1 + 8 + 1; // sample rate + precision type + precision difference + flags, follows CONFIGURE request
 
-    public final static int SENSOR_ENTRY_BYTE_LENGTH = 9 + 4 + 4; // 1 + 4 + 4  -  type + id + sample_byte_length
+    //flags, last byte following CONFIGURE request. Clients sending 1 for formatted and 0 for not formatted are unaffected
+    public final static int CONFIGURE_FLAG_FORMATTED = 0b01;
+    public final static int CONFIGURE_FLAG_DELTA_ENCODED = 0b10;//raw data ( READING_SENSOR_DATA ) is sent as deltas, ignored if sensor is formatted. See driver_framework.response.DeltaEncoding
+    public final static int CONFIGURE_FLAG_REPORTING_FILTERS = 0b100;//flags are followed by an encoded ReportingFilterChain replacing precision
+    public final static int CONFIGURE_FLAG_AGGREGATED = 0b1000;//followed by an encoded AggregationWindow, samples are sent as READING_SENSOR_DATA_AGGREGATED
 
     private static final String TAG = "SensorEntry";
     private static final Logger logger = Logger.getLogger( TAG );
@@ -132,50 +238,178 @@ public abstract class SensorEntry {
      * */
     public abstract JSONObject formatRawData(byte[] rawData);
 
+    /**
+     * writes formatted data as UTF-8 encoded JSON into the sink, this is what the framework calls for each formatted sample.
+     * By default JSONObject returned by formatRawData(rawData) is written, override it to write fields straight into the sink instead.
+     * @see JsonSink
+     * */
+    public void formatRawData(byte[] rawData, JsonSink out){
+        out.object(formatRawData(rawData));
+    }
+
+    /**
+     * Override in order to send formatted values as packed primitives ( READING_SENSOR_DATA_PACKED ) to clients asking for it, instead of JSON.
+     * Return the same instance each time ( e.g. a static final field ), schema is sent to the client once on CONNECT.
+     * @return schema of formatted values, null if sensor formats its data only as JSON
+     * @see FormattedSchema
+     * */
+    public FormattedSchema getFormattedSchema(){
+        return null;
+    }
+
+    /**
+     * writes formatted values in order and of types of getFormattedSchema() fields.
+     * By default values returned by getSensorValue(rawData) are written, one per field, override it to write them without boxing.
+     * Values not matching the schema ( e.g. fewer values than fields ) make the framework send the sample as JSON instead
+     * @see PackedSink
+     * */
+    public void formatRawData(byte[] rawData, PackedSink out){
+        FormattedSchema schema = out.getSchema() != null ? out.getSchema() : getFormattedSchema();//framework passes schema it cached on CONNECT
+        Object[] values = getSensorValue(rawData);
+        int n_values = Math.min(schema.getFieldCount(), values.length);//packed length tells the framework values are missing
+        for( int i = 0; i<n_values; ++i )
+            out.put(schema.getFieldType(i), values[i]);
+    }
+
     /**
      * Override this method in order to get some meaningful value from the sensor. This makes sure raw data is manipulated properly
      * */
     public abstract Object[] getSensorValue(byte[] rawData);//return more than 1 possible sensor value
 
+    /**
+     * @return number of numeric values in a raw sample, e.g. 3 for an accelerometer. 0 if sensor provides its values only through getSensorValue(rawData)
+     * By default raw data is taken for consecutive values of declared sensor value encoding, override along with getSensorValueAsLong / getSensorValueAsDouble for other layouts
+     * @see #setSensorValueEncoding(FormattedSchema.FieldType)
+     * */
+    public int getSensorValueCount(){
+        return sensorValueEncoding == null ? 0 : dataSampleByteLength / sensorValueEncoding.getByteLength();
+    }
+
+    /**
+     * @return true if values are compared as floating point ( getSensorValueAsDouble ), false if as integers ( getSensorValueAsLong )
+     * */
+    public boolean isSensorValueFloatingPoint(){
+        return sensorValueEncoding != null && sensorValueEncoding.isFloatingPoint();
+    }
+
+    /**
+     * @return integer value at given index of raw sample, without boxing
+     * */
+    public long getSensorValueAsLong(byte[] rawData, int valueIndex){
+        if( sensorValueEncoding == null ) throw new IllegalStateException("Sensor " + sensorID + " has no sensor value encoding");
+        int byteLength = sensorValueEncoding.getByteLength();
+        long value = rawData[valueIndex * byteLength];//sign extended
+        for( int i = 1; i<byteLength; ++i )
+            value = (value << 8) | (rawData[valueIndex * byteLength + i] & 0xFF);
+        return value;
+    }
+
+    /**
+     * @return floating point value at given index of raw sample, without boxing
+     * */
+    public double getSensorValueAsDouble(byte[] rawData, int valueIndex){
+        if( sensorValueEncoding == FormattedSchema.FieldType.FLOAT32 ) return Float.intBitsToFloat((int) getSensorValueAsLong(rawData, valueIndex));
+        if( sensorValueEncoding == FormattedSchema.FieldType.FLOAT64 ) return Double.longBitsToDouble(getSensorValueAsLong(rawData, valueIndex));
+        return getSensorValueAsLong(rawData, valueIndex);
+    }
+
+    /**
+     * reads sample's numeric values as doubles, through primitive getters if sensor has them, else through getSensorValue(rawData)
+     * @param values receives at most values.length values, caller grows it and reads again if sample has more
+     * @return number of values sample has, 0 if they are not numeric
+     * */
+    public int readSensorValues(byte[] rawData, double[] values){
+        int n_values = getSensorValueCount();
+        if( n_values > 0 ){
+            for( int i = 0; i<n_values && i<values.length; ++i )
+                values[i] = getSensorValueAsDouble(rawData, i);
+            return n_values;
+        }
+
+        Object[] sensorValues = getSensorValue(rawData);
+        for( int i = 0; i<sensorValues.length; ++i ){
+            if( !(sensorValues[i] instanceof Number) ) return 0;
+            if( i<values.length ) values[i] = ((Number) sensorValues[i]).doubleValue();
+        }
+        return sensorValues.length;
+    }
+
     /**
      * Checks if data has been updated with respect to precision set by Android application developer. Sensor's data needs to be numeric of course
      * @see Precision
      * */
     public boolean dataChanged(byte[] rawData, byte[] prevRawData){
+        return dataChanged(rawData, prevRawData, configuration.getSensorPrecision());
+    }
+
+    /**
+     * same as dataChanged(rawData, prevRawData) though with precision of a client's own configuration
+     * */
+    public boolean dataChanged(byte[] rawData, byte[] prevRawData, SensorPrecision sensorPrecision){
         if(sensorPrecision.precision == Precision.PRECISE || prevRawData.length == 0) return true;
 
+        int n_values = getSensorValueCount();
+        if( n_values == 0 ) return boxedValuesChanged(rawData, prevRawData, sensorPrecision.difference);
+
+        //data changed if any of the values ( e.g. any axis ) changed by at least difference
+        if( isSensorValueFloatingPoint() ){
+            double difference = sensorPrecision.difference;
+            for( int i = 0; i<n_values; ++i )
+                if( doubleChanged(getSensorValueAsDouble(rawData, i), getSensorValueAsDouble(prevRawData, i), difference) ) return true;
+            return false;
+        }
+
+        long difference = Math.round(sensorPrecision.difference);
+        for( int i = 0; i<n_values; ++i )
+            if( longChanged(getSensorValueAsLong(rawData, i), getSensorValueAsLong(prevRawData, i), difference) ) return true;
+        return false;
+    }
+
+    /**
+     * fallback for sensors without primitive values, compares numeric values returned by getSensorValue(rawData)
+     * */
+    private boolean boxedValuesChanged(byte[] rawData, byte[] prevRawData, double difference){
         Object[] values = getSensorValue(rawData);
         Object[] prevValues = getSensorValue(prevRawData);
-        Number numValue = (Number)values[0];
-        Number prevNumValue = (Number)prevValues[0];
+        for( int i = 0; i<values.length; ++i ){
+            if( !(values[i] instanceof Number) || !(prevValues[i] instanceof Number) ) return true;//precision not possible for other data types
+            Number numValue = (Number)values[i];
+            Number prevNumValue = (Number)prevValues[i];
 
-        if( numValue.getClass() == Float.class || numValue.getClass() == Double.class){
-            return numValue.doubleValue() >= (prevNumValue.doubleValue() + sensorPrecision.getDifference())
-                    || numValue.doubleValue() <= (prevNumValue.doubleValue() - sensorPrecision.getDifference());
+            if( numValue instanceof Float || numValue instanceof Double ){
+                if( doubleChanged(numValue.doubleValue(), prevNumValue.doubleValue(), difference) ) return true;
+            }
+            else if( numValue instanceof Integer || numValue instanceof Long || numValue instanceof Short || numValue instanceof Byte ){
+                if( longChanged(numValue.longValue(), prevNumValue.longValue(), Math.round(difference)) ) return true;
+            }
+            else return true;
         }
+        return false;
+    }
 
-        if( numValue.getClass() == Integer.class || numValue.getClass() == Long.class){
-            sensorPrecision.setDifference( (double)Math.round(sensorPrecision.getDifference()) );
-            return (numValue.longValue() >= (prevNumValue.longValue() + sensorPrecision.getDifference().longValue()))
-                    || (numValue.longValue() <= (prevNumValue.longValue() - sensorPrecision.getDifference().longValue()));
-        }
+    private static boolean doubleChanged(double value, double prevValue, double difference){
+        return value >= prevValue + difference || value <= prevValue - difference;
+    }
 
-        return true;//returns true for other data types, precision not possible
+    private static boolean longChanged(long value, long prevValue, long difference){
+        return value >= prevValue + difference || value <= prevValue - difference;
+    }
+
+    /**
+     * writes sensor entry as sent on handshake ( CONNECT_Y ) into destination starting at offset, SENSOR_ENTRY_BYTE_LENGTH bytes:
+     * | sensor type (1 byte) | sensor id (4 bytes) | data sample byte length (4 bytes) | min value (4 bytes) | max value (4 bytes) |
+     * */
+    public void encodeSensorEntry(byte[] destination, int offset){
+        destination[offset] = sensorType.getValue();
+        FrameworkUtils.writeInt(destination, offset + 1, sensorID);
+        FrameworkUtils.writeInt(destination, offset + 5, dataSampleByteLength);
+        FrameworkUtils.writeInt(destination, offset + 9, minValue);
+        FrameworkUtils.writeInt(destination, offset + 13, maxValue);
     }
 
     public void sendSensorEntry(OutputStream outputStream){
-        //5 bytes are sent for sensor entry on handshake, 1 byte is for the sensor type, the other 4 bytes are for the id
         byte[] sensorEntryAsBytesArray = new byte[SENSOR_ENTRY_BYTE_LENGTH];
-
-        byte sensorTypeByte = sensorType.getValue();
-        byte[] sensorIdBytes = ByteBuffer.allocate(4).putInt(sensorID).array();
-        byte[] dataSampleLengthBytes = ByteBuffer.allocate(4).putInt(dataSampleByteLength).array();
-
-        sensorEntryAsBytesArray[0] = sensorTypeByte;
-        for( int i = 1; i<5; ++i )
-            sensorEntryAsBytesArray[i] = sensorIdBytes[i-1];
-        for( int i = 5; i<SENSOR_ENTRY_BYTE_LENGTH; ++i )
-            sensorEntryAsBytesArray[i] = dataSampleLengthBytes[i-5];
+        encodeSensorEntry(sensorEntryAsBytesArray, 0);
 
         try {
             outputStream.write(sensorEntryAsBytesArray);
@@ -185,7 +419,7 @@ public abstract class SensorEntry {
     }
 
     //getters
-    public int getSampleRate() { return sampleRate; }
+    public int getSampleRate() { return configuration.getSampleRate(); }
     public SensorType getSensorType() {
         return sensorType;
     }
@@ -201,6 +435,9 @@ public abstract class SensorEntry {
     public int getMaxValue() {
         return maxValue;
     }
+    public FormattedSchema.FieldType getSensorValueEncoding() {
+        return sensorValueEncoding;
+    }
 
     //setters
     public void setSensorType(SensorType sensorType) {
@@ -212,24 +449,59 @@ public abstract class SensorEntry {
     public void setDataSampleByteLength(int dataSampleByteLength) {
         this.dataSampleByteLength = dataSampleByteLength;
     }
-    public void setSampleRate(int sampleRate) { this.sampleRate = sampleRate;}
+    public void setSampleRate(int sampleRate) { configuration.setSampleRate(sampleRate);}
+
+    /**
+     * declares raw data as consecutive big endian values of given type ( e.g. INT16 x 3 for an accelerometer ), so that dataChanged compares them without boxing
+     * */
+    public void setSensorValueEncoding(FormattedSchema.FieldType sensorValueEncoding) {
+        this.sensorValueEncoding = sensorValueEncoding;
+    }
     public boolean isConnected() {
-        return isConnected;
+        return configuration.isConnected();
     }
     public void setConnected(boolean connected) {
-        isConnected = connected;
+        configuration.setConnected(connected);
     }
     public boolean isFormatted() {
-        return formatted;
+        return configuration.isFormatted();
     }
     public void setFormatted(boolean formatted) {
-        this.formatted = formatted;
+        configuration.setFormatted(formatted);
+    }
+    public boolean isDeltaEncoded() {
+        return configuration.isDeltaEncoded();
+    }
+    public void setDeltaEncoded(boolean deltaEncoded) {
+        configuration.setDeltaEncoded(deltaEncoded);
     }
     public SensorPrecision getSensorPrecision() {
-        return sensorPrecision;
+        return configuration.getSensorPrecision();
     }
     public void setSensorPrecision(SensorPrecision sensorPrecision) {
-        this.sensorPrecision = sensorPrecision;
+        configuration.setSensorPrecision(sensorPrecision);
+    }
+    public ReportingFilterChain getReportingFilterChain() {
+        return configuration.getReportingFilterChain();
+    }
+    public void setReportingFilterChain(ReportingFilterChain reportingFilterChain) {
+        configuration.setReportingFilterChain(reportingFilterChain);
+    }
+    public AggregationWindow getAggregationWindow() {
+        return configuration.getAggregationWindow();
+    }
+    public void setAggregationWindow(AggregationWindow aggregationWindow) {
+        configuration.setAggregationWindow(aggregationWindow);
+    }
+    public SensorConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @return copy of default configuration for a client session, not connected
+     * */
+    public SensorConfiguration newConfiguration() {
+        return new SensorConfiguration(configuration);
     }
     public void setMinValue(int minValue) {
         this.minValue = minValue;
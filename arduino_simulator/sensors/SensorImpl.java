@@ -1,6 +1,7 @@
 package arduino_simulator.sensors;
 
 import arduino_simulator.SensorType;
+import driver_framework.FrameworkUtils;
 
 import static arduino_simulator.SensorType.isSensorDataDigital;
 
@@ -30,6 +31,17 @@ public abstract class SensorImpl implements Sensor {
         }
     }
 
+    /**
+     * digital readings are written as they are, analog ones are copied from readDataValueAnalog()
+     * */
+    @Override
+    public int readDataValue(byte[] destination, int offset) {
+        if( !isDataDigital() ) return Sensor.super.readDataValue(destination, offset);
+
+        FrameworkUtils.writeInt(destination, offset, readDataValueDigital());
+        return 4;
+    }
+
     /**
      * used for error indication, specific sensor needs to override this method in order for it to work
      * */
@@ -0,0 +1,49 @@
+package arduino_simulator.sensors;
+
+import driver_framework.FrameworkUtils;
+import driver_framework.benchmarks.BenchmarkSensorEntry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * precision check deciding if a sample is sent at all, PRECISE always sends while IMPRECISE_OPTIMIZED compares sample to the previous one
+ * either through boxed getSensorValue(rawData) or through primitive values of declared sensor value encoding
+ * */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SensorEntryBenchmark {
+
+    @Param({"PRECISE", "IMPRECISE_OPTIMIZED"})
+    public SensorEntry.Precision precision;
+
+    @Param({"false", "true"})
+    public boolean primitiveValues;
+
+    private SensorEntry sensorEntry;
+    private SensorEntry.SensorPrecision sensorPrecision;
+    private final byte[] rawData = new byte[BenchmarkSensorEntry.DATA_SAMPLE_BYTE_LENGTH];
+    private final byte[] prevRawData = new byte[BenchmarkSensorEntry.DATA_SAMPLE_BYTE_LENGTH];
+    private int value = 0;
+
+    @Setup
+    public void setUp() {
+        sensorEntry = new BenchmarkSensorEntry(1);
+        sensorPrecision = new SensorEntry.SensorPrecision();
+        sensorPrecision.setPrecision(precision);
+        sensorPrecision.setDifference(2.0);
+        if( primitiveValues )
+            sensorEntry.setSensorValueEncoding(FormattedSchema.FieldType.INT32);
+    }
+
+    @Benchmark
+    public boolean dataChanged() {
+        FrameworkUtils.writeInt(prevRawData, 0, value);
+        FrameworkUtils.writeInt(rawData, 0, ++value & 1023);
+        return sensorEntry.dataChanged(rawData, prevRawData, sensorPrecision);
+    }
+}
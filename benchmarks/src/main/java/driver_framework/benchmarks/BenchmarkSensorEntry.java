@@ -0,0 +1,81 @@
+package driver_framework.benchmarks;
+
+import arduino_simulator.ArduinoSimulator;
+import arduino_simulator.SensorType;
+import arduino_simulator.sensors.FormattedSchema;
+import arduino_simulator.sensors.JsonSink;
+import arduino_simulator.sensors.PackedSink;
+import arduino_simulator.sensors.SensorEntry;
+import driver_framework.FrameworkUtils;
+import org.json.simple.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * analog sensor sending its value as a 4 byte integer, same as simulator's LightSensor
+ * formats its data either through a JSONObject ( json-simple fallback ) or by writing straight into JsonSink, or as packed values
+ * */
+public class BenchmarkSensorEntry extends SensorEntry {
+
+    public static final int DATA_SAMPLE_BYTE_LENGTH = 4;
+    private static final FormattedSchema FORMATTED_SCHEMA = new FormattedSchema().addField("analog", FormattedSchema.FieldType.INT32);
+
+    private final boolean streamingFormat;
+
+    public BenchmarkSensorEntry(int sensorID) {
+        this(sensorID, false);
+    }
+
+    public BenchmarkSensorEntry(int sensorID, boolean streamingFormat) {
+        super(SensorType.LIGHT_SENSOR, sensorID, DATA_SAMPLE_BYTE_LENGTH, ArduinoSimulator.ANALOG_LOWER_LIMIT, ArduinoSimulator.ANALOG_UPPER_LIMIT);
+        this.streamingFormat = streamingFormat;
+    }
+
+    @Override
+    public JSONObject formatRawData(byte[] rawData) {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("analog", FrameworkUtils.readInt(rawData, 0));
+        return jsonObject;
+    }
+
+    @Override
+    public void formatRawData(byte[] rawData, JsonSink out) {
+        if( !streamingFormat ){
+            super.formatRawData(rawData, out);
+            return;
+        }
+        out.beginObject()
+                .field("analog", FrameworkUtils.readInt(rawData, 0))
+                .endObject();
+    }
+
+    @Override
+    public FormattedSchema getFormattedSchema() {
+        return FORMATTED_SCHEMA;
+    }
+
+    @Override
+    public void formatRawData(byte[] rawData, PackedSink out) {
+        out.putInt32(FrameworkUtils.readInt(rawData, 0));
+    }
+
+    @Override
+    public Object[] getSensorValue(byte[] rawData) {
+        return new Object[]{ FrameworkUtils.readInt(rawData, 0) };
+    }
+
+    /**
+     * @return n sensors with ids 1..n
+     * */
+    public static List<SensorEntry> sensors(int n) {
+        return sensors(n, false);
+    }
+
+    public static List<SensorEntry> sensors(int n, boolean streamingFormat) {
+        List<SensorEntry> sensors = new ArrayList<>(n);
+        for( int i = 1; i<=n; ++i )
+            sensors.add(new BenchmarkSensorEntry(i, streamingFormat));
+        return sensors;
+    }
+}
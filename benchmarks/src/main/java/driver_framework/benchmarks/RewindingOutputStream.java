@@ -0,0 +1,42 @@
+package driver_framework.benchmarks;
+
+import java.io.OutputStream;
+
+/**
+ * in-memory client stream, writes into a fixed array and starts over from its beginning once it is full
+ * unlike ByteArrayOutputStream it never grows, so it doesn't add allocations of its own to the measured ones
+ * */
+public class RewindingOutputStream extends OutputStream {
+
+    private final byte[] buffer;
+    private int position = 0;
+
+    public RewindingOutputStream(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    @Override
+    public void write(int b) {
+        if( position == buffer.length ) position = 0;
+        buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while( len > 0 ){
+            if( position == buffer.length ) position = 0;
+            int n = Math.min(len, buffer.length - position);
+            System.arraycopy(b, off, buffer, position, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * @return number of bytes written since the stream last started over, consumed by benchmarks so writes aren't eliminated
+     * */
+    public int getPosition() {
+        return position;
+    }
+}
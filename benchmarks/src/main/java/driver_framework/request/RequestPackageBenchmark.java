@@ -0,0 +1,52 @@
+package driver_framework.request;
+
+import arduino_simulator.sensors.SensorEntry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * parsing a request from a blocking input stream ( SensorServerManager ) and from a channel's buffer ( ChannelSensorServer )
+ * CONFIGURE is the only request carrying additional data
+ * */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestPackageBenchmark {
+
+    @Param({"START_READ", "CONFIGURE"})
+    public Request request;
+
+    private RequestPackage requestPackage;
+    private ByteArrayInputStream requestInputStream;
+    private ByteBuffer requestBuffer;
+
+    @Setup
+    public void setUp() {
+        int additionalDataLength = request == Request.CONFIGURE ? SensorEntry.CONFIGURE_BYTE_LENGTH : 0;
+        byte[] requestBytes = ByteBuffer.allocate(5 + additionalDataLength).put(request.getValue()).putInt(1).array();
+
+        requestPackage = new RequestPackage();
+        requestInputStream = new ByteArrayInputStream(requestBytes);
+        requestBuffer = ByteBuffer.wrap(requestBytes);
+    }
+
+    @Benchmark
+    public Request getRequestPackageFromInputStream() throws IOException {
+        requestInputStream.reset();
+        requestPackage.getRequestPackage(requestInputStream);
+        return requestPackage.getRequestType();
+    }
+
+    @Benchmark
+    public boolean getRequestPackageFromBuffer() throws IOException {
+        requestBuffer.rewind();
+        return requestPackage.getRequestPackage(requestBuffer);
+    }
+}
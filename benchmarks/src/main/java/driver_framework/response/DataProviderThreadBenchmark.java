@@ -0,0 +1,57 @@
+package driver_framework.response;
+
+import arduino_simulator.sensors.SensorEntry;
+import driver_framework.FrameworkUtils;
+import driver_framework.benchmarks.BenchmarkSensorEntry;
+import driver_framework.benchmarks.RewindingOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * writing one sensor's sample taken out of a frame, either raw, formatted as JSON ( through JSONObject fallback or written straight into JsonSink ) or as packed values
+ * value of the sample changes on each call, so the cost of precision checks and formatting is not hidden by equal samples
+ * */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DataProviderThreadBenchmark {
+
+    @Param({"RAW", "JSON_OBJECT", "JSON_SINK", "PACKED"})
+    public String format;
+
+    private static final int N_SENSORS = 4;
+
+    private DataProviderThread dataProviderThread;
+    private SensorEntry sensor;
+    private byte[] frame;
+    private RewindingOutputStream clientOutputStream;
+    private int value = 0;
+
+    @Setup
+    public void setUp() {
+        List<SensorEntry> sensors = BenchmarkSensorEntry.sensors(N_SENSORS, format.equals("JSON_SINK"));
+        for( SensorEntry sensorEntry : sensors ){
+            sensorEntry.getConfiguration().setConnected(true);
+            sensorEntry.getConfiguration().setFormatted(!format.equals("RAW"));
+        }
+        sensor = sensors.get(0);
+        frame = new byte[N_SENSORS * BenchmarkSensorEntry.DATA_SAMPLE_BYTE_LENGTH];
+
+        clientOutputStream = new RewindingOutputStream(1 << 20);
+        dataProviderThread = new DataProviderThread(clientOutputStream, new ByteArrayInputStream(new byte[0]), sensors, 0);//never started, only its write path is used
+        dataProviderThread.setPackedFormattedData(format.equals("PACKED"));
+    }
+
+    @Benchmark
+    public int writeSensorData() {
+        FrameworkUtils.writeInt(frame, 0, value++ & 1023);
+        dataProviderThread.writeSensorData(sensor, 0, frame, 0);
+        return clientOutputStream.getPosition();
+    }
+}
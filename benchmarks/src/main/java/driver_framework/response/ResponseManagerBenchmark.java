@@ -0,0 +1,47 @@
+package driver_framework.response;
+
+import driver_framework.benchmarks.BenchmarkSensorEntry;
+import driver_framework.benchmarks.RewindingOutputStream;
+import driver_framework.request.Request;
+import driver_framework.request.RequestPackage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CONNECT handshake, CONNECT_Y response with every available sensor's entry is encoded on first CONNECT and cached by sensor registry
+ * */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseManagerBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int n_sensors;
+
+    private ResponseManager responseManager;
+    private RequestPackage connectRequestPackage;
+    private RewindingOutputStream clientOutputStream;
+
+    @Setup
+    public void setUp() throws IOException {
+        clientOutputStream = new RewindingOutputStream(1 << 20);
+        responseManager = new ResponseManager(new ByteArrayInputStream(new byte[0]), clientOutputStream, BenchmarkSensorEntry.sensors(n_sensors));
+
+        connectRequestPackage = new RequestPackage();
+        byte[] connectRequest = ByteBuffer.allocate(5).put(Request.CONNECT.getValue()).putInt(0).array();
+        connectRequestPackage.getRequestPackage(ByteBuffer.wrap(connectRequest));
+    }
+
+    @Benchmark
+    public int connectResponse() {
+        responseManager.onRequestArrived(connectRequestPackage);
+        return clientOutputStream.getPosition();
+    }
+}
@@ -0,0 +1,44 @@
+package driver_framework.response;
+
+import driver_framework.benchmarks.RewindingOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * encoding and writing a single response, with the additional data size of a typical sample up to a CONNECT handshake of many sensors
+ * */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponsePackageBenchmark {
+
+    @Param({"0", "8", "256", "17000"})
+    public int additionalDataLength;
+
+    private ResponsePackage responsePackage;
+    private RewindingOutputStream clientOutputStream;
+
+    @Setup
+    public void setUp() {
+        responsePackage = new ResponsePackage(Response.READING_SENSOR_DATA);
+        responsePackage.setResponseBody(1);
+        responsePackage.setAdditionalData(new byte[additionalDataLength]);
+        clientOutputStream = new RewindingOutputStream(1 << 20);
+    }
+
+    @Benchmark
+    public int sendResponse() {
+        responsePackage.sendResponse(clientOutputStream);
+        return clientOutputStream.getPosition();
+    }
+
+    @Benchmark
+    public int sendResponseFlushOnTickEnd() {
+        responsePackage.sendResponse(clientOutputStream, FlushPolicy.endOfTick());
+        return clientOutputStream.getPosition();
+    }
+}
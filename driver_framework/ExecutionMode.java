@@ -0,0 +1,74 @@
+package driver_framework;
+
+import java.lang.reflect.Method;
+
+/**
+ * decides which kind of threads run framework's loops ( request manager, data provider, sensor ingest, simulator )
+ *
+ *      PLATFORM_THREADS -> each loop is its own OS thread, default
+ *      VIRTUAL_THREADS -> each loop is a virtual thread, which leaves its carrier while blocked on I/O, so thousands of sessions fit in one JVM
+ *                         virtual threads need JDK 21+, on older runtimes platform threads are used instead
+ *
+ * @see FrameworkThread
+ * @see SensorServerManager.Builder
+ * */
+public enum ExecutionMode {
+    PLATFORM_THREADS,
+    VIRTUAL_THREADS;
+
+    //looked up reflectively so the framework still compiles and runs on runtimes without virtual threads
+    private static final Method OF_VIRTUAL;//Thread.ofVirtual()
+    private static final Method BUILDER_NAME;//Thread.Builder.name(String)
+    private static final Method BUILDER_UNSTARTED;//Thread.Builder.unstarted(Runnable)
+
+    static {
+        Method ofVirtual = null, builderName = null, builderUnstarted = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class);
+            builderUnstarted = builderClass.getMethod("unstarted", Runnable.class);
+            ofVirtual.invoke(null);//throws if virtual threads are only a preview feature that isn't enabled
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_UNSTARTED = builderUnstarted;
+    }
+
+    /**
+     * @return true if runtime provides virtual threads, otherwise VIRTUAL_THREADS falls back to platform threads
+     * */
+    public static boolean isVirtualThreadSupported(){
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param daemon only applies to platform threads, virtual threads are always daemon threads
+     * @return thread of this mode that will run given task once started
+     * */
+    public Thread newThread(Runnable task, String name, boolean daemon){
+        if( this == VIRTUAL_THREADS && isVirtualThreadSupported() ){
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name);
+                return (Thread) BUILDER_UNSTARTED.invoke(builder, task);
+            } catch (ReflectiveOperationException e) {
+                e.printStackTrace();
+            }
+        }
+
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(daemon);
+        return thread;
+    }
+
+    /**
+     * @return started thread of this mode running given task
+     * */
+    public Thread start(Runnable task, String name){
+        Thread thread = newThread(task, name, false);
+        thread.start();
+        return thread;
+    }
+}
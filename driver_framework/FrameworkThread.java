@@ -0,0 +1,73 @@
+package driver_framework;
+
+/**
+ * base of framework's long running loops
+ * loop runs on this thread itself by default, or on a separate thread of the set ExecutionMode ( e.g. a virtual thread )
+ *
+ * Note: in VIRTUAL_THREADS mode this object is never started itself, so join() and isAlive() don't follow the loop.
+ *       use awaitTermination() and isRunning() instead, they work in every mode
+ *
+ * @see ExecutionMode
+ * */
+public class FrameworkThread extends Thread {
+
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+    private volatile Thread runner = null;//thread actually running the loop, either this or a thread of execution mode
+
+    /**
+     * call before start()
+     * */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        if( runner != null ) throw new IllegalStateException("Execution mode can't be changed after thread started");
+        this.executionMode = executionMode;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    @Override
+    public synchronized void start() {
+        if( runner != null ) throw new IllegalThreadStateException();
+
+        if( executionMode == ExecutionMode.PLATFORM_THREADS ){
+            runner = this;
+            super.start();
+        }else{
+            runner = executionMode.newThread(this, getName(), isDaemon());//runs this.run()
+            runner.start();
+        }
+    }
+
+    /**
+     * waits for the loop to finish, returns right away if it was never started
+     * */
+    public void awaitTermination() throws InterruptedException {
+        Thread runner = this.runner;
+        if( runner != null )
+            runner.join();
+    }
+
+    /**
+     * @return true while the loop is running
+     * */
+    public boolean isRunning() {
+        Thread runner = this.runner;
+        return runner != null && runner.isAlive();
+    }
+
+    @Override
+    public void interrupt() {
+        Thread runner = this.runner;
+        if( runner != null && runner != this )
+            runner.interrupt();
+        else
+            super.interrupt();
+    }
+
+    @Override
+    public State getState() {
+        Thread runner = this.runner;
+        return runner != null && runner != this ? runner.getState() : super.getState();
+    }
+}
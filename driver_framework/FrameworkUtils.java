@@ -3,6 +3,7 @@ package driver_framework;
 import driver_framework.response.Response;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 
 public interface FrameworkUtils {
@@ -20,9 +21,58 @@ public interface FrameworkUtils {
         writeAndHandleException(outputStreamClient, responseAsByteArray);
     }
 
+    /**
+     * writes an integer as 4 big endian bytes into destination starting at offset
+     * */
+    public static void writeInt(byte[] destination, int offset, int value){
+        destination[offset] = (byte)(value >>> 24);
+        destination[offset + 1] = (byte)(value >>> 16);
+        destination[offset + 2] = (byte)(value >>> 8);
+        destination[offset + 3] = (byte)value;
+    }
+
+    /**
+     * writes a long as 8 big endian bytes into destination starting at offset
+     * */
+    public static void writeLong(byte[] destination, int offset, long value){
+        writeInt(destination, offset, (int)(value >>> 32));
+        writeInt(destination, offset + 4, (int)value);
+    }
+
+    /**
+     * reads 4 big endian bytes from source starting at offset as an integer
+     * */
+    public static int readInt(byte[] source, int offset){
+        return (source[offset] << 24) | ((source[offset + 1] & 0xFF) << 16) | ((source[offset + 2] & 0xFF) << 8) | (source[offset + 3] & 0xFF);
+    }
+
+    /**
+     * reads 8 big endian bytes from source starting at offset as a long
+     * */
+    public static long readLong(byte[] source, int offset){
+        return ((long) readInt(source, offset) << 32) | (readInt(source, offset + 4) & 0xFFFF_FFFFL);
+    }
+
+    /**
+     * reads until length bytes are read or end of stream is reached, streams are allowed to return less than requested on a single read
+     * @return number of bytes read, less than length only if end of stream was reached
+     * */
+    public static int readFully(InputStream inputStream, byte[] destination, int offset, int length) throws IOException {
+        int n_read = 0;
+        while( n_read < length ){
+            int n = inputStream.read(destination, offset + n_read, length - n_read);
+            if( n == -1 ) break;
+            n_read += n;
+        }
+        return n_read;
+    }
+
     public static void waitServerTermination(Thread thread){
         try {
-            thread.join();
+            if( thread instanceof FrameworkThread )
+                ((FrameworkThread) thread).awaitTermination();//loop might run on a virtual thread rather than on this one
+            else
+                thread.join();
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
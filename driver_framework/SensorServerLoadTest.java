@@ -0,0 +1,141 @@
+package driver_framework;
+
+import arduino_simulator.ArduinoSimulator;
+import arduino_simulator.sensors.LightSensor;
+import arduino_simulator.sensors.LightSensorEntry;
+import arduino_simulator.sensors.Sensor;
+import arduino_simulator.sensors.SensorEntry;
+import driver_framework.request.Request;
+import driver_framework.response.Response;
+import driver_framework.response.SensorHub;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * runs many simulated client sessions at once against a single simulated board, all clients share its data through a SensorHub
+ * each session: CONNECT -> CONNECT_SENSOR -> START_READ -> reads sensor data for a while -> STOP_READ -> DISCONNECT
+ *
+ * arguments: [number of sessions] [PLATFORM_THREADS | VIRTUAL_THREADS] [reading time in ms]
+ * e.g. 5000 VIRTUAL_THREADS 2000 ( virtual threads need JDK 21+, platform threads are used otherwise )
+ * */
+public class SensorServerLoadTest {
+
+    private static final int SENSOR_ID = 1;
+    private static final int SAMPLE_RATE = 50;//ms
+
+    public static void main(String[] args) {
+        int n_sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        ExecutionMode executionMode = args.length > 1 ? ExecutionMode.valueOf(args[1]) : ExecutionMode.VIRTUAL_THREADS;
+        long readingTime = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+
+        System.out.println(n_sessions + " sessions on " + executionMode + ( executionMode == ExecutionMode.VIRTUAL_THREADS && !ExecutionMode.isVirtualThreadSupported() ? " ( not supported by this runtime, using platform threads )" : "" ));
+
+        List<Sensor> sensors = new ArrayList<>();
+        sensors.add(new LightSensor());
+        ArduinoSimulator arduinoSimulator = new ArduinoSimulator(sensors);
+        InputStream sensorInputStream = arduinoSimulator.connectViaBluetooth();
+        arduinoSimulator.start();
+
+        List<SensorEntry> availableSensors = new ArrayList<>();
+        availableSensors.add(new LightSensorEntry(SENSOR_ID));
+        availableSensors.get(0).setSampleRate(SAMPLE_RATE);
+        SensorHub sensorHub = new SensorHub(sensorInputStream, availableSensors);
+        sensorHub.setExecutionMode(executionMode);
+
+        AtomicInteger n_completed = new AtomicInteger();
+        AtomicLong n_samples = new AtomicLong();
+        List<Thread> clients = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for( int i = 0; i<n_sessions; ++i ){
+                Pipe requests = Pipe.open();
+                Pipe responses = Pipe.open();
+
+                SensorServerManager sensorServerManager = SensorServerManager.builder()
+                        .setSensorHub(sensorHub)
+                        .setClientStreams(Channels.newOutputStream(responses.sink()), Channels.newInputStream(requests.source()))
+                        .setExecutionMode(executionMode)
+                        .build();
+                sensorServerManager.start();
+
+                OutputStream requestStream = Channels.newOutputStream(requests.sink());
+                DataInputStream responseStream = new DataInputStream(new BufferedInputStream(Channels.newInputStream(responses.source())));
+                clients.add(executionMode.start(() -> {
+                    try {
+                        n_samples.addAndGet(runSession(requestStream, responseStream, readingTime));
+                        n_completed.incrementAndGet();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }, "client-" + i));
+            }
+
+            for( Thread client : clients )
+                client.join();
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("completed sessions: " + n_completed.get() + "/" + n_sessions + " in " + elapsed + " ms");
+        System.out.println("samples received: " + n_samples.get() + ", " + (n_completed.get() == 0 ? 0 : n_samples.get() / n_completed.get()) + " per session ( expected about " + readingTime / SAMPLE_RATE + " )");
+
+        sensorHub.shutdown();
+        arduinoSimulator.disconnect();
+    }
+
+    /**
+     * @return number of READING_SENSOR_DATA responses received
+     * */
+    private static long runSession(OutputStream requestStream, DataInputStream responseStream, long readingTime) throws IOException {
+        sendRequest(requestStream, Request.CONNECT, 0);
+        expectResponse(responseStream, Response.CONNECT_Y);
+        int n_sensors = responseStream.readInt();
+        responseStream.readFully(new byte[n_sensors * SensorEntry.SENSOR_ENTRY_BYTE_LENGTH]);
+
+        sendRequest(requestStream, Request.CONNECT_SENSOR, SENSOR_ID);
+        expectResponse(responseStream, Response.CONNECT_SENSOR_Y);
+        responseStream.readInt();
+
+        sendRequest(requestStream, Request.START_READ, 0);
+        expectResponse(responseStream, Response.START_READ_Y);
+        responseStream.readInt();
+
+        long n_samples = 0;
+        long end = System.currentTimeMillis() + readingTime;
+        while( System.currentTimeMillis() < end ){
+            expectResponse(responseStream, Response.READING_SENSOR_DATA);
+            responseStream.readInt();//sensor id
+            responseStream.readInt();//raw data
+            ++n_samples;
+        }
+
+        sendRequest(requestStream, Request.STOP_READ, 0);
+        byte responseByte;
+        while( (responseByte = responseStream.readByte()) == Response.READING_SENSOR_DATA.getValue() )//samples written before reading stopped
+            responseStream.readFully(new byte[4 + 4]);
+        if( responseByte != Response.STOP_READ_Y.getValue() ) throw new IOException("Expected STOP_READ_Y, got " + responseByte);
+        responseStream.readInt();
+
+        sendRequest(requestStream, Request.DISCONNECT, 0);
+        return n_samples;
+    }
+
+    private static void sendRequest(OutputStream requestStream, Request request, int body) throws IOException {
+        requestStream.write(request.getValue());
+        requestStream.write(ByteBuffer.allocate(4).putInt(body).array());
+        requestStream.flush();
+    }
+
+    private static void expectResponse(DataInputStream responseStream, Response response) throws IOException {
+        byte responseByte = responseStream.readByte();
+        if( responseByte != response.getValue() ) throw new IOException("Expected " + response + ", got " + responseByte);
+    }
+}
@@ -1,17 +1,23 @@
 package driver_framework;
 
 import arduino_simulator.sensors.SensorEntry;
+import driver_framework.metrics.MetricsRegistry;
+import driver_framework.metrics.SessionMetrics;
 import driver_framework.request.RequestManagerThread;
 import driver_framework.request.RequestObserver;
+import driver_framework.response.FlushPolicy;
+import driver_framework.response.FrameRingBuffer;
 import driver_framework.response.ResponseManager;
+import driver_framework.response.SensorHub;
 
 import java.io.*;
 import java.util.List;
 
 /**
  * instance of this class is to be used by driver developer in order to start providing communicatino with Android device
+ * either instantiate it through one of the constructors or through builder(), which also lets server run on virtual threads
  * */
-public class SensorServerManager extends Thread{
+public class SensorServerManager extends FrameworkThread{
 
    RequestManagerThread requestManagerThread = null;
    ResponseManager responseManager = null;
@@ -21,6 +27,98 @@ public class SensorServerManager extends Thread{
         requestManagerThread = new RequestManagerThread(serverInputStream, (RequestObserver) responseManager);
     }
 
+    /**
+     * use when several clients read the same sensors, each client gets its own SensorServerManager sharing the same hub
+     * @see SensorHub
+     * */
+    public SensorServerManager(SensorHub sensorHub, OutputStream clientOutputStream, InputStream serverInputStream){
+        responseManager = new ResponseManager(sensorHub, clientOutputStream);
+        requestManagerThread = new RequestManagerThread(serverInputStream, (RequestObserver) responseManager);
+    }
+
+    /**
+     * sets kind of threads this server's request, data provider and ( if sensor's input stream isn't shared ) sensor reading loops run on
+     * call before start()
+     * @see ExecutionMode
+     * */
+    @Override
+    public void setExecutionMode(ExecutionMode executionMode) {
+        super.setExecutionMode(executionMode);
+        requestManagerThread.setExecutionMode(executionMode);
+        responseManager.setExecutionMode(executionMode);
+    }
+
+    /**
+     * sets when sensor data is flushed to the client, by default each response is flushed right away
+     * call before start()
+     * @see FlushPolicy
+     * */
+    public void setFlushPolicy(FlushPolicy flushPolicy){
+        responseManager.setFlushPolicy(flushPolicy);
+    }
+
+    /**
+     * this session's requests, responses, bytes, sensor frames and latencies are recorded by a session of the given registry, nothing is recorded by default
+     * call before start()
+     * @see MetricsRegistry
+     * */
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry){
+        if( isRunning() ) throw new IllegalStateException("Metrics registry has to be set before server starts");
+        SessionMetrics sessionMetrics = metricsRegistry.newSession();
+        responseManager.getSessionMetrics().close();//session of a registry set before is replaced
+        responseManager.setSessionMetrics(sessionMetrics);
+        requestManagerThread.setSessionMetrics(sessionMetrics);
+    }
+
+    /**
+     * @return metrics this session records to, SessionMetrics.NO_OP unless a metrics registry was set
+     * */
+    public SessionMetrics getSessionMetrics(){
+        return responseManager.getSessionMetrics();
+    }
+
+    /**
+     * sets how many sensor frames can wait for a slow client and what happens with frames once that many are waiting
+     * by default 16 frames are kept and oldest ones are dropped
+     * call before start()
+     * @see FrameRingBuffer
+     * */
+    public void setSensorFrameBuffer(int capacity, FrameRingBuffer.OverflowPolicy overflowPolicy){
+        responseManager.setSensorFrameBuffer(capacity, overflowPolicy);
+    }
+
+    /**
+     * use if board sends a sync marker before each frame ( and optionally a XOR checksum after it ), lets the framework find frame boundaries again after bytes were lost
+     * call before start()
+     * @see driver_framework.response.SensorFrameReader
+     * */
+    public void setSensorFraming(byte[] syncMarker, boolean checksum){
+        responseManager.setSensorFraming(syncMarker, checksum);
+    }
+
+    /**
+     * same as above, board also sends its own tick ( microseconds ) after the sync marker. Clients asking for sample timestamps get it with each sample
+     * call before start()
+     * @see driver_framework.response.SampleTimestamps
+     * */
+    public void setSensorFraming(byte[] syncMarker, boolean checksum, boolean boardTick){
+        responseManager.setSensorFraming(syncMarker, checksum, boardTick);
+    }
+
+    /**
+     * @return how many times frame boundaries of sensor's data had to be found again
+     * */
+    public long getSensorResyncCount(){
+        return responseManager.getSensorResyncCount();
+    }
+
+    /**
+     * @return buffer between sensor and client, used to check how many frames were dropped. null before reading started
+     * */
+    public FrameRingBuffer getSensorFrameBuffer(){
+        return responseManager.getSensorFrameBuffer();
+    }
+
     /**
      * after everything is properly set up, call start() on SensorServerManager instance
      * executing it waits for requests and sends responses accordingly
@@ -34,11 +132,101 @@ public class SensorServerManager extends Thread{
 
     }
 
-    private void join(Thread thread){
+    private void join(FrameworkThread thread){
         try {
-            thread.join();
+            thread.awaitTermination();
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
     }
+
+    public static Builder builder(){
+        return new Builder();
+    }
+
+    /**
+     * Usage:
+     *      SensorServerManager.builder()
+     *              .setSensorInputStream(sensorInputStream, availableSensors) ( or .setSensorHub(sensorHub) )
+     *              .setClientStreams(clientOutputStream, serverInputStream)
+     *              .setExecutionMode(ExecutionMode.VIRTUAL_THREADS)
+     *              .build()
+     *              .start();
+     * */
+    public static class Builder{
+        private InputStream sensorInputStream = null;
+        private List<SensorEntry> availableSensors = null;
+        private SensorHub sensorHub = null;
+        private OutputStream clientOutputStream = null;
+        private InputStream serverInputStream = null;
+        private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+        private MetricsRegistry metricsRegistry = null;
+
+        private Builder(){}
+
+        /**
+         * this client is the only one reading given sensor's input stream
+         * */
+        public Builder setSensorInputStream(InputStream sensorInputStream, List<SensorEntry> availableSensors){
+            this.sensorInputStream = sensorInputStream;
+            this.availableSensors = availableSensors;
+            this.sensorHub = null;
+            return this;
+        }
+
+        /**
+         * client shares sensor data read by the hub with other clients
+         * */
+        public Builder setSensorHub(SensorHub sensorHub){
+            this.sensorHub = sensorHub;
+            this.sensorInputStream = null;
+            this.availableSensors = null;
+            return this;
+        }
+
+        /**
+         * @param clientOutputStream responses are written to it
+         * @param serverInputStream requests are read from it
+         * */
+        public Builder setClientStreams(OutputStream clientOutputStream, InputStream serverInputStream){
+            this.clientOutputStream = clientOutputStream;
+            this.serverInputStream = serverInputStream;
+            return this;
+        }
+
+        /**
+         * PLATFORM_THREADS by default
+         * @see ExecutionMode
+         * */
+        public Builder setExecutionMode(ExecutionMode executionMode){
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        /**
+         * nothing is recorded by default
+         * @see MetricsRegistry
+         * */
+        public Builder setMetricsRegistry(MetricsRegistry metricsRegistry){
+            this.metricsRegistry = metricsRegistry;
+            return this;
+        }
+
+        public SensorServerManager build(){
+            if( clientOutputStream == null || serverInputStream == null ) throw new IllegalStateException("Client's streams are not set");
+
+            SensorServerManager sensorServerManager;
+            if( sensorHub != null )
+                sensorServerManager = new SensorServerManager(sensorHub, clientOutputStream, serverInputStream);
+            else if( sensorInputStream != null && availableSensors != null )
+                sensorServerManager = new SensorServerManager(sensorInputStream, clientOutputStream, serverInputStream, availableSensors);
+            else
+                throw new IllegalStateException("Neither sensor's input stream nor sensor hub is set");
+
+            sensorServerManager.setExecutionMode(executionMode);
+            if( metricsRegistry != null )
+                sensorServerManager.setMetricsRegistry(metricsRegistry);
+            return sensorServerManager;
+        }
+    }
 }
@@ -0,0 +1,157 @@
+package driver_framework;
+
+import arduino_simulator.ArduinoSimulator;
+import arduino_simulator.sensors.LightSensor;
+import arduino_simulator.sensors.LightSensorEntry;
+import arduino_simulator.sensors.Sensor;
+import arduino_simulator.sensors.SensorEntry;
+import driver_framework.request.Request;
+import driver_framework.response.Response;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * tests of a whole client session against a simulated board, a session that doesn't finish within its timeout fails.
+ * Exits with status 1 if any of them fails
+ * */
+public class SensorServerManagerTest {
+
+    private static final int SENSOR_ID = 1;
+    private static final long SESSION_TIMEOUT_MS = 10_000;
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> {
+            if( !(e instanceof SensorHookFailure) ) e.printStackTrace();
+        });
+
+        testProviderFailure();
+
+        if( failures > 0 ){
+            System.out.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All sensor server manager tests passed");
+        System.exit(0);//simulator's threads don't stop on their own
+    }
+
+    /**
+     * a sensor's hook throwing while reading kills the data provider, STOP_READ and DISCONNECT are still answered
+     * */
+    private static void testProviderFailure() throws Exception {
+        List<Sensor> sensors = new ArrayList<>();
+        sensors.add(new LightSensor());
+        ArduinoSimulator arduinoSimulator = new ArduinoSimulator(sensors);
+        InputStream sensorInputStream = arduinoSimulator.connectViaBluetooth();
+
+        FailingSensorEntry sensorEntry = new FailingSensorEntry(2);
+        List<SensorEntry> availableSensors = new ArrayList<>();
+        availableSensors.add(sensorEntry);
+
+        Pipe requests = Pipe.open();
+        Pipe responses = Pipe.open();
+        SensorServerManager sensorServerManager = SensorServerManager.builder()
+                .setSensorInputStream(sensorInputStream, availableSensors)
+                .setClientStreams(Channels.newOutputStream(responses.sink()), Channels.newInputStream(requests.source()))
+                .build();
+        OutputStream requestStream = Channels.newOutputStream(requests.sink());
+        DataInputStream responseStream = new DataInputStream(Channels.newInputStream(responses.source()));
+
+        arduinoSimulator.start();
+        sensorServerManager.start();
+
+        boolean finished = runWithTimeout(() -> {
+            sendRequest(requestStream, Request.CONNECT_SENSOR, SENSOR_ID);
+            expectResponse(responseStream, Response.CONNECT_SENSOR_Y);
+            sendRequest(requestStream, Request.START_READ, 0);
+            expectResponse(responseStream, Response.START_READ_Y);
+            for( int i = 0; i<sensorEntry.n_samples; ++i ){
+                expectResponse(responseStream, Response.READING_SENSOR_DATA);
+                responseStream.readFully(new byte[LightSensorEntry.DATA_SAMPLE_BYTE_LENGTH]);
+            }
+            check("sensor's hook threw", sensorEntry.failed.await(SESSION_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+            sendRequest(requestStream, Request.STOP_READ, 0);
+            expectResponse(responseStream, Response.STOP_READ_N);//provider isn't reading anymore
+            sendRequest(requestStream, Request.DISCONNECT, 0);
+            FrameworkUtils.waitServerTermination(sensorServerManager);
+            return null;
+        });
+        check("session with failed data provider finished", finished);
+        arduinoSimulator.disconnect();
+    }
+
+    private static boolean runWithTimeout(ClientSteps clientSteps) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        Thread client = new Thread(() -> {
+            try {
+                clientSteps.run();
+                done.countDown();
+            } catch (Exception e) {
+                System.out.println("Client failed: " + e);
+            }
+        });
+        client.setDaemon(true);//left behind if session hangs
+        client.start();
+        return done.await(SESSION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void sendRequest(OutputStream requestStream, Request request, int body) throws IOException {
+        requestStream.write(request.getValue());
+        requestStream.write(ByteBuffer.allocate(4).putInt(body).array());
+        requestStream.flush();
+    }
+
+    /**
+     * reads response's type and body
+     * */
+    private static void expectResponse(DataInputStream responseStream, Response response) throws IOException {
+        byte responseByte = responseStream.readByte();
+        if( responseByte != response.getValue() ) throw new IOException("Expected " + response + ", got " + responseByte);
+        responseStream.readInt();
+    }
+
+    private static void check(String name, boolean passed){
+        if( passed ) return;
+        ++failures;
+        System.out.println("FAILED: " + name);
+    }
+
+    private interface ClientSteps{
+        Void run() throws Exception;
+    }
+
+    private static class SensorHookFailure extends RuntimeException{
+        SensorHookFailure(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * throws from dataChanged once it passed the given number of samples
+     * */
+    private static class FailingSensorEntry extends LightSensorEntry {
+        private final int n_samples;
+        private int n_calls = 0;
+        private final CountDownLatch failed = new CountDownLatch(1);
+
+        FailingSensorEntry(int n_samples) {
+            super(SENSOR_ID);
+            this.n_samples = n_samples;
+        }
+
+        @Override
+        public boolean dataChanged(byte[] rawData, byte[] prevRawData, SensorPrecision sensorPrecision) {
+            if( ++n_calls <= n_samples ) return true;
+            failed.countDown();
+            throw new SensorHookFailure("Sensor " + getSensorID() + " failed");
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package driver_framework;
+
+import arduino_simulator.ArduinoSimulator;
+import arduino_simulator.sensors.LightSensor;
+import arduino_simulator.sensors.LightSensorEntry;
+import arduino_simulator.sensors.Sensor;
+import arduino_simulator.sensors.SensorEntry;
+import driver_framework.metrics.InMemoryMetricsRegistry;
+import driver_framework.metrics.MetricsSnapshot;
+import driver_framework.request.Request;
+import driver_framework.response.FlushPolicy;
+import driver_framework.response.Response;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * measures how many frames per second make it from a simulated board through a single SensorServerManager session to its client.
+ * Every sensor is sampled on each frame and each frame's samples arrive as one READING_SENSOR_DATA_BATCH, so batches received per second are frames per second
+ *
+ * arguments: [reading time in ms] [frames per second, 0 for max throughput] [number of sensors] [flush every n bytes, 0 flushes each frame]
+ * e.g. 5000 0 8 8192
+ * */
+public class SensorServerThroughputTest {
+
+    public static void main(String[] args) throws IOException {
+        long readingTime = args.length > 0 ? Long.parseLong(args[0]) : 3000;
+        int frameRate = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        int n_sensors = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int flushBytes = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        List<Sensor> sensors = new ArrayList<>();
+        List<SensorEntry> availableSensors = new ArrayList<>();
+        for( int i = 0; i<n_sensors; ++i ){
+            sensors.add(new LightSensor());
+            availableSensors.add(new LightSensorEntry(i + 1));
+            availableSensors.get(i).setSampleRate(0);//sampled on each frame
+        }
+
+        ArduinoSimulator arduinoSimulator = new ArduinoSimulator(sensors, Integer.MAX_VALUE);//only frame rate limits pacing
+        arduinoSimulator.setMaxThroughput(frameRate == 0);
+        arduinoSimulator.setFrameRate(frameRate);
+        InputStream sensorInputStream = arduinoSimulator.connectViaBluetooth();
+
+        Pipe requests = Pipe.open();
+        Pipe responses = Pipe.open();
+        InMemoryMetricsRegistry metricsRegistry = new InMemoryMetricsRegistry();
+        SensorServerManager sensorServerManager = SensorServerManager.builder()
+                .setSensorInputStream(sensorInputStream, availableSensors)
+                .setClientStreams(Channels.newOutputStream(responses.sink()), Channels.newInputStream(requests.source()))
+                .setMetricsRegistry(metricsRegistry)
+                .build();
+        if( flushBytes > 0 )
+            sensorServerManager.setFlushPolicy(FlushPolicy.everyNBytes(flushBytes));
+        OutputStream requestStream = Channels.newOutputStream(requests.sink());
+        DataInputStream responseStream = new DataInputStream(new BufferedInputStream(Channels.newInputStream(responses.source()), 1 << 16));
+
+        arduinoSimulator.start();
+        sensorServerManager.start();
+
+        sendRequest(requestStream, Request.CONNECT, Request.CONNECT_FLAG_BATCHED_SENSOR_DATA);
+        expectResponse(responseStream, Response.CONNECT_Y);
+        responseStream.readFully(new byte[responseStream.readInt() * SensorEntry.SENSOR_ENTRY_BYTE_LENGTH]);
+        sendRequest(requestStream, Request.CONNECT_SENSORS, Request.BULK_WILDCARD);
+        expectResponse(responseStream, Response.CONNECT_SENSORS_Y);
+        responseStream.readFully(new byte[(responseStream.readInt() + 7) / 8]);
+
+        long simulatorFramesAtStart = arduinoSimulator.getFramesWritten();
+        sendRequest(requestStream, Request.START_READ, 0);
+        expectResponse(responseStream, Response.START_READ_Y);
+        responseStream.readInt();
+
+        byte[] batch = new byte[n_sensors * (4 + 4 + 4)];
+        long n_batches = 0;
+        long n_samples = 0;
+        long start = System.nanoTime();
+        long end = start + readingTime * 1_000_000;
+        while( System.nanoTime() < end ){
+            expectResponse(responseStream, Response.READING_SENSOR_DATA_BATCH);
+            int batchCount = responseStream.readInt();
+            responseStream.readFully(batch, 0, batchCount * (4 + 4 + 4));//sensor id, payload length, raw sample of each sensor
+            ++n_batches;
+            n_samples += batchCount;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long simulatorFrames = arduinoSimulator.getFramesWritten() - simulatorFramesAtStart;
+
+        MetricsSnapshot metrics = metricsRegistry.snapshot().get(0);
+        sendRequest(requestStream, Request.DISCONNECT, 0);
+        FrameworkUtils.waitServerTermination(sensorServerManager);//stops reading sensor's input stream before it is closed
+        arduinoSimulator.disconnect();
+
+        System.out.println(n_sensors + " sensors, " + (frameRate == 0 ? "max throughput" : frameRate + " frames/s") + ", " + readingTime + " ms" + (flushBytes > 0 ? ", flushed every " + flushBytes + " bytes" : ""));
+        System.out.printf("simulator: %.0f frames/s%n", simulatorFrames / seconds);
+        System.out.printf("server read: %.0f frames/s, dropped %d frames, downsampled %d frames%n", metrics.getFramesRead() / seconds, metrics.getDroppedFrames(), metrics.getDownsampledFrames());
+        System.out.printf("client received: %.0f frames/s, %.0f samples/s, %.1f MB/s%n", n_batches / seconds, n_samples / seconds, metrics.getBytesSent() / seconds / 1e6);
+        System.out.println("sample latency: " + metrics.getSampleLatency());
+        System.exit(0);
+    }
+
+    private static void sendRequest(OutputStream requestStream, Request request, int body) throws IOException {
+        requestStream.write(request.getValue());
+        requestStream.write(ByteBuffer.allocate(4).putInt(body).array());
+        requestStream.flush();
+    }
+
+    private static void expectResponse(DataInputStream responseStream, Response response) throws IOException {
+        byte responseByte = responseStream.readByte();
+        if( responseByte != response.getValue() ) throw new IOException("Expected " + response + ", got " + responseByte);
+    }
+}
@@ -0,0 +1,48 @@
+package driver_framework.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * keeps metrics of open sessions in memory, sessions are named session-1, session-2, ... in order of creation
+ * and are left out once closed
+ * */
+public class InMemoryMetricsRegistry implements MetricsRegistry {
+
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final Map<String, InMemorySessionMetrics> sessions = new ConcurrentHashMap<>();
+
+    @Override
+    public SessionMetrics newSession() {
+        InMemorySessionMetrics sessionMetrics = new InMemorySessionMetrics("session-" + sessionCount.incrementAndGet(), this);
+        sessions.put(sessionMetrics.getName(), sessionMetrics);
+        sessionCreated(sessionMetrics);
+        return sessionMetrics;
+    }
+
+    /**
+     * @return null if there is no open session of given name
+     * */
+    public InMemorySessionMetrics getSession(String name) {
+        return sessions.get(name);
+    }
+
+    /**
+     * @return snapshots of open sessions
+     * */
+    public List<MetricsSnapshot> snapshot() {
+        List<MetricsSnapshot> snapshots = new ArrayList<>(sessions.size());
+        for( InMemorySessionMetrics sessionMetrics : sessions.values() )
+            snapshots.add(sessionMetrics.snapshot());
+        return snapshots;
+    }
+
+    protected void sessionCreated(InMemorySessionMetrics sessionMetrics) {}
+
+    protected void sessionClosed(InMemorySessionMetrics sessionMetrics) {
+        sessions.remove(sessionMetrics.getName());
+    }
+}
@@ -0,0 +1,116 @@
+package driver_framework.metrics;
+
+import driver_framework.request.Request;
+import driver_framework.response.Response;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * session metrics kept in memory, counters are striped ( LongAdder ) as data provider and request thread record concurrently
+ * */
+public class InMemorySessionMetrics implements SessionMetrics {
+
+    private static final Request[] REQUESTS = Request.values();
+    private static final Response[] RESPONSES = Response.values();
+    private static final int UNKNOWN_REQUEST = REQUESTS.length;//last slot of request counts
+
+    private final String name;
+    private final InMemoryMetricsRegistry registry;
+
+    private final AtomicLongArray requestCounts = new AtomicLongArray(REQUESTS.length + 1);
+    private final AtomicLongArray responseCounts = new AtomicLongArray(RESPONSES.length);
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder framesRead = new LongAdder();
+    private final LongAdder samplesSent = new LongAdder();
+    private final LongAdder samplesSuppressed = new LongAdder();
+    private volatile LongSupplier droppedFrames = () -> 0;
+    private volatile LongSupplier downsampledFrames = () -> 0;
+
+    private final LatencyHistogram requestLatency = new LatencyHistogram();
+    private final LatencyHistogram sampleLatency = new LatencyHistogram();
+
+    private volatile boolean closed = false;
+
+    InMemorySessionMetrics(String name, InMemoryMetricsRegistry registry) {
+        this.name = name;
+        this.registry = registry;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void requestHandled(Request request, Response response, long latencyNanos) {
+        requestCounts.incrementAndGet(request == null ? UNKNOWN_REQUEST : request.ordinal());
+        if( response != null ) responseCounts.incrementAndGet(response.ordinal());
+        requestLatency.record(latencyNanos);
+    }
+
+    @Override
+    public void sensorDataSent(Response response, int n_samples, long latencyNanos) {
+        responseCounts.incrementAndGet(response.ordinal());
+        samplesSent.add(n_samples);
+        sampleLatency.record(latencyNanos);
+    }
+
+    @Override
+    public void bytesReceived(int n_bytes) {
+        bytesReceived.add(n_bytes);
+    }
+
+    @Override
+    public void bytesSent(int n_bytes) {
+        bytesSent.add(n_bytes);
+    }
+
+    @Override
+    public void frameRead() {
+        framesRead.increment();
+    }
+
+    @Override
+    public void sampleSuppressed() {
+        samplesSuppressed.increment();
+    }
+
+    @Override
+    public void setDroppedFrames(LongSupplier droppedFrames) {
+        this.droppedFrames = droppedFrames;
+    }
+
+    @Override
+    public void setDownsampledFrames(LongSupplier downsampledFrames) {
+        this.downsampledFrames = downsampledFrames;
+    }
+
+    @Override
+    public void close() {
+        if( closed ) return;
+        closed = true;
+        registry.sessionClosed(this);
+    }
+
+    public MetricsSnapshot snapshot() {
+        long[] requests = new long[requestCounts.length()];
+        for( int i = 0; i<requests.length; ++i ) requests[i] = requestCounts.get(i);
+        long[] responses = new long[responseCounts.length()];
+        for( int i = 0; i<responses.length; ++i ) responses[i] = responseCounts.get(i);
+
+        return new MetricsSnapshot(name, requests, responses,
+                bytesReceived.sum(), bytesSent.sum(), framesRead.sum(), samplesSent.sum(), samplesSuppressed.sum(), droppedFrames.getAsLong(), downsampledFrames.getAsLong(),
+                requestLatency.snapshot(), sampleLatency.snapshot());
+    }
+}
@@ -0,0 +1,102 @@
+package driver_framework.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * in memory registry exposing each open session as an MXBean named driver_framework:type=SensorSession,name=session-N.
+ * Attributes are computed from a fresh snapshot whenever they are read, recording costs the same as without JMX
+ * */
+public class JmxMetricsRegistry extends InMemoryMetricsRegistry {
+
+    public static final String OBJECT_NAME_PREFIX = "driver_framework:type=SensorSession,name=";
+
+    private final MBeanServer mBeanServer;
+
+    public JmxMetricsRegistry() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxMetricsRegistry(MBeanServer mBeanServer) {
+        this.mBeanServer = mBeanServer;
+    }
+
+    @Override
+    protected void sessionCreated(InMemorySessionMetrics sessionMetrics) {
+        try {
+            mBeanServer.registerMBean(new SessionMetricsBean(sessionMetrics), getObjectName(sessionMetrics));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    protected void sessionClosed(InMemorySessionMetrics sessionMetrics) {
+        super.sessionClosed(sessionMetrics);
+        try {
+            mBeanServer.unregisterMBean(getObjectName(sessionMetrics));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static ObjectName getObjectName(InMemorySessionMetrics sessionMetrics) throws JMException {
+        return new ObjectName(OBJECT_NAME_PREFIX + sessionMetrics.getName());
+    }
+
+    private static class SessionMetricsBean implements SessionMetricsMXBean {
+        private final InMemorySessionMetrics sessionMetrics;
+
+        SessionMetricsBean(InMemorySessionMetrics sessionMetrics) {
+            this.sessionMetrics = sessionMetrics;
+        }
+
+        @Override
+        public Map<String, Long> getRequestCounts() {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            sessionMetrics.snapshot().getRequestCounts().forEach((request, count) -> counts.put(request.name(), count));
+            return counts;
+        }
+
+        @Override
+        public Map<String, Long> getResponseCounts() {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            sessionMetrics.snapshot().getResponseCounts().forEach((response, count) -> counts.put(response.name(), count));
+            return counts;
+        }
+
+        @Override
+        public long getUnknownRequests() { return sessionMetrics.snapshot().getUnknownRequests(); }
+        @Override
+        public long getBytesReceived() { return sessionMetrics.snapshot().getBytesReceived(); }
+        @Override
+        public long getBytesSent() { return sessionMetrics.snapshot().getBytesSent(); }
+        @Override
+        public long getFramesRead() { return sessionMetrics.snapshot().getFramesRead(); }
+        @Override
+        public long getSamplesSent() { return sessionMetrics.snapshot().getSamplesSent(); }
+        @Override
+        public long getSamplesSuppressed() { return sessionMetrics.snapshot().getSamplesSuppressed(); }
+        @Override
+        public long getDroppedFrames() { return sessionMetrics.snapshot().getDroppedFrames(); }
+        @Override
+        public long getDownsampledFrames() { return sessionMetrics.snapshot().getDownsampledFrames(); }
+
+        @Override
+        public double getRequestLatencyMeanMicros() { return sessionMetrics.snapshot().getRequestLatency().getMean() / 1000; }
+        @Override
+        public double getRequestLatencyP99Micros() { return sessionMetrics.snapshot().getRequestLatency().getValueAtPercentile(99) / 1000.0; }
+        @Override
+        public double getRequestLatencyMaxMicros() { return sessionMetrics.snapshot().getRequestLatency().getMax() / 1000.0; }
+        @Override
+        public double getSampleLatencyMeanMicros() { return sessionMetrics.snapshot().getSampleLatency().getMean() / 1000; }
+        @Override
+        public double getSampleLatencyP99Micros() { return sessionMetrics.snapshot().getSampleLatency().getValueAtPercentile(99) / 1000.0; }
+        @Override
+        public double getSampleLatencyMaxMicros() { return sessionMetrics.snapshot().getSampleLatency().getMax() / 1000.0; }
+    }
+}
@@ -0,0 +1,109 @@
+package driver_framework.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * histogram of latencies in nanoseconds with fixed relative precision, the way HDR histograms bucket values.
+ * Values below 2 * SUB_BUCKETS are counted exactly, larger ones fall into one of SUB_BUCKETS buckets per power of two,
+ * so percentiles are off by at most 1 / SUB_BUCKETS ( ~3% ) of the value. Buckets are allocated once, recording doesn't allocate nor lock.
+ * */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param valueNanos negative values ( e.g. clock went backwards ) are recorded as 0
+     * */
+    public void record(long valueNanos) {
+        long value = Math.max(0, valueNanos);
+        counts.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax;
+        while( value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value) );
+    }
+
+    /**
+     * @return counts at the time of the call, later records don't affect it. Records made during the call might be missing from some of its values
+     * */
+    public Snapshot snapshot() {
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        for( int i = 0; i<BUCKET_COUNT; ++i )
+            bucketCounts[i] = counts.get(i);
+        return new Snapshot(bucketCounts, count.get(), sum.get(), max.get());
+    }
+
+    static int bucketIndex(long value) {
+        if( value < 2 * SUB_BUCKETS ) return (int) value;
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int)((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * @return largest value falling into bucket
+     * */
+    static long bucketUpperBound(int index) {
+        if( index < 2 * SUB_BUCKETS ) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public static class Snapshot {
+        private final long[] bucketCounts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] bucketCounts, long count, long sum, long max) {
+            this.bucketCounts = bucketCounts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile within 0 and 100
+         * @return smallest recorded value at or above given percentile, rounded up to its bucket's bound. 0 if nothing was recorded
+         * */
+        public long getValueAtPercentile(double percentile) {
+            if( percentile < 0 || percentile > 100 ) throw new IllegalArgumentException("Percentile out of range: " + percentile);
+            long n_total = 0;
+            for( long bucketCount : bucketCounts ) n_total += bucketCount;
+            if( n_total == 0 ) return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n_total));
+            long n_seen = 0;
+            for( int i = 0; i<bucketCounts.length; ++i ){
+                n_seen += bucketCounts[i];
+                if( n_seen >= rank ) return Math.min(bucketUpperBound(i), max);
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + (long) getMean() + "ns, p50=" + getValueAtPercentile(50) + "ns, p99=" + getValueAtPercentile(99) + "ns, max=" + max + "ns";
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package driver_framework.metrics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * tests of LatencyHistogram's buckets and percentiles, exits with status 1 if any of them fails
+ * */
+public class LatencyHistogramTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testBuckets();
+        testPercentiles();
+        testEmpty();
+
+        if( failures > 0 ){
+            System.out.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All latency histogram tests passed");
+    }
+
+    private static void testBuckets(){
+        long[] values = {0, 1, 63, 64, 65, 127, 128, 1_000, 999_999, 1L << 40, Long.MAX_VALUE};
+        for( long value : values ){
+            int index = LatencyHistogram.bucketIndex(value);
+            long upperBound = LatencyHistogram.bucketUpperBound(index);
+            check("value " + value + " within its bucket", value <= upperBound && (index == 0 || LatencyHistogram.bucketUpperBound(index - 1) < value));
+            check("bucket of " + value + " at most ~3% wide", upperBound - value <= Math.max(0, value / 32));
+        }
+        for( int i = 1; i<2000 && i<LatencyHistogram.bucketIndex(Long.MAX_VALUE); ++i )//buckets follow each other without gaps
+            check("bucket " + i + " starts after bucket " + (i - 1), LatencyHistogram.bucketIndex(LatencyHistogram.bucketUpperBound(i - 1) + 1) == i);
+    }
+
+    private static void testPercentiles(){
+        Random random = new Random(42);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[10_000];
+        for( int i = 0; i<values.length; ++i ){
+            values[i] = 1_000 + (long)(random.nextDouble() * random.nextDouble() * 10_000_000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        check("count", snapshot.getCount() == values.length);
+        check("max", snapshot.getMax() == values[values.length - 1]);
+        for( double percentile : new double[]{50, 90, 99, 99.9, 100} ){
+            long exact = values[(int)Math.ceil(percentile / 100 * values.length) - 1];
+            long reported = snapshot.getValueAtPercentile(percentile);
+            check("p" + percentile + " within 1/32 of " + exact + ", got " + reported, reported >= exact && reported - exact <= exact / 32);
+        }
+    }
+
+    private static void testEmpty(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        check("empty histogram reports 0", histogram.snapshot().getValueAtPercentile(99) == 0 && histogram.snapshot().getMean() == 0);
+        histogram.record(-5);
+        check("negative value recorded as 0", histogram.snapshot().getMax() == 0 && histogram.snapshot().getCount() == 1);
+    }
+
+    private static void check(String name, boolean passed){
+        if( passed ) return;
+        ++failures;
+        System.out.println("FAILED: " + name);
+    }
+}
@@ -0,0 +1,39 @@
+package driver_framework.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * counts bytes read from client
+ * */
+public class MeteredInputStream extends FilterInputStream {
+
+    private final SessionMetrics sessionMetrics;
+
+    public MeteredInputStream(InputStream inputStream, SessionMetrics sessionMetrics) {
+        super(inputStream);
+        this.sessionMetrics = sessionMetrics;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if( b != -1 ) sessionMetrics.bytesReceived(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n_read = in.read(b, off, len);
+        if( n_read > 0 ) sessionMetrics.bytesReceived(n_read);
+        return n_read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long n_skipped = in.skip(n);
+        if( n_skipped > 0 ) sessionMetrics.bytesReceived((int) n_skipped);
+        return n_skipped;
+    }
+}
@@ -0,0 +1,30 @@
+package driver_framework.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * counts bytes written to client, array writes are passed on as they are rather than byte by byte
+ * */
+public class MeteredOutputStream extends FilterOutputStream {
+
+    private final SessionMetrics sessionMetrics;
+
+    public MeteredOutputStream(OutputStream outputStream, SessionMetrics sessionMetrics) {
+        super(outputStream);
+        this.sessionMetrics = sessionMetrics;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        sessionMetrics.bytesSent(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        sessionMetrics.bytesSent(len);
+    }
+}
@@ -0,0 +1,16 @@
+package driver_framework.metrics;
+
+/**
+ * creates metrics of each client's session, set on SensorServerManager or ChannelSensorServer before sessions start
+ *
+ * Registries:
+ *      NO_OP - default, nothing is recorded
+ *      InMemoryMetricsRegistry - keeps metrics of open sessions, looked at through snapshots
+ *      JmxMetricsRegistry - same, and exposes each session as an MXBean
+ * */
+public interface MetricsRegistry {
+
+    public SessionMetrics newSession();
+
+    public static final MetricsRegistry NO_OP = () -> SessionMetrics.NO_OP;
+}
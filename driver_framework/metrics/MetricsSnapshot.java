@@ -0,0 +1,142 @@
+package driver_framework.metrics;
+
+import driver_framework.request.Request;
+import driver_framework.response.Response;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * session's metrics at the time snapshot was taken, not changed afterwards
+ * */
+public class MetricsSnapshot {
+
+    private final String sessionName;
+    private final Map<Request, Long> requestCounts = new EnumMap<>(Request.class);
+    private final long unknownRequests;
+    private final Map<Response, Long> responseCounts = new EnumMap<>(Response.class);
+    private final long bytesReceived;
+    private final long bytesSent;
+    private final long framesRead;
+    private final long samplesSent;
+    private final long samplesSuppressed;
+    private final long droppedFrames;
+    private final long downsampledFrames;
+    private final LatencyHistogram.Snapshot requestLatency;
+    private final LatencyHistogram.Snapshot sampleLatency;
+
+    /**
+     * @param requests counts indexed by Request's ordinal, followed by count of unknown requests
+     * @param responses counts indexed by Response's ordinal
+     * */
+    MetricsSnapshot(String sessionName, long[] requests, long[] responses, long bytesReceived, long bytesSent, long framesRead,
+                    long samplesSent, long samplesSuppressed, long droppedFrames, long downsampledFrames,
+                    LatencyHistogram.Snapshot requestLatency, LatencyHistogram.Snapshot sampleLatency) {
+        this.sessionName = sessionName;
+        for( Request request : Request.values() )
+            if( requests[request.ordinal()] != 0 ) requestCounts.put(request, requests[request.ordinal()]);
+        this.unknownRequests = requests[requests.length - 1];
+        for( Response response : Response.values() )
+            if( responses[response.ordinal()] != 0 ) responseCounts.put(response, responses[response.ordinal()]);
+        this.bytesReceived = bytesReceived;
+        this.bytesSent = bytesSent;
+        this.framesRead = framesRead;
+        this.samplesSent = samplesSent;
+        this.samplesSuppressed = samplesSuppressed;
+        this.droppedFrames = droppedFrames;
+        this.downsampledFrames = downsampledFrames;
+        this.requestLatency = requestLatency;
+        this.sampleLatency = sampleLatency;
+    }
+
+    public String getSessionName() {
+        return sessionName;
+    }
+
+    /**
+     * @return handled requests by type, types never received are left out
+     * */
+    public Map<Request, Long> getRequestCounts() {
+        return Collections.unmodifiableMap(requestCounts);
+    }
+
+    public long getRequestCount(Request request) {
+        return requestCounts.getOrDefault(request, 0L);
+    }
+
+    /**
+     * @return requests of unknown type, answered with INVALID_REQUEST
+     * */
+    public long getUnknownRequests() {
+        return unknownRequests;
+    }
+
+    /**
+     * @return sent responses by type, sensor data included, types never sent are left out
+     * */
+    public Map<Response, Long> getResponseCounts() {
+        return Collections.unmodifiableMap(responseCounts);
+    }
+
+    public long getResponseCount(Response response) {
+        return responseCounts.getOrDefault(response, 0L);
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getFramesRead() {
+        return framesRead;
+    }
+
+    public long getSamplesSent() {
+        return samplesSent;
+    }
+
+    public long getSamplesSuppressed() {
+        return samplesSuppressed;
+    }
+
+    /**
+     * @return frames dropped because client didn't keep up with the sensor stream, every sample of a dropped frame is lost
+     * */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * @return frames skipped on purpose as they arrived between two sample deadlines, samples taken at the deadlines come from newer frames
+     * */
+    public long getDownsampledFrames() {
+        return downsampledFrames;
+    }
+
+    /**
+     * @return time from request's arrival until its response was written, in nanoseconds
+     * */
+    public LatencyHistogram.Snapshot getRequestLatency() {
+        return requestLatency;
+    }
+
+    /**
+     * @return time from data provider taking sensor's frame until sample was written to client, in nanoseconds
+     * */
+    public LatencyHistogram.Snapshot getSampleLatency() {
+        return sampleLatency;
+    }
+
+    @Override
+    public String toString() {
+        return sessionName + ": requests=" + requestCounts + (unknownRequests == 0 ? "" : ", unknown=" + unknownRequests) +
+                ", responses=" + responseCounts +
+                ", bytes in/out=" + bytesReceived + "/" + bytesSent +
+                ", frames=" + framesRead + ", samples sent=" + samplesSent + ", suppressed=" + samplesSuppressed + ", dropped frames=" + droppedFrames + ", downsampled frames=" + downsampledFrames +
+                ", request latency {" + requestLatency + "}, sample latency {" + sampleLatency + "}";
+    }
+}
@@ -0,0 +1,86 @@
+package driver_framework.metrics;
+
+import driver_framework.request.Request;
+import driver_framework.response.Response;
+
+import java.util.function.LongSupplier;
+
+/**
+ * what happens within one client's session, recorded by the framework as it happens.
+ * Methods are called on request and data provider threads and must not block. Sessions are created by a MetricsRegistry,
+ * by default NO_OP, which records nothing and makes the framework skip taking timestamps as well.
+ *
+ * @see MetricsRegistry
+ * */
+public interface SessionMetrics {
+
+    /**
+     * @return false if nothing is recorded, callers skip measuring latency then
+     * */
+    public boolean isEnabled();
+
+    /**
+     * @param request null if client sent an unknown request type
+     * @param response null if no response was sent ( DISCONNECT )
+     * @param latencyNanos from request's arrival until its response was written
+     * */
+    public void requestHandled(Request request, Response response, long latencyNanos);
+
+    /**
+     * @param response READING_SENSOR_DATA or one of its variants
+     * @param n_samples samples carried by the response, more than one for READING_SENSOR_DATA_BATCH
+     * @param latencyNanos from data provider taking the frame until response was written
+     * */
+    public void sensorDataSent(Response response, int n_samples, long latencyNanos);
+
+    public void bytesReceived(int n_bytes);
+    public void bytesSent(int n_bytes);
+
+    /**
+     * data provider took a frame of sensor's input stream
+     * */
+    public void frameRead();
+
+    /**
+     * a sample was not sent as it didn't change enough ( precision or reporting filters )
+     * */
+    public void sampleSuppressed();
+
+    /**
+     * @param droppedFrames number of frames dropped so far because client couldn't keep up, read when metrics are looked at
+     * */
+    public void setDroppedFrames(LongSupplier droppedFrames);
+
+    /**
+     * @param downsampledFrames number of frames skipped so far as they arrived between two deadlines of the sensors' sample rates, read when metrics are looked at
+     * */
+    public void setDownsampledFrames(LongSupplier downsampledFrames);
+
+    /**
+     * session ended
+     * */
+    public void close();
+
+    public static final SessionMetrics NO_OP = new SessionMetrics() {
+        @Override
+        public boolean isEnabled() { return false; }
+        @Override
+        public void requestHandled(Request request, Response response, long latencyNanos) {}
+        @Override
+        public void sensorDataSent(Response response, int n_samples, long latencyNanos) {}
+        @Override
+        public void bytesReceived(int n_bytes) {}
+        @Override
+        public void bytesSent(int n_bytes) {}
+        @Override
+        public void frameRead() {}
+        @Override
+        public void sampleSuppressed() {}
+        @Override
+        public void setDroppedFrames(LongSupplier droppedFrames) {}
+        @Override
+        public void setDownsampledFrames(LongSupplier downsampledFrames) {}
+        @Override
+        public void close() {}
+    };
+}
@@ -0,0 +1,28 @@
+package driver_framework.metrics;
+
+import java.util.Map;
+
+/**
+ * session's metrics as seen through JMX, latencies are in microseconds
+ * @see JmxMetricsRegistry
+ * */
+public interface SessionMetricsMXBean {
+
+    public Map<String, Long> getRequestCounts();
+    public Map<String, Long> getResponseCounts();
+    public long getUnknownRequests();
+    public long getBytesReceived();
+    public long getBytesSent();
+    public long getFramesRead();
+    public long getSamplesSent();
+    public long getSamplesSuppressed();
+    public long getDroppedFrames();
+    public long getDownsampledFrames();
+
+    public double getRequestLatencyMeanMicros();
+    public double getRequestLatencyP99Micros();
+    public double getRequestLatencyMaxMicros();
+    public double getSampleLatencyMeanMicros();
+    public double getSampleLatencyP99Micros();
+    public double getSampleLatencyMaxMicros();
+}
@@ -0,0 +1,46 @@
+package driver_framework.nio;
+
+import driver_framework.response.ClientBackpressure;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Adapter letting ResponseManager and DataProviderThread write to a channel session as if it was a stream.
+ * Written bytes are copied into the session's write buffer, event loop writes them to the channel once it is writable, so writing never blocks the caller.
+ * Write buffer is bounded through ClientBackpressure, data provider waits while it is full
+ *
+ * @see ChannelSession
+ * */
+public class ChannelOutputStream extends OutputStream implements ClientBackpressure {
+
+    private final ChannelSession channelSession;
+
+    ChannelOutputStream(ChannelSession channelSession){
+        this.channelSession = channelSession;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if( channelSession.isClosed() ) throw new IOException("Channel session closed");
+        channelSession.enqueueWrite(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if( channelSession.isClosed() ) throw new IOException("Channel session closed");
+        if( len == 0 ) return;
+
+        channelSession.enqueueWrite(b, off, len);
+    }
+
+    @Override
+    public boolean isCongested() {
+        return channelSession.isWriteQueueFull();
+    }
+
+    @Override
+    public void awaitDrained(long timeoutNanos) {
+        channelSession.awaitWriteQueueDrained(timeoutNanos);
+    }
+}
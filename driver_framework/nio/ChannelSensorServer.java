@@ -0,0 +1,322 @@
+package driver_framework.nio;
+
+import arduino_simulator.sensors.SensorEntry;
+import driver_framework.metrics.MetricsRegistry;
+import driver_framework.response.SensorHub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Alternative to SensorServerManager built on java.nio channels. A single event loop thread parses requests and writes responses of many clients,
+ * instead of each client having its own manager and request threads. Reading sensor data still happens on each client's DataProviderThread.
+ *
+ * Usage:
+ *      1. instantiate and start() the server
+ *      2. either register(...) channels of an already connected client ( Pipe source/sink, SocketChannel )
+ *         or listen(...) on a ServerSocketChannel for clients to connect
+ *      3. shutdown() closes all sessions and stops the event loop
+ *
+ * Stream based SensorServerManager remains available for blocking streams ( bluetooth ).
+ * @see ChannelSession
+ * @see driver_framework.SensorServerManager
+ * */
+public class ChannelSensorServer extends Thread {
+
+    private final Selector selector;
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();//executed on the event loop, channels can only be registered from there without blocking
+    private final Queue<ChannelSession> pendingWrites = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    private volatile MetricsRegistry metricsRegistry = MetricsRegistry.NO_OP;
+    private volatile int writeQueueLimit = ChannelSession.DEFAULT_WRITE_QUEUE_LIMIT;
+
+    public ChannelSensorServer() throws IOException {
+        super("ChannelSensorServer");
+        this.selector = Selector.open();
+    }
+
+    /**
+     * sessions registered or accepted from now on get their metrics from the given registry, nothing is recorded by default
+     * @see MetricsRegistry
+     * */
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * bounds responses queued for each client, taken by sessions registered or accepted from now on.
+     * Data provider of a client whose queue is full waits, requests are not read once twice the limit is queued
+     * @param writeQueueLimit in bytes
+     * @see ChannelSession
+     * */
+    public void setWriteQueueLimit(int writeQueueLimit) {
+        if( writeQueueLimit <= 0 ) throw new IllegalArgumentException("Write queue limit has to be positive");
+        this.writeQueueLimit = writeQueueLimit;
+    }
+
+    public int getWriteQueueLimit() {
+        return writeQueueLimit;
+    }
+
+    /**
+     * serves a connected client, for a SocketChannel pass it as both request and response channel
+     * @param requestChannel channel requests are read from, has to be readable
+     * @param responseChannel channel responses are written to, has to be writable
+     * @param sensorInputStream stream sensor's data of this client is read from
+     * */
+    public ChannelSession register(SelectableChannel requestChannel, SelectableChannel responseChannel, InputStream sensorInputStream, List<SensorEntry> availableSensors) {
+        ChannelSession channelSession = new ChannelSession(this, requestChannel, responseChannel, sensorInputStream, availableSensors);
+        runOnEventLoop(() -> registerSession(channelSession));
+        return channelSession;
+    }
+
+    /**
+     * serves a connected client reading sensor data shared through the hub
+     * @see SensorHub
+     * */
+    public ChannelSession register(SelectableChannel requestChannel, SelectableChannel responseChannel, SensorHub sensorHub) {
+        ChannelSession channelSession = new ChannelSession(this, requestChannel, responseChannel, sensorHub);
+        runOnEventLoop(() -> registerSession(channelSession));
+        return channelSession;
+    }
+
+    /**
+     * accepts clients connecting to the given server channel, all of them sharing sensor data read by the hub
+     * */
+    public void listen(ServerSocketChannel serverSocketChannel, SensorHub sensorHub) {
+        listen(serverSocketChannel, socketChannel -> new ChannelSession(this, socketChannel, socketChannel, sensorHub));
+    }
+
+    /**
+     * accepts clients connecting to the given server channel
+     * @param sensorInputStreamSupplier called for each accepted client, provides stream its sensor data is read from
+     * */
+    public void listen(ServerSocketChannel serverSocketChannel, Supplier<InputStream> sensorInputStreamSupplier, List<SensorEntry> availableSensors) {
+        listen(serverSocketChannel, socketChannel -> new ChannelSession(this, socketChannel, socketChannel, sensorInputStreamSupplier.get(), availableSensors));
+    }
+
+    private void listen(ServerSocketChannel serverSocketChannel, Function<SocketChannel, ChannelSession> channelSessionFactory) {
+        runOnEventLoop(() -> {
+            try {
+                serverSocketChannel.configureBlocking(false);
+                serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT, (Supplier<ChannelSession>) () -> {
+                    try {
+                        SocketChannel socketChannel = serverSocketChannel.accept();
+                        if( socketChannel == null ) return null;
+                        return channelSessionFactory.apply(socketChannel);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        return null;
+                    }
+                });
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        super.run();
+
+        try {
+            while( running ){
+                selector.select();
+                runPendingTasks();
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while( iterator.hasNext() ){
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    processKey(key);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if( running ) e.printStackTrace();
+        }
+
+        closeAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void processKey(SelectionKey key) {
+        if( key.isValid() && key.isAcceptable() ){
+            ChannelSession channelSession = ((Supplier<ChannelSession>) key.attachment()).get();
+            if( channelSession != null )
+                registerSession(channelSession);
+            return;
+        }
+
+        ChannelSession channelSession = (ChannelSession) key.attachment();
+        try {
+            if( key.isValid() && key.isReadable() && key.channel() == channelSession.getRequestChannel() ){
+                channelSession.onReadable();
+                updateReadInterest(channelSession);
+            }
+            if( key.isValid() && key.isWritable() && key.channel() == channelSession.getResponseChannel() )
+                writeSession(channelSession);
+        } catch (IOException | CancelledKeyException e) {
+            channelSession.close();
+        } catch (RuntimeException e) {//a single misbehaving client must not stop the event loop
+            e.printStackTrace();
+            channelSession.close();
+        }
+    }
+
+    private void registerSession(ChannelSession channelSession) {
+        try {
+            SelectableChannel requestChannel = channelSession.getRequestChannel();
+            SelectableChannel responseChannel = channelSession.getResponseChannel();
+            requestChannel.configureBlocking(false);
+            channelSession.requestKey = requestChannel.register(selector, SelectionKey.OP_READ, channelSession);
+
+            if( channelSession.isSharedChannel() )
+                channelSession.responseKey = channelSession.requestKey;
+            else{
+                responseChannel.configureBlocking(false);
+                channelSession.responseKey = responseChannel.register(selector, 0, channelSession);
+            }
+
+            if( channelSession.hasPendingWrites() )//responses queued before registration
+                writeSession(channelSession);
+        } catch (IOException e) {
+            e.printStackTrace();
+            channelSession.close();
+        }
+    }
+
+    /**
+     * writes queued responses, keeps OP_WRITE interest only while channel can't take everything
+     * */
+    private void writeSession(ChannelSession channelSession) throws IOException {
+        if( channelSession.isClosed() ) return;
+
+        SelectionKey responseKey = channelSession.responseKey;
+        if( channelSession.onWritable() ) {
+            if( channelSession.closing ) {
+                channelSession.close();
+                return;
+            }
+            responseKey.interestOps(responseKey.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+        else
+            responseKey.interestOps(responseKey.interestOps() | SelectionKey.OP_WRITE);
+        updateReadInterest(channelSession);
+    }
+
+    /**
+     * keeps OP_READ interest only while session's queued responses are below twice its write queue limit and it isn't waiting for STOP_READ
+     * */
+    private void updateReadInterest(ChannelSession channelSession) {
+        SelectionKey requestKey = channelSession.requestKey;
+        if( requestKey == null || !requestKey.isValid() ) return;
+
+        int interestOps = requestKey.interestOps();
+        int updated = channelSession.isRequestReadingPaused() ? interestOps & ~SelectionKey.OP_READ : interestOps | SelectionKey.OP_READ;
+        if( updated != interestOps )
+            requestKey.interestOps(updated);
+    }
+
+    /**
+     * called by a session from any thread when it queued a response
+     * */
+    void scheduleWrite(ChannelSession channelSession) {
+        pendingWrites.add(channelSession);
+        selector.wakeup();
+    }
+
+    /**
+     * called by a session's data provider once it paused after STOP_READ, session goes on processing requests on the event loop
+     * */
+    void onReadingStopped(ChannelSession channelSession) {
+        runOnEventLoop(() -> {
+            try {
+                channelSession.onReadingStopped();
+                updateReadInterest(channelSession);
+            } catch (IOException | CancelledKeyException e) {
+                channelSession.close();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                channelSession.close();
+            }
+        });
+    }
+
+    /**
+     * session is closed on the event loop once everything queued before DISCONNECT was written
+     * */
+    void closeAfterWrites(ChannelSession channelSession) {
+        runOnEventLoop(() -> {
+            channelSession.closing = true;
+            try {
+                writeSession(channelSession);
+            } catch (IOException | CancelledKeyException e) {
+                channelSession.close();//client is gone anyway
+            }
+        });
+    }
+
+    private void runOnEventLoop(Runnable task) {
+        pendingTasks.add(task);
+        selector.wakeup();
+    }
+
+    private void runPendingTasks() {
+        ChannelSession channelSession;
+        while( (channelSession = pendingWrites.poll()) != null ){
+            if( channelSession.responseKey == null ) continue;//not registered yet, registration writes whatever was queued
+            try {
+                writeSession(channelSession);
+            } catch (IOException | CancelledKeyException e) {
+                channelSession.close();
+            }
+        }
+
+        Runnable task;
+        while( (task = pendingTasks.poll()) != null )
+            task.run();
+    }
+
+    private void closeAll() {
+        for( SelectionKey key : selector.keys() ){
+            if( key.attachment() instanceof ChannelSession )
+                ((ChannelSession) key.attachment()).close();
+            else
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * stops the event loop and closes every client's session
+     * */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+}
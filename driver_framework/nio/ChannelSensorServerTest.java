@@ -0,0 +1,233 @@
+package driver_framework.nio;
+
+import arduino_simulator.ArduinoSimulator;
+import arduino_simulator.sensors.LightSensor;
+import arduino_simulator.sensors.LightSensorEntry;
+import arduino_simulator.sensors.Sensor;
+import arduino_simulator.sensors.SensorEntry;
+import driver_framework.request.Request;
+import driver_framework.response.Response;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * tests of ChannelSensorServer's event loop serving several clients through pipes, each client reading its own simulated board.
+ * Exits with status 1 if any of them fails
+ * */
+public class ChannelSensorServerTest {
+
+    private static final int SENSOR_ID = 1;
+    private static final long SLOW_TICK_MS = 2000;
+    private static final long RESPONSE_TIMEOUT_MS = 10_000;
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        ChannelSensorServer channelSensorServer = new ChannelSensorServer();
+        channelSensorServer.setDaemon(true);
+        channelSensorServer.start();
+
+        testStopReadDoesNotBlockOtherClients(channelSensorServer);
+        testRequestsAfterStopRead(channelSensorServer);
+
+        channelSensorServer.shutdown();
+        if( failures > 0 ){
+            System.out.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All channel sensor server tests passed");
+        System.exit(0);//simulators' threads don't stop on their own
+    }
+
+    /**
+     * STOP_READ waits for client's data provider to finish its tick, event loop answers other clients meanwhile
+     * */
+    private static void testStopReadDoesNotBlockOtherClients(ChannelSensorServer channelSensorServer) throws Exception {
+        SlowSensorEntry slowSensorEntry = new SlowSensorEntry();
+        Client slowClient = new Client(channelSensorServer, slowSensorEntry);
+        Client otherClient = new Client(channelSensorServer, new LightSensorEntry(SENSOR_ID));
+
+        slowClient.send(Request.CONNECT_SENSOR, SENSOR_ID);
+        slowClient.expect(Response.CONNECT_SENSOR_Y);
+        otherClient.send(Request.CONNECT_SENSOR, SENSOR_ID);
+        otherClient.expect(Response.CONNECT_SENSOR_Y);
+
+        slowClient.send(Request.START_READ, 0);
+        slowClient.expect(Response.START_READ_Y);
+        slowClient.expectSample();
+        slowSensorEntry.slow = true;
+        check("slow client's tick started", slowSensorEntry.slowTickStarted.await(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        slowClient.send(Request.STOP_READ, 0);
+        Thread.sleep(100);//event loop takes STOP_READ first
+        long start = System.nanoTime();
+        otherClient.send(Request.IS_CONNECTED, SENSOR_ID);
+        otherClient.expect(Response.IS_CONNECTED_Y);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        check("other client answered while slow client stops reading, took " + elapsedMs + " ms", elapsedMs < SLOW_TICK_MS / 2);
+
+        slowClient.expectAfterSamples(Response.STOP_READ_Y);
+        slowClient.disconnect();
+        otherClient.disconnect();
+    }
+
+    /**
+     * requests pipelined after STOP_READ are answered after STOP_READ_Y, in order
+     * */
+    private static void testRequestsAfterStopRead(ChannelSensorServer channelSensorServer) throws Exception {
+        Client client = new Client(channelSensorServer, new LightSensorEntry(SENSOR_ID));
+        client.send(Request.CONNECT_SENSOR, SENSOR_ID);
+        client.expect(Response.CONNECT_SENSOR_Y);
+        client.send(Request.START_READ, 0);
+        client.expect(Response.START_READ_Y);
+        client.expectSample();
+
+        client.send(new Request[]{Request.STOP_READ, Request.IS_CONNECTED, Request.START_READ, Request.STOP_READ, Request.STOP_READ}, SENSOR_ID);
+        client.expectAfterSamples(Response.STOP_READ_Y);
+        client.expect(Response.IS_CONNECTED_Y);
+        client.expect(Response.START_READ_Y);
+        client.expectAfterSamples(Response.STOP_READ_Y);
+        client.expect(Response.STOP_READ_N);
+        client.disconnect();
+    }
+
+    private static void check(String name, boolean passed){
+        if( passed ) return;
+        ++failures;
+        System.out.println("FAILED: " + name);
+    }
+
+    /**
+     * client of its own simulated board, reads responses with a timeout so that a stuck event loop fails the test instead of hanging it
+     * */
+    private static class Client {
+        private final ArduinoSimulator arduinoSimulator;
+        private final OutputStream requestStream;
+        private final DataInputStream responseStream;
+
+        Client(ChannelSensorServer channelSensorServer, SensorEntry sensorEntry) throws IOException {
+            List<Sensor> sensors = new ArrayList<>();
+            sensors.add(new LightSensor());
+            arduinoSimulator = new ArduinoSimulator(sensors);
+            InputStream sensorInputStream = arduinoSimulator.connectViaBluetooth();
+            arduinoSimulator.start();
+
+            List<SensorEntry> availableSensors = new ArrayList<>();
+            availableSensors.add(sensorEntry);
+            Pipe requests = Pipe.open();
+            Pipe responses = Pipe.open();
+            channelSensorServer.register(requests.source(), responses.sink(), sensorInputStream, availableSensors);
+            requestStream = Channels.newOutputStream(requests.sink());
+            responseStream = new DataInputStream(new TimedInputStream(Channels.newInputStream(responses.source())));
+        }
+
+        void send(Request request, int body) throws IOException {
+            send(new Request[]{request}, body);
+        }
+
+        /**
+         * writes all requests at once, so that server parses them from a single read
+         * */
+        void send(Request[] requests, int body) throws IOException {
+            ByteBuffer encoded = ByteBuffer.allocate(requests.length * 5);
+            for( Request request : requests )
+                encoded.put(request.getValue()).putInt(body);
+            requestStream.write(encoded.array());
+            requestStream.flush();
+        }
+
+        void expect(Response response) throws IOException {
+            byte responseByte = responseStream.readByte();
+            responseStream.readInt();
+            check("expected " + response + ", got " + responseByte, responseByte == response.getValue());
+        }
+
+        void expectSample() throws IOException {
+            expect(Response.READING_SENSOR_DATA);
+            responseStream.readFully(new byte[LightSensorEntry.DATA_SAMPLE_BYTE_LENGTH]);
+        }
+
+        /**
+         * skips sensor data written before the response
+         * */
+        void expectAfterSamples(Response response) throws IOException {
+            byte responseByte;
+            while( (responseByte = responseStream.readByte()) == Response.READING_SENSOR_DATA.getValue() )
+                responseStream.readFully(new byte[4 + LightSensorEntry.DATA_SAMPLE_BYTE_LENGTH]);
+            responseStream.readInt();
+            check("expected " + response + " after sensor data, got " + responseByte, responseByte == response.getValue());
+        }
+
+        void disconnect() throws IOException {
+            send(Request.DISCONNECT, 0);
+            while( responseStream.read() != -1 );//session closes response channel once everything was written
+            arduinoSimulator.disconnect();
+        }
+    }
+
+    /**
+     * fails a read waiting longer than RESPONSE_TIMEOUT_MS
+     * */
+    private static class TimedInputStream extends FilterInputStream {
+        TimedInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Thread watchdog = new Thread(() -> {
+                try {
+                    Thread.sleep(RESPONSE_TIMEOUT_MS);
+                    System.out.println("FAILED: no response within " + RESPONSE_TIMEOUT_MS + " ms");
+                    System.exit(1);
+                } catch (InterruptedException e) {
+                    //read returned in time
+                }
+            });
+            watchdog.setDaemon(true);
+            watchdog.start();
+            try {
+                return in.read(b, off, len);
+            } finally {
+                watchdog.interrupt();
+            }
+        }
+    }
+
+    /**
+     * dataChanged takes SLOW_TICK_MS once slow is set, so the data provider's tick outlasts STOP_READ
+     * */
+    private static class SlowSensorEntry extends LightSensorEntry {
+        private volatile boolean slow = false;
+        private final CountDownLatch slowTickStarted = new CountDownLatch(1);
+
+        SlowSensorEntry() {
+            super(SENSOR_ID);
+        }
+
+        @Override
+        public boolean dataChanged(byte[] rawData, byte[] prevRawData, SensorPrecision sensorPrecision) {
+            if( slow && slowTickStarted.getCount() > 0 ){
+                slowTickStarted.countDown();
+                try {
+                    Thread.sleep(SLOW_TICK_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package driver_framework.nio;
+
+import arduino_simulator.sensors.SensorEntry;
+import driver_framework.metrics.SessionMetrics;
+import driver_framework.request.Request;
+import driver_framework.request.RequestObserver;
+import driver_framework.request.RequestPackage;
+import driver_framework.response.ResponseManager;
+import driver_framework.response.SensorHub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One client served by ChannelSensorServer. Replaces RequestManagerThread of the stream based transport:
+ * requests are parsed from bytes read by the event loop and passed to the session's ResponseManager on the event loop thread.
+ * Responses, including sensor data written by DataProviderThread, are queued and written by the event loop.
+ *
+ * Queued responses are bounded in bytes by the server's write queue limit:
+ *      limit reached - data provider waits before taking its next frame, frames wait in its FrameRingBuffer and its OverflowPolicy applies
+ *      twice the limit reached - event loop stops reading requests until responses are written, e.g. client pipelining requests without reading responses
+ * Writing threads fill one buffer while event loop writes the other, both are swapped once the written one is empty and reused for the whole session.
+ *
+ * Event loop never waits for the data provider: STOP_READ only asks it to stop, requests from STOP_READ on are processed once it paused.
+ *
+ * Request channel and response channel are the same for a SocketChannel and different for a Pipe ( source and sink ).
+ *
+ * @see ChannelSensorServer
+ * */
+public class ChannelSession {
+
+    public static final int DEFAULT_WRITE_QUEUE_LIMIT = 256 * 1024;
+    private static final int REQUEST_BUFFER_SIZE = 1024;
+    private static final int WRITE_BUFFER_SIZE = 8192;//initial size of both write buffers, grown when needed
+
+    private final ChannelSensorServer channelSensorServer;
+    private final SelectableChannel requestChannel;
+    private final SelectableChannel responseChannel;
+    private final RequestObserver requestObserver;
+    private final ResponseManager responseManager;
+    private final SessionMetrics sessionMetrics;
+
+    private ByteBuffer requestBuffer = ByteBuffer.allocate(REQUEST_BUFFER_SIZE);//grown if a single request doesn't fit, e.g. bulk requests
+    private final RequestPackage currentRequestPackage = new RequestPackage();
+    private final Object writeLock = new Object();
+    private ByteBuffer fillBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);//responses are appended here by any thread, guarded by writeLock
+    private ByteBuffer drainBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).flip();//being written to the channel, event loop only
+    private final AtomicLong queuedBytes = new AtomicLong();//in both buffers, not yet written to the channel
+    private final int writeQueueLimit;
+    private volatile Thread waitingWriter = null;//data provider waiting for the queue to drain
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+    private volatile boolean closed = false;
+    boolean closing = false;//DISCONNECT received, session is closed once queued responses are written, event loop only
+    private boolean awaitingStop = false;//STOP_READ parsed, answered once data provider paused, event loop only
+
+    SelectionKey requestKey;
+    SelectionKey responseKey;
+
+    ChannelSession(ChannelSensorServer channelSensorServer, SelectableChannel requestChannel, SelectableChannel responseChannel, InputStream sensorInputStream, List<SensorEntry> availableSensors){
+        this(channelSensorServer, requestChannel, responseChannel, new ResponseManagerFactory(sensorInputStream, availableSensors));
+    }
+
+    ChannelSession(ChannelSensorServer channelSensorServer, SelectableChannel requestChannel, SelectableChannel responseChannel, SensorHub sensorHub){
+        this(channelSensorServer, requestChannel, responseChannel, new ResponseManagerFactory(sensorHub));
+    }
+
+    private ChannelSession(ChannelSensorServer channelSensorServer, SelectableChannel requestChannel, SelectableChannel responseChannel, ResponseManagerFactory responseManagerFactory){
+        if( !(requestChannel instanceof ReadableByteChannel) || !(responseChannel instanceof WritableByteChannel) )
+            throw new IllegalArgumentException("Request channel has to be readable and response channel writable");
+
+        this.channelSensorServer = channelSensorServer;
+        this.requestChannel = requestChannel;
+        this.responseChannel = responseChannel;
+        this.writeQueueLimit = channelSensorServer.getWriteQueueLimit();
+        this.responseManager = responseManagerFactory.create(new ChannelOutputStream(this));
+        this.requestObserver = responseManager;
+        this.sessionMetrics = channelSensorServer.getMetricsRegistry().newSession();
+        responseManager.setSessionMetrics(sessionMetrics);
+    }
+
+    /**
+     * event loop: request channel is readable, parses all whole requests received so far
+     * */
+    void onReadable() throws IOException {
+        int n_read = ((ReadableByteChannel) requestChannel).read(requestBuffer);
+        if( n_read == -1 ){//client went away without DISCONNECT
+            close();
+            return;
+        }
+        sessionMetrics.bytesReceived(n_read);
+        processRequests(false);
+    }
+
+    /**
+     * event loop: data provider paused, answers STOP_READ and processes requests received after it
+     * */
+    void onReadingStopped() throws IOException {
+        if( !awaitingStop || closed ) return;
+        awaitingStop = false;
+        processRequest();//STOP_READ, answered right away now
+        processRequests(true);
+    }
+
+    /**
+     * parses and processes all whole requests in the request buffer, stops at DISCONNECT and at STOP_READ waiting for data provider
+     * @param processed true if a request was processed already, responses are flushed once requests are drained
+     * */
+    private void processRequests(boolean processed) throws IOException {
+        requestBuffer.flip();
+        while( !closed && !closing && !awaitingStop && currentRequestPackage.getRequestPackage(requestBuffer) ){//requests following DISCONNECT are ignored
+            if( currentRequestPackage.getRequestType() == Request.STOP_READ && responseManager.stopReadingWithoutWaiting(() -> channelSensorServer.onReadingStopped(this)) ){
+                awaitingStop = true;//requests left in the buffer wait as well, so responses stay in order
+                break;
+            }
+            processRequest();
+            processed = true;
+        }
+        requestBuffer.compact();
+        if( !requestBuffer.hasRemaining() ){//holds part of a request larger than the buffer, request lengths are bounded so growing ends
+            ByteBuffer grown = ByteBuffer.allocate(requestBuffer.capacity() * 2);
+            requestBuffer.flip();
+            grown.put(requestBuffer);
+            requestBuffer = grown;
+        }
+        if( processed && !closed && !closing )
+            requestObserver.onRequestsDrained();
+    }
+
+    /**
+     * same as RequestManagerThread.processRequest
+     * */
+    private void processRequest() {
+        if( currentRequestPackage.getRequestType() == Request.DISCONNECT ){
+            requestObserver.onSubjectFinished();
+            requestObserver.onRequestArrived(currentRequestPackage);
+            closing = true;
+            channelSensorServer.closeAfterWrites(this);
+            return;
+        }
+        requestObserver.onRequestArrived(currentRequestPackage);
+    }
+
+    /**
+     * any thread: queues a response, event loop is woken up to write it. Never blocks, callers able to wait check isWriteQueueFull() first
+     * */
+    void enqueueWrite(byte[] b, int off, int len){
+        synchronized (writeLock){
+            if( fillBuffer.remaining() < len )
+                fillBuffer = grow(fillBuffer, len);
+            fillBuffer.put(b, off, len);
+            queuedBytes.addAndGet(len);
+        }
+        scheduleWrite();
+    }
+
+    void enqueueWrite(int b){
+        synchronized (writeLock){
+            if( !fillBuffer.hasRemaining() )
+                fillBuffer = grow(fillBuffer, 1);
+            fillBuffer.put((byte) b);
+            queuedBytes.incrementAndGet();
+        }
+        scheduleWrite();
+    }
+
+    private void scheduleWrite(){
+        if( writeScheduled.compareAndSet(false, true) )
+            channelSensorServer.scheduleWrite(this);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int n_needed){
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + n_needed));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    /**
+     * event loop: writes as much of the queue as channel accepts
+     * @return true if whole queue was written
+     * */
+    boolean onWritable() throws IOException {
+        writeScheduled.set(false);
+
+        try {
+            while( drainBuffer.hasRemaining() || swapWriteBuffers() ){
+                queuedBytes.addAndGet(-((WritableByteChannel) responseChannel).write(drainBuffer));
+                if( drainBuffer.hasRemaining() ) return false;//channel is full, wait for OP_WRITE
+            }
+            return true;
+        } finally {
+            Thread writer = waitingWriter;
+            if( writer != null && !isWriteQueueFull() )
+                LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * event loop: responses queued so far are to be written next, the emptied buffer takes new ones
+     * @return false if nothing was queued
+     * */
+    private boolean swapWriteBuffers(){
+        synchronized (writeLock){
+            if( fillBuffer.position() == 0 ) return false;
+            ByteBuffer emptied = drainBuffer.clear();
+            drainBuffer = fillBuffer.flip();
+            fillBuffer = emptied;
+            return true;
+        }
+    }
+
+    boolean hasPendingWrites(){
+        return queuedBytes.get() > 0;
+    }
+
+    /**
+     * @return true if queued responses reached the write queue limit, data provider waits until they are written
+     * */
+    boolean isWriteQueueFull(){
+        return queuedBytes.get() >= writeQueueLimit;
+    }
+
+    /**
+     * event loop: doesn't read requests while STOP_READ waits for data provider, or queued responses reached twice the write queue limit, until they are written
+     * */
+    boolean isRequestReadingPaused(){
+        return awaitingStop || queuedBytes.get() >= 2L * writeQueueLimit;
+    }
+
+    /**
+     * any thread but event loop: parks until queued responses fall below the limit, timeout elapses or thread is unparked
+     * */
+    void awaitWriteQueueDrained(long timeoutNanos){
+        waitingWriter = Thread.currentThread();
+        if( isWriteQueueFull() && !closed )
+            LockSupport.parkNanos(this, timeoutNanos);
+        waitingWriter = null;
+    }
+
+    /**
+     * stops reading sensor data for this client and closes its channels
+     * */
+    void close() {
+        if( closed ) return;
+        closed = true;
+
+        requestObserver.onSubjectFinished();
+        synchronized (writeLock){
+            fillBuffer.clear();
+            drainBuffer.clear().flip();
+            queuedBytes.set(0);
+        }
+        Thread writer = waitingWriter;
+        if( writer != null ) LockSupport.unpark(writer);
+        try {
+            requestChannel.close();
+            if( responseChannel != requestChannel )
+                responseChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    boolean isSharedChannel(){
+        return requestChannel == responseChannel;
+    }
+
+    SelectableChannel getRequestChannel() {
+        return requestChannel;
+    }
+
+    SelectableChannel getResponseChannel() {
+        return responseChannel;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public ResponseManager getResponseManager() {
+        return responseManager;
+    }
+
+    /**
+     * session's output stream only exists once session does, so response manager is created from inside the constructor
+     * */
+    private static class ResponseManagerFactory{
+        private final SensorHub sensorHub;
+        private final InputStream sensorInputStream;
+        private final List<SensorEntry> availableSensors;
+
+        ResponseManagerFactory(InputStream sensorInputStream, List<SensorEntry> availableSensors){
+            this.sensorHub = null;
+            this.sensorInputStream = sensorInputStream;
+            this.availableSensors = availableSensors;
+        }
+
+        ResponseManagerFactory(SensorHub sensorHub){
+            this.sensorHub = sensorHub;
+            this.sensorInputStream = null;
+            this.availableSensors = null;
+        }
+
+        ResponseManager create(OutputStream outputStreamClient){
+            return sensorHub != null ? new ResponseManager(sensorHub, outputStreamClient) : new ResponseManager(sensorInputStream, outputStreamClient, availableSensors);
+        }
+    }
+}
@@ -8,6 +8,8 @@ package driver_framework.request;
  * 1^st byte represents request type
  * following 4 bytes represent additional request data. Some requests will use this space, some will leave it empty.
  * For example:
+ *      Request type: CONNECT
+ *          [CONNECT.byteValue, flags, SAMPLE_RATE, SAMPLE_RATE, SAMPLE_RATE] - flags are optional, see CONNECT_FLAG_* constants
  *      Request type: CONNECT_SENSOR
  *          [CONNECT_SENSOR.byteValue, SENSOR_TYPE.byteValue, -, -, - ]
  *      Request type: CONFIGURE
@@ -17,6 +19,10 @@ package driver_framework.request;
  *      etc.
  *
  * ADDITIONAL DATA IS OPTIONAL AND DEPENDS ON SENSOR TYPE SENT
+ *
+ * Pipelined form, used after client set CONNECT_FLAG_PIPELINED_REQUESTS
+ * | Request | CORRELATION ID | BODY |
+ *      1           2           4
  * */
 public enum Request{
 
@@ -27,7 +33,9 @@ public enum Request{
     STOP_READ((byte)0b0000_0011),
     DISCONNECT((byte) 0b0000_0100),
     DISCONNECT_SENSOR((byte)6),
-    CONFIGURE((byte) 5);
+    CONFIGURE((byte) 5),
+    CONNECT_SENSORS((byte)7),//bulk CONNECT_SENSOR, see BULK_WILDCARD
+    CONFIGURE_SENSORS((byte)8);//bulk CONFIGURE
 
     private final byte mByte;
     Request(byte mByte) {
@@ -38,27 +46,89 @@ public enum Request{
         return this.mByte;
     }
 
+    private static final Request[] REQUESTS_BY_BYTE = new Request[256];//request having each header byte, null for bytes no request has
+    static {
+        for( Request request : values() )
+            REQUESTS_BY_BYTE[request.mByte & 0xFF] = request;
+    }
+
+    /**
+     * @return request having given header byte, null if there is no such request
+     * */
     public static Request getRequestFromByte(byte requestAsByte){
-        if( requestAsByte == Request.CONNECT.mByte )
-            return Request.CONNECT;
-        if( requestAsByte == Request.CONNECT_SENSOR.mByte )
-            return Request.CONNECT_SENSOR;
-        if( requestAsByte == Request.IS_CONNECTED.mByte )
-            return Request.IS_CONNECTED;
-        if( requestAsByte == Request.START_READ.mByte )
-            return Request.START_READ;
-        if( requestAsByte == Request.STOP_READ.mByte )
-            return Request.STOP_READ;
-        if( requestAsByte == Request.DISCONNECT.mByte )
-            return Request.DISCONNECT;
-        if( requestAsByte == Request.CONFIGURE.mByte )
-            return Request.CONFIGURE;
-        if( requestAsByte == Request.DISCONNECT_SENSOR.mByte )
-            return Request.DISCONNECT_SENSOR;
-
-        return null;
+        return REQUESTS_BY_BYTE[requestAsByte & 0xFF];
     }
 
     public static final int REQUEST_SIZE = 5;
+
+    /**
+     * bulk requests act on many sensors at once, body is the number of sensor ids following it:
+     *      | CONNECT_SENSORS | n | sensor id (4 bytes) x n |
+     *      | CONFIGURE_SENSORS | n | sensor id (4 bytes) x n | configuration, same as following CONFIGURE |
+     * n = BULK_WILDCARD stands for all available sensors, no ids follow then
+     * Responses carry n ( number of available sensors for wildcard ) and a bitmap of results, see Response.CONNECT_SENSORS_Y
+     * Any other n outside 0 - MAX_BULK_SENSORS leaves the length of the request unknown, session is closed as requests following it can't be found
+     * */
+    public static final int BULK_WILDCARD = -1;
+    public static final int MAX_BULK_SENSORS = 0xFFFF;
+
+    /**
+     * @return true if n is BULK_WILDCARD or a number of sensor ids a bulk request can carry
+     * */
+    public static boolean isValidBulkCount(int n){
+        return n == BULK_WILDCARD || (n >= 0 && n <= MAX_BULK_SENSORS);
+    }
+
+    /**
+     * @return number of bytes of sensor ids following a bulk request, 0 for wildcard or invalid n
+     * */
+    public static int getBulkSensorIDsByteLength(int n){
+        return n > 0 && n <= MAX_BULK_SENSORS ? n * 4 : 0;
+    }
+
+    /**
+     * CONNECT request's body is | flags (1 byte) | general sample rate (3 bytes) |
+     * flags are only taken into account if body is non negative, this keeps clients sending just the sample rate as an integer working as before
+     * */
+    public static final int CONNECT_FLAGS_MASK = 0x7F00_0000;
+    public static final int CONNECT_SAMPLE_RATE_MASK = 0x00FF_FFFF;
+
+    /**
+     * client wants all sensors sampled in one tick to arrive as a single READING_SENSOR_DATA_BATCH response
+     * */
+    public static final int CONNECT_FLAG_BATCHED_SENSOR_DATA = 0x0100_0000;
+
+    /**
+     * client wants formatted data of sensors declaring a FormattedSchema as READING_SENSOR_DATA_PACKED instead of JSON, schemas are sent with CONNECT_Y
+     * */
+    public static final int CONNECT_FLAG_PACKED_FORMATTED_DATA = 0x0200_0000;
+
+    /**
+     * client sends requests back to back without waiting for their responses, each request following CONNECT_Y carries a correlation id
+     * ( see RequestPackage.CORRELATION_ID_SIZE ) which is echoed by its response. Sensor data responses carry no correlation id.
+     * Responses are flushed once there are no more requests waiting to be processed, rather than one by one.
+     * Client sending CONNECT without this flag goes back to requests without correlation id
+     * */
+    public static final int CONNECT_FLAG_PIPELINED_REQUESTS = 0x0400_0000;
+
+    /**
+     * client wants to know how old each sample is: START_READ_Y carries the session's epoch and every sensor data response is followed by
+     * the time its frame was read ( and board's tick if board sends one ), see SampleTimestamps
+     * */
+    public static final int CONNECT_FLAG_SAMPLE_TIMESTAMPS = 0x0800_0000;
+
+    /**
+     * @return flags of a CONNECT request's body, 0 if client didn't send any
+     * */
+    public static int getConnectFlags(int connectBody){
+        return connectBody < 0 ? 0 : connectBody & CONNECT_FLAGS_MASK;
+    }
+
+    /**
+     * @return general sample rate of a CONNECT request's body
+     * */
+    public static int getConnectSampleRate(int connectBody){
+        return connectBody < 0 ? connectBody : connectBody & CONNECT_SAMPLE_RATE_MASK;
+    }
 }
 
@@ -1,5 +1,10 @@
 package driver_framework.request;
 
+import driver_framework.FrameworkThread;
+import driver_framework.metrics.MeteredInputStream;
+import driver_framework.metrics.SessionMetrics;
+
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.logging.Logger;
@@ -13,8 +18,8 @@ import java.util.logging.Logger;
  * This class also manages RequestObserver's behaviour according to request sent
  *
  * Order of appropriate Request execution:
- *      1. CONNECT_SENSOR
- *      2. CONFIGURE (optional) - (required) -> for CUSTOM sensors not present within the framework
+ *      1. CONNECT_SENSOR ( or CONNECT_SENSORS for many sensors at once )
+ *      2. CONFIGURE (optional) - (required) -> for CUSTOM sensors not present within the framework ( or CONFIGURE_SENSORS )
  *      3. IS_CONNECTED (optional) - advised before starting to read
  *      4. START_READ
  *      5. STOP_READ
@@ -23,23 +28,35 @@ import java.util.logging.Logger;
  *@see Request
  *@see RequestObserver
  * */
-public class RequestManagerThread extends Thread{
+public class RequestManagerThread extends FrameworkThread{
 
+    private final InputStream clientInputStream;
     private InputStream inputStream;
     private RequestObserver requestObserver = null;//informs the observer about oncoming requests
     private boolean processingRequests = true;
 
     private RequestPackage currentRequestPackage = new RequestPackage();
-    private static final String TAG = "ServerRequestReceiverTh";
+    private static final int REQUEST_INPUT_BUFFER_SIZE = 1024;
     private static final Logger LOGGER = Logger.getLogger( RequestManagerThread.class.getName() );
 
 
 
     public RequestManagerThread(InputStream inputStream, RequestObserver requestObserver){
-        this.inputStream = inputStream;
+        this.clientInputStream = inputStream;
+        this.inputStream = new BufferedInputStream(inputStream, REQUEST_INPUT_BUFFER_SIZE);//pipelined requests are parsed from what was received at once
         this.requestObserver = requestObserver;
     }
 
+    /**
+     * counts bytes received from client, call before start()
+     * @see SessionMetrics
+     * */
+    public void setSessionMetrics(SessionMetrics sessionMetrics){
+        if( isRunning() ) throw new IllegalStateException("Session metrics have to be set before requests are read");
+        InputStream inputStream = sessionMetrics.isEnabled() ? new MeteredInputStream(clientInputStream, sessionMetrics) : clientInputStream;
+        this.inputStream = new BufferedInputStream(inputStream, REQUEST_INPUT_BUFFER_SIZE);
+    }
+
     @Override
     public void run() {
         super.run();
@@ -48,8 +65,12 @@ public class RequestManagerThread extends Thread{
             try{
                 readNextRequest();
                 processRequest();
-            }catch (IOException ioe){
-                System.out.println(TAG + ": readNextRequest() -> " + ioe.getMessage());
+                if( processingRequests && inputStream.available() == 0 )
+                    requestObserver.onRequestsDrained();
+            }catch (IOException ioe){//client went away without DISCONNECT
+                LOGGER.info("Client stopped sending requests without DISCONNECT: " + ioe.getMessage());
+                requestObserver.onSubjectFinished();
+                processingRequests = false;
             }
         }
 
@@ -57,7 +78,7 @@ public class RequestManagerThread extends Thread{
 
     /**
      * gets next request from client
-     * @throws IOException if request invalid and if input stream returned -1 indicating the end of file
+     * @throws IOException if input stream returned -1 indicating the end of file, or failed
      * @see Request for possible requests
      * */
     private void readNextRequest() throws IOException {
@@ -66,20 +87,13 @@ public class RequestManagerThread extends Thread{
 
     /**
      * Performs actions according to the request received from the client
+     * unknown requests are passed on as well, observer answers them with INVALID_REQUEST
      * */
     private void processRequest() {
-        switch (currentRequestPackage.getRequestType()){
-            case DISCONNECT:
-                requestObserver.onSubjectFinished();
-                processingRequests = false;
-            case CONNECT_SENSOR:
-            case DISCONNECT_SENSOR:
-            case IS_CONNECTED:
-            case START_READ:
-            case STOP_READ:
-            case CONFIGURE:
-            case CONNECT:
-                requestObserver.onRequestArrived(currentRequestPackage);
+        if( currentRequestPackage.getRequestType() == Request.DISCONNECT ){
+            requestObserver.onSubjectFinished();
+            processingRequests = false;
         }
+        requestObserver.onRequestArrived(currentRequestPackage);
     }
 }
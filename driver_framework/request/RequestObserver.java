@@ -1,6 +1,16 @@
 package driver_framework.request;
 
 public interface RequestObserver {
+    /**
+     * @param newRequest view of the request that arrived, reused for the next one so it is only valid during this call.
+     *                   Its request type is null if client sent an unknown request type
+     * */
     public void onRequestArrived(RequestPackage newRequest);
     public void onSubjectFinished();
+
+    /**
+     * no more requests have been received so far, called after a request if the next one is not buffered already.
+     * Pipelined clients send requests back to back, observer can gather their responses until then
+     * */
+    public default void onRequestsDrained(){}
 }
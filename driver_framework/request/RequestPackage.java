@@ -1,45 +1,219 @@
 package driver_framework.request;
 
+import driver_framework.FrameworkUtils;
+
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static arduino_simulator.sensors.AggregationWindow.AGGREGATION_WINDOW_BYTE_LENGTH;
+import static arduino_simulator.sensors.ReportingFilter.REPORTING_FILTER_BYTE_LENGTH;
+import static arduino_simulator.sensors.SensorEntry.CONFIGURE_BYTE_LENGTH;
+import static arduino_simulator.sensors.SensorEntry.CONFIGURE_FLAG_AGGREGATED;
+import static arduino_simulator.sensors.SensorEntry.CONFIGURE_FLAG_REPORTING_FILTERS;
 
+/**
+ * request read from client's input stream or parsed from bytes received by a channel.
+ * A single package is reused for every request of a client, so observers get a view of the current request that is valid only while
+ * RequestObserver.onRequestArrived runs: body and additional data are overwritten by the next request, copy whatever has to outlive the call.
+ *
+ * Decoding doesn't allocate: request type is resolved through Request's lookup table, body is read as an integer in place ( getRequestBodyInt )
+ * and additional data is read from the very stream or buffer the request arrived in.
+ * Unknown request types are kept, getRequestType() is null and getRequestTypeByte() holds the rejected byte.
+ * */
 public class RequestPackage {
-    private byte[] requestBody = new byte[REQUEST_BODY_SIZE];
+    private final byte[] requestBytes = new byte[REQUEST_HEADER_SIZE + CORRELATION_ID_SIZE + REQUEST_BODY_SIZE];//header and body read at once from input stream
+    private final byte[] requestBody = new byte[REQUEST_BODY_SIZE];
     private byte requestTypeByte;//used to represent request header
     private Request requestType = null;
+    private int correlationId = NO_CORRELATION_ID;
+    private boolean pipelined = false;//requests carry a correlation id, see Request.CONNECT_FLAG_PIPELINED_REQUESTS
 
     private InputStream inputStream;
-    public void getRequestPackage(InputStream inputStream) {
+    private final AdditionalDataInputStream additionalDataInputStream = new AdditionalDataInputStream();//view of additional data within channel's buffer
+
+    /**
+     * reads the next request, header and body are read with a single read so input stream should be buffered ( see RequestManagerThread )
+     * additional data is left in input stream, it is available through getInputStream() afterwards
+     * @throws IOException if input stream ended or failed before a whole request was read, or request's length can't be told ( see checkLength )
+     * */
+    public void getRequestPackage(InputStream inputStream) throws IOException {
+        int requestLength = getHeaderSize() + REQUEST_BODY_SIZE;
+        if( FrameworkUtils.readFully(inputStream, requestBytes, 0, requestLength) != requestLength )
+            throw new EOFException("Request reading: Data read from input stream is -1");
+
         this.inputStream = inputStream;
-        try {
-            int requestTypeInt = inputStream.read();
-            if( requestTypeInt == -1 )
-                throw new IOException("RequestType reading: Data read from input stream is -1");
-            else {
-                this.requestTypeByte = (byte) requestTypeInt;
-                this.requestType = Request.getRequestFromByte(requestTypeByte);
-                int requestBodyLength = inputStream.read(requestBody,0,REQUEST_BODY_SIZE);
-                if( requestBodyLength != 4 )
-                    throw new IOException("RequestType reading: Data read from input stream is -1");
-            }
-
-        } catch (IOException e) {
-            e.printStackTrace();
+        this.requestTypeByte = requestBytes[0];
+        this.requestType = Request.getRequestFromByte(requestTypeByte);
+        this.correlationId = pipelined ? readCorrelationId(requestBytes, REQUEST_HEADER_SIZE) : NO_CORRELATION_ID;
+        System.arraycopy(requestBytes, requestLength - REQUEST_BODY_SIZE, requestBody, 0, REQUEST_BODY_SIZE);
+        checkLength(requestType, getRequestBodyInt());
+    }
+
+    /**
+     * non blocking variant used by channel transport, parses a request from bytes that were already received
+     * CONFIGURE request's additional data has to be received as well, it is available through getInputStream() afterwards
+     * and is read from the buffer in place, so buffer must not be compacted until the request is processed
+     * @return false if buffer doesn't hold a whole request yet, buffer's position is left unchanged in that case
+     * @throws IOException if request's length can't be told ( see checkLength ), buffer's position is left unchanged
+     * */
+    public boolean getRequestPackage(ByteBuffer requestBuffer) throws IOException {
+        int headerSize = getHeaderSize();
+        if( requestBuffer.remaining() < headerSize + REQUEST_BODY_SIZE ) return false;
+
+        int requestOffset = requestBuffer.position();
+        byte typeByte = requestBuffer.get(requestOffset);
+        Request type = Request.getRequestFromByte(typeByte);
+        int bodyOffset = requestOffset + headerSize;
+        checkLength(type, requestBuffer.getInt(bodyOffset));
+        int additionalDataLength = getAdditionalDataLength(type, requestBuffer, bodyOffset);
+        if( requestBuffer.remaining() < headerSize + REQUEST_BODY_SIZE + additionalDataLength ) return false;
+
+        this.requestTypeByte = typeByte;
+        this.requestType = type;
+        this.correlationId = pipelined ? ((requestBuffer.get(requestOffset + 1) & 0xFF) << 8) | (requestBuffer.get(requestOffset + 2) & 0xFF) : NO_CORRELATION_ID;
+        requestBuffer.get(bodyOffset, requestBody, 0, REQUEST_BODY_SIZE);
+
+        additionalDataInputStream.set(requestBuffer, bodyOffset + REQUEST_BODY_SIZE, additionalDataLength);
+        this.inputStream = additionalDataInputStream;
+        requestBuffer.position(bodyOffset + REQUEST_BODY_SIZE + additionalDataLength);//whole request is consumed, whether or not observer reads its additional data
+        return true;
+    }
+
+    /**
+     * bulk requests declare how many sensor ids follow them, a count out of range can't be skipped reliably
+     * @throws IOException if the request's length can't be told, requests following it can't be found and session is to be closed
+     * */
+    private static void checkLength(Request type, int body) throws IOException {
+        if( (type == Request.CONNECT_SENSORS || type == Request.CONFIGURE_SENSORS) && !Request.isValidBulkCount(body) )
+            throw new IOException(type + " declares " + body + " sensor ids, following requests can't be found");
+    }
+
+    /**
+     * @param bodyOffset position of request's body within the buffer
+     * @return number of bytes following the request, as far as it can be told from bytes received so far
+     * */
+    private static int getAdditionalDataLength(Request type, ByteBuffer requestBuffer, int bodyOffset){
+        if( type == Request.CONFIGURE )
+            return getConfigureByteLength(requestBuffer, bodyOffset + REQUEST_BODY_SIZE);
+        if( type != Request.CONNECT_SENSORS && type != Request.CONFIGURE_SENSORS )
+            return 0;
+
+        int sensorIDsLength = Request.getBulkSensorIDsByteLength(requestBuffer.getInt(bodyOffset));
+        if( type == Request.CONNECT_SENSORS )
+            return sensorIDsLength;
+        return sensorIDsLength + getConfigureByteLength(requestBuffer, bodyOffset + REQUEST_BODY_SIZE + sensorIDsLength);
+    }
+
+    /**
+     * @param configureOffset position of configuration within the buffer
+     * @return number of bytes of configuration following CONFIGURE ( or CONFIGURE_SENSORS ) request, as far as it can be told from bytes received so far.
+     * Caller waits for that many bytes, then asks again, as flags may announce a variable length reporting filter chain
+     * */
+    private static int getConfigureByteLength(ByteBuffer requestBuffer, int configureOffset){
+        if( requestBuffer.limit() < configureOffset + CONFIGURE_BYTE_LENGTH ) return CONFIGURE_BYTE_LENGTH;
+
+        int flags = requestBuffer.get(configureOffset + CONFIGURE_BYTE_LENGTH - 1);
+        int length = CONFIGURE_BYTE_LENGTH;
+        if( (flags & CONFIGURE_FLAG_REPORTING_FILTERS) != 0 ){
+            if( requestBuffer.limit() < configureOffset + length + 1 ) return length + 1;
+            int n_filters = requestBuffer.get(configureOffset + length) & 0xFF;
+            length += 1 + n_filters * REPORTING_FILTER_BYTE_LENGTH;
         }
+        if( (flags & CONFIGURE_FLAG_AGGREGATED) != 0 )
+            length += AGGREGATION_WINDOW_BYTE_LENGTH;
+        return length;
+    }
+
+    private static int readCorrelationId(byte[] source, int offset){
+        return ((source[offset] & 0xFF) << 8) | (source[offset + 1] & 0xFF);
+    }
+
+    /**
+     * requests read afterwards carry a correlation id ( or don't ), set once CONNECT switching the mode was handled
+     * @see Request#CONNECT_FLAG_PIPELINED_REQUESTS
+     * */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * @return size of header of requests read from now on, type and correlation id if pipelined
+     * */
+    public int getHeaderSize() {
+        return pipelined ? REQUEST_HEADER_SIZE + CORRELATION_ID_SIZE : REQUEST_HEADER_SIZE;
+    }
+
+    /**
+     * @return correlation id of current request ( 0 - 65535 ), NO_CORRELATION_ID if it was not sent pipelined
+     * */
+    public int getCorrelationId() {
+        return correlationId;
     }
 
     public InputStream getInputStream() {
         return inputStream;
     }
+    /**
+     * @return body of current request, overwritten by the next request
+     * */
     public byte[] getRequestBody() {
         return requestBody;
     }
+
+    /**
+     * @return body of current request as a big endian integer, e.g. sensor id
+     * */
+    public int getRequestBodyInt() {
+        return FrameworkUtils.readInt(requestBody, 0);
+    }
     public byte getRequestTypeByte() {
         return requestTypeByte;
     }
     public Request getRequestType() {
         return requestType;
     }
+    /**
+     * additional data of a request parsed from channel's buffer, read in place. Reused for every request, valid until buffer is compacted
+     * */
+    private static final class AdditionalDataInputStream extends InputStream {
+        private ByteBuffer buffer;
+        private int position;
+        private int limit;
+
+        void set(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.position = offset;
+            this.limit = offset + length;
+        }
+
+        @Override
+        public int read() {
+            return position < limit ? buffer.get(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] destination, int offset, int length) {
+            if( length == 0 ) return 0;
+            if( position >= limit ) return -1;
+            int n_read = Math.min(length, limit - position);
+            buffer.get(position, destination, offset, n_read);
+            position += n_read;
+            return n_read;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+    }
+
     public static final int REQUEST_BODY_SIZE = 4;
     public static final int REQUEST_HEADER_SIZE = 1;
+    public static final int CORRELATION_ID_SIZE = 2;
+    public static final int NO_CORRELATION_ID = -1;
 }
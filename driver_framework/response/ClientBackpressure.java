@@ -0,0 +1,21 @@
+package driver_framework.response;
+
+/**
+ * implemented by client output streams that queue writes instead of blocking on them, e.g. ChannelOutputStream of the java.nio transport.
+ * Data provider stops taking frames while client is congested, so frames wait in its FrameRingBuffer and OverflowPolicy decides what is dropped,
+ * instead of the queue growing without bound
+ *
+ * @see driver_framework.nio.ChannelOutputStream
+ * */
+public interface ClientBackpressure {
+
+    /**
+     * @return true if client's queue of unwritten data reached its limit
+     * */
+    public boolean isCongested();
+
+    /**
+     * parks calling thread until client is no longer congested, timeout elapses or thread is unparked
+     * */
+    public void awaitDrained(long timeoutNanos);
+}
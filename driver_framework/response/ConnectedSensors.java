@@ -0,0 +1,62 @@
+package driver_framework.response;
+
+import arduino_simulator.sensors.SensorEntry;
+
+import java.util.BitSet;
+
+/**
+ * indexes of sensors a client is connected to, kept in sync with connected flag of client's sensor configurations.
+ * Changed while handling requests and read by data provider on every tick: each change publishes a new BitSet,
+ * so provider iterates connected sensors only, without locking and without checking every available sensor
+ * */
+public class ConnectedSensors {
+
+    private final SensorEntry.SensorConfiguration[] sensorConfigurations;
+    private volatile BitSet connected;
+
+    /**
+     * @param sensorConfigurations client's settings of each available sensor, sensors already marked as connected are taken over
+     * */
+    public ConnectedSensors(SensorEntry.SensorConfiguration[] sensorConfigurations) {
+        this.sensorConfigurations = sensorConfigurations;
+
+        BitSet connected = new BitSet(sensorConfigurations.length);
+        for( int i = 0; i<sensorConfigurations.length; ++i )
+            if( sensorConfigurations[i].isConnected() ) connected.set(i);
+        this.connected = connected;
+    }
+
+    public synchronized void setConnected(int sensorIndex, boolean connected) {
+        sensorConfigurations[sensorIndex].setConnected(connected);
+        if( this.connected.get(sensorIndex) == connected ) return;
+
+        BitSet changed = (BitSet) this.connected.clone();
+        changed.set(sensorIndex, connected);
+        this.connected = changed;
+    }
+
+    /**
+     * connects or disconnects many sensors, publishing a single change
+     * @param sensorIndexes indexes of sensors, -1 entries are skipped
+     * */
+    public synchronized void setConnected(int[] sensorIndexes, boolean connected) {
+        BitSet changed = (BitSet) this.connected.clone();
+        for( int sensorIndex : sensorIndexes ){
+            if( sensorIndex == -1 ) continue;
+            sensorConfigurations[sensorIndex].setConnected(connected);
+            changed.set(sensorIndex, connected);
+        }
+        this.connected = changed;
+    }
+
+    public boolean isConnected(int sensorIndex) {
+        return connected.get(sensorIndex);
+    }
+
+    /**
+     * @return connected sensors at the time of the call, later changes don't affect it. Not to be modified
+     * */
+    public BitSet snapshot() {
+        return connected;
+    }
+}
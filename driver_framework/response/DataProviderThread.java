@@ -1,27 +1,102 @@
 package driver_framework.response;
 
+import arduino_simulator.sensors.AggregationWindow;
+import arduino_simulator.sensors.FormattedSchema;
+import arduino_simulator.sensors.JsonSink;
+import arduino_simulator.sensors.PackedSink;
+import arduino_simulator.sensors.ReportingFilterChain;
 import arduino_simulator.sensors.SensorEntry;
+import driver_framework.FrameworkThread;
+import driver_framework.FrameworkUtils;
+import driver_framework.metrics.SessionMetrics;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
-
-public class DataProviderThread extends Thread{
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * writes connected sensors' samples to the client at their sample rates.
+ * One provider serves a client for the whole session, reading is stopped and started again through its ReadingState:
+ *
+ *      IDLE -> STREAMING           start() ( or startReading() )
+ *      STREAMING -> STOPPING       stopReading(), provider is woken up and finishes the frame it is writing
+ *      STOPPING -> PAUSED          provider flushed everything written so far, stopReading() returns ( or requestStop()'s callback runs )
+ *      PAUSED -> STREAMING         startReading() ( or resumeReading() )
+ *      any -> CLOSED               disconnect(), sensor's input stream ended or provider's loop threw. Provider quits
+ *
+ * Transitions are compare and set on an atomic state, waiting sides park and are unparked by the other side.
+ * */
+public class DataProviderThread extends FrameworkThread{
+
+    public enum ReadingState{
+        IDLE,//not started yet
+        STREAMING,
+        STOPPING,//stop requested, provider is finishing its current frame
+        PAUSED,
+        CLOSED
+    }
 
-    private volatile boolean writingData = true;
+    private final AtomicReference<ReadingState> readingState = new AtomicReference<>(ReadingState.IDLE);
+    private volatile Thread providerThread = null;//thread running the loop, unparked on state changes
+    private volatile Thread stoppingThread = null;//thread waiting in stopReading() for provider to pause
+    private final AtomicReference<Runnable> onStopped = new AtomicReference<>();//given to requestStop(), run once provider paused or quit
     private OutputStream clientOutputStream = null;
     private InputStream sensorInputStream = null;
+    private SensorFrameReader sensorFrameReader = null;//reassembles whole frames from sensorInputStream if there is no FrameRingBuffer
+    private FrameRingBuffer frameRingBuffer = null;//if set, frames are taken from it instead of being read from sensorInputStream
     List<SensorEntry> availableSensors;//needed for sending data
-
-    byte[][] prevRawData;//track previous raw data samples
-    private HashMap<Integer, SampleRateTracker> availableSensorsSampleRate;
+    private SensorRegistry sensorRegistry;//finds sensor's index by its id
+    private SensorEntry.SensorConfiguration[] sensorConfigurations;//client's settings of each available sensor, same order
+    private ConnectedSensors connectedSensors;//only these sensors are written each tick
+
+    byte[][] prevRawData;//track previous raw data samples, preallocated and overwritten in place
+    private boolean[] prevRawDataSet;//false until the first sample of a sensor has been sent
+    private int[] deltasSinceKeyframe;//delta encoded sensors send a full sample once this reaches DeltaEncoding.KEYFRAME_INTERVAL
+    private byte[] deltaBuffer;//deltas of the last delta encoded sample, fits the longest sample's deltas
+    private SampleScheduler sampleScheduler;//absolute deadlines of each sensor's next sample, indexed same as availableSensors
     private int n_bytes_total;
-
-    private boolean readingStopped = false;
+    private long tickNanos = 0;//System.nanoTime() of the frame being written, reporting filters' clock
+
+    //preallocated buffers, steady state of the provider loop does not allocate
+    private byte[] all_sensors_raw_data;//one frame read from the sensor's input stream, reused each cycle
+    private byte[][] rawDataSamples;//per sensor sample buffers, filled from their slice of the frame
+    private int[] sensorFrameOffsets;//offset of each sensor's slice within the frame
+    private final JsonSink formattedDataSink = new JsonSink();//raw sample + length + formatted data, reused for every formatted sample
+    private final PackedSink packedDataSink = new PackedSink();//raw sample + packed values, reused for every packed sample
+    private FormattedSchema[] formattedSchemas;//checked schema of each available sensor, null for sensors formatting only as JSON or failing to pack values
+    private SampleAggregator[] sampleAggregators;//window of each sensor configured for aggregation, created with its first sample
+    private byte[] aggregateBuffer = new byte[0];//aggregate of the last complete window, grows when needed
+    private final ResponsePackage sensorDataResponsePackage = new ResponsePackage(Response.READING_SENSOR_DATA);
+
+    private static final Logger LOGGER = Logger.getLogger( DataProviderThread.class.getName() );
+    private static final byte[] NO_PREVIOUS_SAMPLE = new byte[0];
+    private static final long FRAME_POLL_TIMEOUT_NANOS = 100_000_000;//checks if still writing data at least this often while there are no frames
+    private static final long CLIENT_CONGESTED_PARK_NANOS = 10_000_000;//upper bound of waiting for a congested client, in case its unpark is missed
+    private static final long STOPPING_PARK_NANOS = 100_000_000;//stopReading() checks at least this often if provider is still running
+    private static final int BATCH_ENTRY_HEADER_SIZE = 4 + 4;//sensor id + payload length
+    private static final int BATCH_ENTRY_DELTA_FLAG = 0x8000_0000;//set in payload length of batch entries carrying deltas instead of raw data
+
+    private boolean batchedSensorData = false;
+    private boolean packedFormattedData = false;//formatted data of sensors with a schema is sent as READING_SENSOR_DATA_PACKED
+    private FlushPolicy flushPolicy = FlushPolicy.IMMEDIATE;//decides when written sensor data is flushed to the client
+    private SessionMetrics sessionMetrics = SessionMetrics.NO_OP;
+    private ClientBackpressure clientBackpressure = null;//null if writing to client blocks instead of queueing
+
+    private int timestampFlags = 0;//SampleTimestamps flags, 0 if client didn't ask for timestamps
+    private long timestampEpochNanos = 0;
+    private boolean boardTickEpochSet = false;//board tick of the epoch is the one of the first frame written after it
+    private int boardTickEpoch = 0;
+    private long frameReadNanos = 0;//System.nanoTime() frame being written was read from sensor's input stream at
+    private final byte[] timestamps = new byte[SampleTimestamps.MAX_ENCODED_LENGTH];//of the frame being written, sent after each of its samples
+    private byte[] batchBuffer;//entries of all sensors sampled within the current tick, grows when needed
+    private int batchLength = 0;
+    private int batchCount = 0;
 
     public void setGeneralSampleRate(int generalSampleRate) {
         this.generalSampleRate = generalSampleRate;
@@ -32,67 +107,215 @@ public class DataProviderThread extends Thread{
     public DataProviderThread(OutputStream clientOutputStream, InputStream sensorInputStream, List<SensorEntry> availableSensors, int generalSampleRate) {
         this.sensorInputStream = sensorInputStream;
         this.clientOutputStream = clientOutputStream;
-        this.availableSensors = availableSensors;
         this.generalSampleRate = generalSampleRate;
 
-        prevRawData = new byte[availableSensors.size()][0];
-        this.availableSensorsSampleRate = new HashMap<>();
+        setAvailableSensors(availableSensors);
+    }
 
-        n_bytes_total = 0;
-        for( SensorEntry sensor: availableSensors ) {
-            n_bytes_total += sensor.getDataSampleByteLength();
-            availableSensorsSampleRate.put(sensor.getSensorID(), new SampleRateTracker(sensor.getSampleRate()));
-        }
+    /**
+     * frames are taken from the given buffer, and client's settings come from its own configurations instead of available sensors
+     * @param sensorConfigurations client's settings of each available sensor, in the same order
+     * @param connectedSensors client's connected sensors, changes made through it while reading are picked up on the next tick
+     * */
+    public DataProviderThread(OutputStream clientOutputStream, FrameRingBuffer frameRingBuffer, SensorRegistry sensorRegistry, SensorEntry.SensorConfiguration[] sensorConfigurations, ConnectedSensors connectedSensors, int generalSampleRate) {
+        this.clientOutputStream = clientOutputStream;
+        this.frameRingBuffer = frameRingBuffer;
+        this.generalSampleRate = generalSampleRate;
+
+        setAvailableSensors(sensorRegistry, sensorConfigurations, connectedSensors);
     }
 
     /**
      * sets number of bytes that will be written to client / read from sensor
+     * preallocates frame and per sensor sample buffers used by the provider loop
+     * settings of each sensor are taken from SensorEntry itself
      * */
-    public void setAvailableSensors(List<SensorEntry> availableSensors){ this.availableSensors = availableSensors; }
+    public void setAvailableSensors(List<SensorEntry> availableSensors){
+        SensorEntry.SensorConfiguration[] sensorConfigurations = new SensorEntry.SensorConfiguration[availableSensors.size()];
+        for( int i = 0; i<sensorConfigurations.length; ++i )
+            sensorConfigurations[i] = availableSensors.get(i).getConfiguration();
+
+        setAvailableSensors(availableSensors, sensorConfigurations);
+    }
+
+    public void setAvailableSensors(List<SensorEntry> availableSensors, SensorEntry.SensorConfiguration[] sensorConfigurations){
+        setAvailableSensors(new SensorRegistry(availableSensors), sensorConfigurations, new ConnectedSensors(sensorConfigurations));
+    }
+
+    private void setAvailableSensors(SensorRegistry sensorRegistry, SensorEntry.SensorConfiguration[] sensorConfigurations, ConnectedSensors connectedSensors){
+        this.sensorRegistry = sensorRegistry;
+        this.availableSensors = sensorRegistry.getSensors();
+        this.sensorConfigurations = sensorConfigurations;
+        this.connectedSensors = connectedSensors;
+
+        int n_sensors = availableSensors.size();
+        prevRawData = new byte[n_sensors][];
+        prevRawDataSet = new boolean[n_sensors];
+        deltasSinceKeyframe = new int[n_sensors];
+        rawDataSamples = new byte[n_sensors][];
+        formattedSchemas = new FormattedSchema[n_sensors];
+        sampleAggregators = new SampleAggregator[n_sensors];
+        sensorFrameOffsets = new int[n_sensors];
+        int[] sampleRates = new int[n_sensors];
+
+        n_bytes_total = 0;
+        int maxDeltaLength = 0;
+        for( int i = 0; i<n_sensors; ++i ) {
+            SensorEntry sensor = availableSensors.get(i);
+            sensorFrameOffsets[i] = n_bytes_total;
+            rawDataSamples[i] = new byte[sensor.getDataSampleByteLength()];
+            prevRawData[i] = new byte[sensor.getDataSampleByteLength()];
+            n_bytes_total += sensor.getDataSampleByteLength();
+            sampleRates[i] = sensorConfigurations[i].getSampleRate();
+            formattedSchemas[i] = sensorRegistry.getFormattedSchema(i);
+            maxDeltaLength = Math.max(maxDeltaLength, DeltaEncoding.getMaxEncodedLength(sensor.getDataSampleByteLength()));
+        }
+        all_sensors_raw_data = new byte[n_bytes_total];
+        deltaBuffer = new byte[maxDeltaLength];
+        if( sensorInputStream != null )
+            sensorFrameReader = new SensorFrameReader(sensorInputStream, n_bytes_total);
+        sampleScheduler = new SampleScheduler(sampleRates);
+        batchBuffer = new byte[n_bytes_total + n_sensors * BATCH_ENTRY_HEADER_SIZE];
+    }
+
+    @Override
+    public synchronized void start() {
+        super.start();
+        readingState.compareAndSet(ReadingState.IDLE, ReadingState.STREAMING);//stays CLOSED if disconnected before starting. Set once running, so stopReading() doesn't give up on a provider about to run
+    }
 
     @Override
     public void run() {
         super.run();
+        providerThread = Thread.currentThread();
+        readingState.compareAndSet(ReadingState.IDLE, ReadingState.STREAMING);//run() called directly
+
+        try {
+            sampleScheduler.reset(System.nanoTime());
+            boolean paused = false;
+            ReadingState state;
+            while( (state = readingState.get()) != ReadingState.CLOSED ){
+
+                if( state == ReadingState.STOPPING ){
+                    flushClientOutputStream();//last frame is written out before stop is acknowledged
+                    if( readingState.compareAndSet(ReadingState.STOPPING, ReadingState.PAUSED) ){
+                        paused = true;
+                        notifyStopped();
+                    }
+                    continue;
+                }
+                if( state == ReadingState.PAUSED ){//wait for resumeReading() to continue
+                    LockSupport.park(this);
+                    continue;
+                }
+                if( paused ){//resumed, possibly before provider got to park
+                    onReadingResumed();
+                    paused = false;
+                }
+                if( clientBackpressure != null && clientBackpressure.isCongested() ){//frames wait in FrameRingBuffer meanwhile, its OverflowPolicy applies once it is full
+                    clientBackpressure.awaitDrained(CLIENT_CONGESTED_PARK_NANOS);//unparked by stopReading() and disconnect() as well
+                    continue;
+                }
 
-        while( writingData ){
-
-            byte[] all_sensors_raw_data = new byte[n_bytes_total];//get all data from the sensors
-            try {
-                if (sensorInputStream.read(all_sensors_raw_data) == -1) throw new IOException("While reading data from external sensor error occurred");//get sensor's sample data
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+                if( readFrame() ) {//get sensor's sample data
+                    tickNanos = System.nanoTime();
+                    sessionMetrics.frameRead();
+                    if( timestampFlags != 0 )
+                        encodeTimestamps();
+                    BitSet connected = connectedSensors.snapshot();
+                    sampleScheduler.pollDue(tickNanos, connected);
+                    for (int i = connected.nextSetBit(0); i >= 0; i = connected.nextSetBit(i + 1)) {//only CONNECTED sensors are visited
+                        if (sampleScheduler.isDue(i)) {//write data if its deadline passed!
+                            writeSensorData(availableSensors.get(i), i, all_sensors_raw_data, sensorFrameOffsets[i]);
+                        }
+                    }
+                    if( batchedSensorData )
+                        sendBatch();
+                    if( flushPolicy.flushOnTickEnd() )
+                        flushClientOutputStream();
 
-            int offset_all_raw_data = 0;
-            int i = 0;
-            for( SensorEntry sensor : availableSensors ){
-                if( sensor.isConnected() && availableSensorsSampleRate.get( sensor.getSensorID() ).isAwake() ) {//write data if sensor is CONNECTED and AWAKE!
-                    writeSensorData(sensor, i, all_sensors_raw_data, offset_all_raw_data);
+                    if( !sampleScheduler.isDueEveryFrame(connected) )//otherwise next frame is taken as soon as it arrives
+                        parkUntilNextDeadline();
                 }
-                ++i;
-                offset_all_raw_data += sensor.getDataSampleByteLength();//always move the offset!
+                else if( frameRingBuffer != null && frameRingBuffer.isClosed() )
+                    close();//sensor's input stream ended, there will be no more frames
             }
+        } finally {//provider quits for good, also if a sensor's hook threw, so nobody waits for it to pause
+            readingState.set(ReadingState.CLOSED);
+            flushClientOutputStream();
+            notifyStopped();
+        }
+    }
 
-            int sleepTime = lowestSleepTimeLeft();
-            updateSleepTime(sleepTime);
+    /**
+     * same as SampleScheduler.parkUntilNextDeadline, but returns as soon as provider stops streaming
+     * */
+    private void parkUntilNextDeadline(){
+        long deadline = sampleScheduler.nextDeadline();
+        long remaining;
+        while( readingState.get() == ReadingState.STREAMING && (remaining = deadline - System.nanoTime()) > 0 )
+            LockSupport.parkNanos(this, remaining);//unparked by stopReading() and disconnect()
+    }
 
-            try {
-                sleep(sleepTime);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+    /**
+     * reading continues after a pause as if it was started anew: client's settings changed in between are taken over,
+     * every sensor's first sample is sent as it is ( no precision / delta to samples sent before the pause ) and aggregation windows start empty.
+     * Deadlines missed while paused are not caught up on
+     * */
+    private void onReadingResumed(){
+        for( int i = 0; i<sensorConfigurations.length; ++i )
+            sampleScheduler.setSampleRate(i, sensorConfigurations[i].getSampleRate());
+        Arrays.fill(prevRawDataSet, false);
+        Arrays.fill(deltasSinceKeyframe, 0);
+        for( SampleAggregator sampleAggregator : sampleAggregators )
+            if( sampleAggregator != null ) sampleAggregator.reset();
+        sampleScheduler.reset(System.nanoTime());
+    }
 
-            if( readingStopped ) {//reading stopped, wait for notify to continue
-                synchronized (this){
-                    try {
-                        wait();
-                        readingStopped = false;
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
+    /**
+     * fills all_sensors_raw_data with the next frame, frameReadNanos with the time it was read.
+     * Unless a connected sensor is sampled on every frame, provider waits for deadlines and takes the newest frame of FrameRingBuffer,
+     * frames arriving in between are downsampled
+     * @return false if no frame arrived from FrameRingBuffer in time
+     * */
+    private boolean readFrame(){
+        if( frameRingBuffer != null ){
+            boolean taken = sampleScheduler.isDueEveryFrame(connectedSensors.snapshot()) ?
+                    frameRingBuffer.poll(all_sensors_raw_data, 0, FRAME_POLL_TIMEOUT_NANOS) :
+                    frameRingBuffer.pollLatest(all_sensors_raw_data, 0, FRAME_POLL_TIMEOUT_NANOS);
+            if( !taken ) return false;
+            frameReadNanos = frameRingBuffer.getPolledReadNanos();
+            return true;
+        }
+
+        try {
+            if( !sensorFrameReader.readFrame(all_sensors_raw_data, 0) ) throw new IOException("While reading data from external sensor error occurred");
+        } catch (IOException e) {
+            e.printStackTrace();
+            close();//frame alignment is lost for good once stream ended
+            return false;
+        }
+        frameReadNanos = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * encodes timestamps of the frame just read, every response carrying its samples is followed by them
+     * @see SampleTimestamps
+     * */
+    private void encodeTimestamps(){
+        boolean boardTick = (timestampFlags & SampleTimestamps.TIMESTAMP_FLAG_BOARD_TICK) != 0;
+        int frameBoardTick = 0;
+        if( boardTick ){
+            frameBoardTick = frameRingBuffer != null ? frameRingBuffer.getPolledBoardTick() : sensorFrameReader.getBoardTick();
+            if( !boardTickEpochSet ){
+                boardTickEpoch = frameBoardTick;
+                boardTickEpochSet = true;
             }
         }
+        long readTimeMicros = Math.floorDiv(frameReadNanos - timestampEpochNanos, 1000L);
+        int length = SampleTimestamps.encode(readTimeMicros, boardTick, frameBoardTick - boardTickEpoch, timestamps, 0);
+        sensorDataResponsePackage.setTrailingData(timestamps, length);
     }
 
     /**
@@ -103,141 +326,381 @@ public class DataProviderThread extends Thread{
      * 4. write raw data sample
      * 5. if formatted, write formatted string's length
      * 6. if formatted, write formatted string
+     * if delta encoded ( and not formatted ), raw data is replaced by its deltas to previously sent sample, except for keyframes
+     * if aggregated, sample is only added to sensor's aggregation window, aggregate is written instead once window is complete
+     * if batched, sensor id, payload length and payload are appended to the tick's batch instead of being written right away
+     * package-private so that benchmarks can measure it without running the provider loop
      * */
 
-    private void writeSensorData(SensorEntry sensor, int sensor_i, byte[] all_sensors_raw_data, int offset_all_raw_data) {
+    void writeSensorData(SensorEntry sensor, int sensor_i, byte[] all_sensors_raw_data, int offset_all_raw_data) {
+
+        int sampleLength = sensor.getDataSampleByteLength();
+        byte[] raw_data_sample = rawDataSamples[sensor_i];
+        System.arraycopy(all_sensors_raw_data, offset_all_raw_data, raw_data_sample, 0, sampleLength);//extract raw data of given sensor from all sensors' raw data
+
+        AggregationWindow aggregationWindow = sensorConfigurations[sensor_i].getAggregationWindow();
+        if( aggregationWindow != null ){//every sample counts towards the aggregate, precision and filters don't apply
+            aggregateSensorData(sensor, sensor_i, aggregationWindow, raw_data_sample);
+            return;
+        }
+
+        ReportingFilterChain reportingFilterChain = sensorConfigurations[sensor_i].getReportingFilterChain();
+        if( reportingFilterChain != null ){
+            if(!reportingFilterChain.shouldReport(sensor, raw_data_sample, tickNanos)){//filters configured by client replace precision
+                sessionMetrics.sampleSuppressed();
+                return;
+            }
+        }
+        else {
+            byte[] prev_raw_data_sample = prevRawDataSet[sensor_i] ? prevRawData[sensor_i] : NO_PREVIOUS_SAMPLE;
+            if(!sensor.dataChanged( raw_data_sample, prev_raw_data_sample, sensorConfigurations[sensor_i].getSensorPrecision())){//if there is no data change ( depends on precision also, check the implementation
+                sessionMetrics.sampleSuppressed();
+                return;
+            }
+        }
 
+        byte[] payload = all_sensors_raw_data;//raw data is sent straight from its slice of the frame
+        int payloadOffset = offset_all_raw_data;
+        int payloadLength = sampleLength;
         Response responseType = Response.READING_SENSOR_DATA;
-        byte[] sensorIdBytes = ByteBuffer.allocate(4).putInt(sensor.getSensorID()).array();//write sensor ID ( just id actually )
-        byte[] raw_data_sample = new byte[sensor.getDataSampleByteLength()];//write # bytes as additional data of raw data
 
-        for( int i = 0; i<sensor.getDataSampleByteLength(); ++i )//extract raw data of given sensor from all sensors' raw data
-            raw_data_sample[i] = all_sensors_raw_data[i+offset_all_raw_data];
+        if(sensorConfigurations[sensor_i].isFormatted() && packedFormattedData && formattedSchemas[sensor_i] != null && packSensorData(sensor, sensor_i, raw_data_sample)){//client decodes values through schema it got on CONNECT
+            payload = packedDataSink.getBuffer();
+            payloadOffset = 0;
+            payloadLength = packedDataSink.length();
+            responseType = Response.READING_SENSOR_DATA_PACKED;
+        }
+        else if(sensorConfigurations[sensor_i].isFormatted()){//get formatted data if sensor is configured for formatting, also if packing it failed
+            formatSensorData(sensor, raw_data_sample);
+            payload = formattedDataSink.getBuffer();
+            payloadOffset = 0;
+            payloadLength = formattedDataSink.length();
+            responseType = Response.READING_SENSOR_DATA_FORMATTED;//update response!
+        }
+        else if(sensorConfigurations[sensor_i].isDeltaEncoded()){//previous sample is still the one client has, it is updated below
+            int deltaLength = encodeDelta(sensor_i, raw_data_sample);
+            if( deltaLength > 0 ){
+                payload = deltaBuffer;
+                payloadOffset = 0;
+                payloadLength = deltaLength;
+                responseType = Response.READING_SENSOR_DATA_DELTA;
+            }
+        }
+        setPrevRawData(raw_data_sample, sensor_i);
+
+        sendSensorData(sensor.getSensorID(), responseType, payload, payloadOffset, payloadLength);
+    }
 
-        if(!sensor.dataChanged( raw_data_sample, prevRawData[sensor_i])) return;//if there is no data change ( depends on precision also, check the implementation
-        else setPrevRawData(raw_data_sample, sensor_i);
+    /**
+     * writes payload as a response of given type, or appends it to the tick's batch if client asked for batches
+     * */
+    private void sendSensorData(int sensorID, Response responseType, byte[] payload, int payloadOffset, int payloadLength){
+        if( batchedSensorData ){
+            appendToBatch(sensorID, payload, payloadOffset, payloadLength, responseType == Response.READING_SENSOR_DATA_DELTA);
+            return;
+        }
 
+        sensorDataResponsePackage.setResponseBody(sensorID);//write sensor ID ( just id actually )
+        sensorDataResponsePackage.setResponseType(responseType);
+        sensorDataResponsePackage.setAdditionalData(payload, payloadOffset, payloadLength);
+        sensorDataResponsePackage.sendResponse(clientOutputStream, flushPolicy);//write response
+        if( sessionMetrics.isEnabled() )
+            sessionMetrics.sensorDataSent(responseType, 1, System.nanoTime() - frameReadNanos);
+    }
 
-        byte[] rawLengthString = new byte[0];
-        byte[] rawString = new byte[0];
+    /**
+     * adds sample to sensor's aggregation window, sends READING_SENSOR_DATA_AGGREGATED once the window is complete
+     * */
+    private void aggregateSensorData(SensorEntry sensor, int sensor_i, AggregationWindow aggregationWindow, byte[] raw_data_sample){
+        SampleAggregator sampleAggregator = sampleAggregators[sensor_i];
+        if( sampleAggregator == null || sampleAggregator.getAggregationWindow() != aggregationWindow ){//client (re)configured the window, start over
+            sampleAggregator = new SampleAggregator(aggregationWindow);
+            sampleAggregators[sensor_i] = sampleAggregator;
+        }
+        if( !sampleAggregator.add(sensor, raw_data_sample, tickNanos) ) return;
 
+        int aggregateLength = sampleAggregator.getAggregateByteLength();
+        if( aggregateBuffer.length < aggregateLength )
+            aggregateBuffer = new byte[aggregateLength];
+        sampleAggregator.write(aggregateBuffer, 0);
+        sendSensorData(sensor.getSensorID(), Response.READING_SENSOR_DATA_AGGREGATED, aggregateBuffer, 0, aggregateLength);
+    }
 
-        if(sensor.isFormatted()){//get formatted data if sensor is configured for formatting.
-            String formattedDataAsString = sensor.formatRawData(raw_data_sample).toJSONString();
-            rawLengthString = ByteBuffer.allocate(4).putInt(formattedDataAsString.length()).array();//write length of formatted data
-            rawString = formattedDataAsString.getBytes();//write formatted data's string
-            responseType = Response.READING_SENSOR_DATA_FORMATTED;//update response!
+    /**
+     * writes raw data, formatted data's length in bytes and formatted data ( UTF-8 JSON ) into formattedDataSink
+     * */
+    private void formatSensorData(SensorEntry sensor, byte[] raw_data_sample){
+        int sampleLength = raw_data_sample.length;
+        formattedDataSink.reset(sampleLength + 4);//room for raw data and length, JSON is written after them
+        sensor.formatRawData(raw_data_sample, formattedDataSink);
+
+        byte[] destination = formattedDataSink.getBuffer();
+        System.arraycopy(raw_data_sample, 0, destination, 0, sampleLength);//copy raw data
+        FrameworkUtils.writeInt(destination, sampleLength, formattedDataSink.jsonLength());//write length of formatted data, in bytes
+    }
+
+    /**
+     * writes deltas between sample and the previously sent one into deltaBuffer
+     * @return number of bytes written, 0 if a keyframe ( full raw sample ) is to be sent instead
+     * */
+    private int encodeDelta(int sensor_i, byte[] raw_data_sample){
+        if( !prevRawDataSet[sensor_i] || deltasSinceKeyframe[sensor_i] >= DeltaEncoding.KEYFRAME_INTERVAL ){
+            deltasSinceKeyframe[sensor_i] = 0;
+            return 0;
         }
 
-        //sets up the additional data
-        int n_total = raw_data_sample.length + rawLengthString.length + rawString.length;
-        byte[] additional_data = new byte[n_total];
+        int deltaLength = DeltaEncoding.encode(raw_data_sample, 0, prevRawData[sensor_i], raw_data_sample.length, deltaBuffer, 0);
+        if( deltaLength >= raw_data_sample.length ){//deltas too big to pay off, a keyframe costs no more
+            deltasSinceKeyframe[sensor_i] = 0;
+            return 0;
+        }
 
-        int i = 0;
-        for( ; i<raw_data_sample.length; ++i )//copy raw data
-            additional_data[i] = raw_data_sample[i];
+        ++deltasSinceKeyframe[sensor_i];
+        return deltaLength;
+    }
 
-        for( ; i<raw_data_sample.length + rawLengthString.length; ++i )//copy formatted string's length
-            additional_data[i] = rawLengthString[i-raw_data_sample.length];
+    /**
+     * writes raw data followed by formatted values packed according to sensor's schema into packedDataSink.
+     * A sensor whose values don't match its schema sends its formatted data as JSON from then on
+     * @return false if values didn't match the schema, sample is to be sent as JSON
+     * */
+    private boolean packSensorData(SensorEntry sensor, int sensor_i, byte[] raw_data_sample){
+        int sampleLength = raw_data_sample.length;
+        packedDataSink.reset(sampleLength, formattedSchemas[sensor_i]);//room for raw data, values are written after it
+        try {
+            sensor.formatRawData(raw_data_sample, packedDataSink);
+        } catch (RuntimeException e) {
+            LOGGER.warning("Sensor " + sensor.getSensorID() + " failed packing values, its formatted data is sent as JSON: " + e);
+            formattedSchemas[sensor_i] = null;
+            return false;
+        }
+        if( packedDataSink.valuesLength() != formattedSchemas[sensor_i].getValuesByteLength() ){
+            LOGGER.warning("Packed values of sensor " + sensor.getSensorID() + " don't match its formatted schema, its formatted data is sent as JSON");
+            formattedSchemas[sensor_i] = null;
+            return false;
+        }
 
-        for( ; i<rawLengthString.length + rawLengthString.length + rawString.length; ++i )//copy formatted string
-            additional_data[i] = rawString[i-(raw_data_sample.length + rawLengthString.length)];
+        System.arraycopy(raw_data_sample, 0, packedDataSink.getBuffer(), 0, sampleLength);//copy raw data
+        return true;
+    }
 
-        ResponsePackage responsePackage = new ResponsePackage(responseType, sensorIdBytes, additional_data);//write response
-        responsePackage.sendResponse(clientOutputStream);
+    /**
+     * | sensor id | payload length | payload | is appended to the batch being built for the current tick
+     * */
+    private void appendToBatch(int sensorID, byte[] payload, int payloadOffset, int payloadLength, boolean delta){
+        int n_total = batchLength + BATCH_ENTRY_HEADER_SIZE + payloadLength;
+        if( batchBuffer.length < n_total )
+            batchBuffer = Arrays.copyOf(batchBuffer, Math.max(n_total, batchBuffer.length * 2));
+
+        FrameworkUtils.writeInt(batchBuffer, batchLength, sensorID);
+        FrameworkUtils.writeInt(batchBuffer, batchLength + 4, delta ? payloadLength | BATCH_ENTRY_DELTA_FLAG : payloadLength);
+        System.arraycopy(payload, payloadOffset, batchBuffer, batchLength + BATCH_ENTRY_HEADER_SIZE, payloadLength);
+
+        batchLength = n_total;
+        ++batchCount;
     }
 
-    private void setPrevRawData(byte[] raw_data_sample, int sensor_i) {
-        prevRawData[sensor_i] = new byte[raw_data_sample.length];
+    /**
+     * writes every sensor collected during the tick as one READING_SENSOR_DATA_BATCH response
+     * */
+    private void sendBatch(){
+        if( batchCount == 0 ) return;
+
+        sensorDataResponsePackage.setResponseType(Response.READING_SENSOR_DATA_BATCH);
+        sensorDataResponsePackage.setResponseBody(batchCount);//number of sensors in this batch
+        sensorDataResponsePackage.setAdditionalData(batchBuffer, 0, batchLength);
+        sensorDataResponsePackage.sendResponse(clientOutputStream, flushPolicy);
+        if( sessionMetrics.isEnabled() )
+            sessionMetrics.sensorDataSent(Response.READING_SENSOR_DATA_BATCH, batchCount, System.nanoTime() - frameReadNanos);
+
+        batchLength = 0;
+        batchCount = 0;
+    }
 
-        for( int i = 0; i<raw_data_sample.length; ++i )
-            prevRawData[sensor_i][i] = raw_data_sample[i];
+    private void flushClientOutputStream(){
+        try {
+            clientOutputStream.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
+    /**
+     * frames are taken from the given buffer, filled by SensorIngestThread, instead of reading sensor's input stream on this thread
+     * @see SensorIngestThread
+     * */
+    public void setFrameRingBuffer(FrameRingBuffer frameRingBuffer) {
+        this.frameRingBuffer = frameRingBuffer;
     }
 
-    public void disconnect(){
-        writingData = false;
-        readingStopped = false;
+    /**
+     * @see FlushPolicy
+     * */
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
     }
 
-    public void stopReading(){
-        readingStopped = true;
+    /**
+     * records frames read, samples suppressed and sent along with their latency, from reading the frame until the sample was written
+     * @see SessionMetrics
+     * */
+    public void setSessionMetrics(SessionMetrics sessionMetrics) {
+        this.sessionMetrics = sessionMetrics;
     }
 
-    private static class SampleRateTracker{
-        int sampleRate;
-        int slept;
+    /**
+     * for client output streams queueing writes, provider doesn't take frames while client is congested
+     * @param clientBackpressure null if writing to the client blocks
+     * @see ClientBackpressure
+     * */
+    public void setClientBackpressure(ClientBackpressure clientBackpressure) {
+        this.clientBackpressure = clientBackpressure;
+    }
 
-        public SampleRateTracker(int sampleRate) {
-            this.sampleRate = sampleRate;
-            this.slept = 0;
-        }
+    /**
+     * makes every sensor data response followed by timestamps of its frame, takes effect once provider starts or resumes writing data
+     * @param timestampFlags SampleTimestamps flags, 0 for no timestamps
+     * @param epochNanos System.nanoTime() of the epoch sent to client, timestamps are relative to it
+     * @see SampleTimestamps
+     * */
+    public void setSampleTimestamps(int timestampFlags, long epochNanos) {
+        this.timestampFlags = timestampFlags;
+        this.timestampEpochNanos = epochNanos;
+        this.boardTickEpochSet = false;
+        if( timestampFlags == 0 )
+            sensorDataResponsePackage.setTrailingData(null, 0);
+    }
 
-        public int getSampleRate() {
-            return sampleRate;
-        }
+    /**
+     * when set, formatted data of sensors declaring a FormattedSchema is sent as packed values instead of JSON
+     * @see FormattedSchema
+     * */
+    public void setPackedFormattedData(boolean packedFormattedData) {
+        this.packedFormattedData = packedFormattedData;
+    }
 
-        public void setSampleRate(int sampleRate) {
-            this.sampleRate = sampleRate;
-        }
+    /**
+     * when set, all sensors sampled within the same tick are sent as a single READING_SENSOR_DATA_BATCH response
+     * */
+    public void setBatchedSensorData(boolean batchedSensorData) {
+        this.batchedSensorData = batchedSensorData;
+    }
 
-        public void updateSleepTime(int amountSlept) {
-            if ( this.slept + amountSlept >= sampleRate )
-                this.slept = 0;
-            else
-                this.slept = this.slept + amountSlept;
-        }
+    private void setPrevRawData(byte[] raw_data_sample, int sensor_i) {
+        System.arraycopy(raw_data_sample, 0, prevRawData[sensor_i], 0, raw_data_sample.length);
+        prevRawDataSet[sensor_i] = true;
+    }
 
-        public boolean isSleeping(){
-            return !isAwake() && slept < sampleRate;
-        }
+    /**
+     * stops writing data for good, wakes the provider up if it is paused or waiting for a frame so that it can quit
+     * */
+    public void disconnect(){
+        close();
+        wakeUpProvider();
+    }
 
-        public boolean isAwake(){
-            return this.slept == 0;
-        }
+    private void close(){
+        readingState.set(ReadingState.CLOSED);
+        LockSupport.unpark(stoppingThread);
+    }
 
-        public void goToSleep(){
-            this.slept = 0;
-        }
+    /**
+     * stops writing data, waits until the frame being written has been written and flushed. Called by a single thread at a time
+     * @return true if provider is paused ( also if requestStop() paused it already ), false if it wasn't streaming, got closed meanwhile or isn't running anymore
+     * */
+    public boolean stopReading(){
+        stoppingThread = Thread.currentThread();
+        if( readingState.compareAndSet(ReadingState.STREAMING, ReadingState.STOPPING) )
+            wakeUpProvider();
+
+        while( readingState.get() == ReadingState.STOPPING && isRunning() )
+            LockSupport.parkNanos(this, STOPPING_PARK_NANOS);//unparked once provider paused or quit
+        return readingState.get() == ReadingState.PAUSED;
+    }
 
-        public int sleepTimeLeft(){
-            return sampleRate - slept;
+    /**
+     * same as stopReading(), but doesn't wait for provider to pause. Used by callers that must not block, e.g. event loop of ChannelSensorServer
+     * @param onStopped runs on provider's thread once it paused or quit, stopReading() returns right away afterwards
+     * @return false if provider wasn't streaming, onStopped doesn't run then
+     * */
+    public boolean requestStop(Runnable onStopped){
+        this.onStopped.set(onStopped);
+        if( !readingState.compareAndSet(ReadingState.STREAMING, ReadingState.STOPPING) ){
+            this.onStopped.set(null);
+            return false;
         }
+        wakeUpProvider();
+        return true;
+    }
+
+    /**
+     * wakes up whoever waits for provider to pause
+     * */
+    private void notifyStopped(){
+        LockSupport.unpark(stoppingThread);
+        Runnable onStopped = this.onStopped.getAndSet(null);
+        if( onStopped != null )
+            onStopped.run();
+    }
 
+    /**
+     * continues writing data after stopReading()
+     * @return false if provider wasn't paused
+     * */
+    public boolean resumeReading(){
+        if( !readingState.compareAndSet(ReadingState.PAUSED, ReadingState.STREAMING) ) return false;
+        LockSupport.unpark(providerThread);
+        return true;
     }
 
-    private int lowestSleepTimeLeft(){
+    /**
+     * starts writing data the first time it is called, resumes it afterwards
+     * */
+    public void startReading(){
+        if( readingState.get() == ReadingState.IDLE )
+            start();
+        else
+            resumeReading();
+    }
 
-        int lowestSleepTime = availableSensorsSampleRate.entrySet().iterator().next().getValue().sleepTimeLeft();
+    /**
+     * wakes provider up wherever it waits: parked until next deadline, paused or polling for a frame
+     * */
+    private void wakeUpProvider(){
+        if( frameRingBuffer != null )
+            frameRingBuffer.wakeUpConsumer();
+        LockSupport.unpark(providerThread);//null if provider hasn't started yet, it checks the state first thing
+    }
 
-        for( Map.Entry<Integer, SampleRateTracker> entry : availableSensorsSampleRate.entrySet() ) {
-            if( entry.getValue().sleepTimeLeft() < lowestSleepTime )
-                lowestSleepTime = entry.getValue().sleepTimeLeft();
-        }
+    public ReadingState getReadingState(){
+        return readingState.get();
+    }
 
-        return lowestSleepTime;
+    /**
+     * @return true if reading is stopped or being stopped
+     * */
+    public boolean isReadingStopped(){
+        ReadingState state = readingState.get();
+        return state == ReadingState.STOPPING || state == ReadingState.PAUSED;
     }
 
-    private void updateSleepTime(int timeSlept){
-        for( Map.Entry<Integer, SampleRateTracker> entry : availableSensorsSampleRate.entrySet() )
-            entry.getValue().updateSleepTime(timeSlept);
+    /**
+     * scheduler's statistics can be used to verify that sensors are delivered at their configured sample rates
+     * @see SampleScheduler
+     * */
+    public SampleScheduler getSampleScheduler() {
+        return sampleScheduler;
     }
 
     public void sensorConnected(int sensorID) {
-        for( SensorEntry sensor: availableSensors ){
-            if( sensor.getSensorID() == sensorID ) {
-                sensor.setConnected(true);
-                break;
-            }
-        }
+        int sensorIndex = sensorRegistry.indexOf(sensorID);
+        if( sensorIndex != -1 )
+            connectedSensors.setConnected(sensorIndex, true);
     }
 
     public void sensorDisconnected(int sensorID) {
-        for( SensorEntry sensor: availableSensors ){
-            if( sensor.getSensorID() == sensorID ) {
-                sensor.setConnected(false);
-                break;
-            }
-        }
+        int sensorIndex = sensorRegistry.indexOf(sensorID);
+        if( sensorIndex != -1 )
+            connectedSensors.setConnected(sensorIndex, false);
     }
 }
\ No newline at end of file
@@ -0,0 +1,153 @@
+package driver_framework.response;
+
+/**
+ * Delta encoding of raw samples, used for sensors configured with SensorEntry.CONFIGURE_FLAG_DELTA_ENCODED.
+ *
+ * Raw sample is split into big endian lanes: 4 bytes wide if sample's length is a multiple of 4, else 2 bytes wide if it is a multiple of 2, else single bytes.
+ * Each lane is sent as difference to the same lane of the previously sent sample, zig-zag encoded ( small negative and positive differences both stay small )
+ * and written as a varint ( 7 bits per byte, high bit set on all but the last byte ). Differences wrap around lane's width, so encoding is lossless for any data.
+ *
+ * Keyframes ( full raw samples, sent as READING_SENSOR_DATA ) are sent first, then at least every KEYFRAME_INTERVAL samples,
+ * and whenever deltas wouldn't be shorter than the raw sample, so a client can always resync.
+ *
+ * Client's side:
+ *      DeltaEncoding.Decoder decoder = new DeltaEncoding.Decoder(dataSampleByteLength);//one per sensor
+ *      READING_SENSOR_DATA -> decoder.keyframe(rawData, 0)
+ *      READING_SENSOR_DATA_DELTA -> decoder.delta(data, offset) returns bytes consumed, decoder.getSample() is the decoded raw sample
+ *
+ * @see Response#READING_SENSOR_DATA_DELTA
+ * */
+public class DeltaEncoding {
+
+    public static final int KEYFRAME_INTERVAL = 32;//at most this many deltas are sent between two keyframes
+    private static final int MAX_VARINT_LENGTH = 5;
+
+    private DeltaEncoding(){}
+
+    /**
+     * @return width in bytes of lanes a sample of given length is split into
+     * */
+    public static int getLaneWidth(int sampleLength){
+        if( sampleLength % 4 == 0 ) return 4;
+        if( sampleLength % 2 == 0 ) return 2;
+        return 1;
+    }
+
+    /**
+     * @return number of bytes encode() may write at most for a sample of given length
+     * */
+    public static int getMaxEncodedLength(int sampleLength){
+        return sampleLength / getLaneWidth(sampleLength) * MAX_VARINT_LENGTH;
+    }
+
+    /**
+     * writes deltas between sample and previous sample into destination, which must fit getMaxEncodedLength(sampleLength) bytes from offset
+     * @return number of bytes written
+     * */
+    public static int encode(byte[] sample, int sampleOffset, byte[] previousSample, int sampleLength, byte[] destination, int offset){
+        int laneWidth = getLaneWidth(sampleLength);
+        int position = offset;
+        for( int lane = 0; lane<sampleLength; lane += laneWidth ){
+            int delta = signExtend(readLane(sample, sampleOffset + lane, laneWidth) - readLane(previousSample, lane, laneWidth), laneWidth);
+            position = writeVarint(zigZag(delta), destination, position);
+        }
+        return position - offset;
+    }
+
+    /**
+     * applies deltas read from source to previous sample, writing decoded sample into destination ( which may be previous sample itself )
+     * @return number of bytes read from source
+     * */
+    public static int decode(byte[] source, int offset, byte[] previousSample, byte[] destination, int sampleLength){
+        int laneWidth = getLaneWidth(sampleLength);
+        int position = offset;
+        for( int lane = 0; lane<sampleLength; lane += laneWidth ){
+            int zigZagged = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = source[position++];
+                zigZagged |= (b & 0x7F) << shift;
+                shift += 7;
+            } while( (b & 0x80) != 0 );
+
+            writeLane(destination, lane, laneWidth, readLane(previousSample, lane, laneWidth) + unZigZag(zigZagged));
+        }
+        return position - offset;
+    }
+
+    private static int readLane(byte[] data, int offset, int laneWidth){
+        int value = 0;
+        for( int i = 0; i<laneWidth; ++i )
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        return value;
+    }
+
+    private static void writeLane(byte[] data, int offset, int laneWidth, int value){
+        for( int i = laneWidth - 1; i >= 0; --i ){
+            data[offset + i] = (byte) value;
+            value >>= 8;
+        }
+    }
+
+    /**
+     * @return difference wrapped around lane's width, as the smallest signed value
+     * */
+    private static int signExtend(int delta, int laneWidth){
+        int unusedBits = 32 - laneWidth * 8;
+        return delta << unusedBits >> unusedBits;
+    }
+
+    private static int zigZag(int value){
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int writeVarint(int value, byte[] destination, int position){
+        while( (value & ~0x7F) != 0 ){
+            destination[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        destination[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * keeps last decoded sample of one sensor on client's side
+     * */
+    public static class Decoder{
+        private final byte[] sample;
+        private boolean hasKeyframe = false;
+
+        public Decoder(int sampleLength){
+            this.sample = new byte[sampleLength];
+        }
+
+        /**
+         * call for each READING_SENSOR_DATA of the sensor
+         * */
+        public void keyframe(byte[] rawData, int offset){
+            System.arraycopy(rawData, offset, sample, 0, sample.length);
+            hasKeyframe = true;
+        }
+
+        /**
+         * call for each READING_SENSOR_DATA_DELTA of the sensor
+         * @return number of bytes consumed from data
+         * */
+        public int delta(byte[] data, int offset){
+            if( !hasKeyframe ) throw new IllegalStateException("Delta received before any keyframe");
+            return decode(data, offset, sample, sample, sample.length);
+        }
+
+        /**
+         * @return last decoded raw sample, overwritten by next keyframe() / delta()
+         * */
+        public byte[] getSample(){
+            return sample;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package driver_framework.response;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * round trip tests of DeltaEncoding, exits with status 1 if any of them fails
+ * */
+public class DeltaEncodingTest {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        int[] sampleLengths = {1, 2, 3, 4, 6, 8, 12};
+        for( int sampleLength : sampleLengths ){
+            testRandom(sampleLength);
+            testEdges(sampleLength);
+            testSmallChanges(sampleLength);
+        }
+        testDecoder();
+
+        if( failures > 0 ){
+            System.out.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All delta encoding tests passed");
+    }
+
+    private static void testRandom(int sampleLength){
+        Random random = new Random(sampleLength);
+        byte[] previous = new byte[sampleLength];
+        byte[] sample = new byte[sampleLength];
+        for( int i = 0; i<1000; ++i ){
+            random.nextBytes(previous);
+            random.nextBytes(sample);
+            roundTrip("random, length " + sampleLength, sample, previous);
+        }
+    }
+
+    private static void testEdges(int sampleLength){
+        byte[][] samples = {filled(sampleLength, 0x00), filled(sampleLength, 0xFF), filled(sampleLength, 0x80), filled(sampleLength, 0x7F)};
+        for( byte[] previous : samples )
+            for( byte[] sample : samples )
+                roundTrip("edges ( wraparound ), length " + sampleLength, sample, previous);
+    }
+
+    private static void testSmallChanges(int sampleLength){
+        byte[] previous = filled(sampleLength, 0x10);
+        byte[] sample = previous.clone();
+        sample[sampleLength - 1] += 3;
+        int encodedLength = roundTrip("small change, length " + sampleLength, sample, previous);
+        int n_lanes = sampleLength / DeltaEncoding.getLaneWidth(sampleLength);
+        check("small change encoded in one byte per lane, length " + sampleLength, encodedLength == n_lanes);
+    }
+
+    private static void testDecoder(){
+        Random random = new Random(42);
+        int sampleLength = 8;
+        DeltaEncoding.Decoder decoder = new DeltaEncoding.Decoder(sampleLength);
+
+        try {
+            decoder.delta(new byte[DeltaEncoding.getMaxEncodedLength(sampleLength)], 0);
+            check("decoder rejects delta before keyframe", false);
+        } catch (IllegalStateException e) {
+            check("decoder rejects delta before keyframe", true);
+        }
+
+        byte[] sent = new byte[sampleLength];
+        random.nextBytes(sent);
+        decoder.keyframe(sent, 0);
+
+        byte[] message = new byte[4 + DeltaEncoding.getMaxEncodedLength(sampleLength)];//deltas at an offset, as they are within a response
+        for( int i = 0; i<100; ++i ){
+            byte[] sample = sent.clone();
+            sample[random.nextInt(sampleLength)] += (byte) random.nextInt(5);
+            if( i % DeltaEncoding.KEYFRAME_INTERVAL == 0 ){
+                decoder.keyframe(sample, 0);
+            }
+            else{
+                int encodedLength = DeltaEncoding.encode(sample, 0, sent, sampleLength, message, 4);
+                int decodedLength = decoder.delta(message, 4);
+                check("decoder consumes all deltas", encodedLength == decodedLength);
+            }
+            check("decoder follows samples", Arrays.equals(sample, decoder.getSample()));
+            sent = sample;
+        }
+    }
+
+    /**
+     * @return encoded length
+     * */
+    private static int roundTrip(String name, byte[] sample, byte[] previous){
+        int sampleLength = sample.length;
+        byte[] encoded = new byte[DeltaEncoding.getMaxEncodedLength(sampleLength)];
+        int encodedLength = DeltaEncoding.encode(sample, 0, previous, sampleLength, encoded, 0);
+
+        byte[] decoded = new byte[sampleLength];
+        int decodedLength = DeltaEncoding.decode(encoded, 0, previous, decoded, sampleLength);
+        check(name, encodedLength == decodedLength && Arrays.equals(sample, decoded));
+        return encodedLength;
+    }
+
+    private static byte[] filled(int length, int value){
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+
+    private static void check(String name, boolean passed){
+        if( passed ) return;
+        ++failures;
+        System.out.println("FAILED: " + name);
+    }
+}
@@ -0,0 +1,98 @@
+package driver_framework.response;
+
+/**
+ * Decides when sensor data written to client's output stream is flushed.
+ * Client's output stream is buffered, so flushing less often packs more responses into a single packet on the link.
+ * Control responses ( CONNECT_Y, STOP_READ_Y, ... ) are always flushed right away regardless of the policy used for sensor data.
+ *
+ * Available policies:
+ *      IMMEDIATE - flush after every response ( default )
+ *      everyNBytes(n) - flush once at least n bytes were written since last flush
+ *      everyMillis(m) - flush once at least m milliseconds passed since last flush
+ *      endOfTick() - flush once per DataProviderThread's tick, after all sensors sampled in it were written
+ *
+ * Policies other than IMMEDIATE keep state, use a new instance for each client.
+ * @see ResponsePackage#sendResponse(java.io.OutputStream, FlushPolicy)
+ * */
+public interface FlushPolicy {
+
+    /**
+     * called after a response was written to client's output stream
+     * @param bytesWritten length of the written response
+     * @return true if output stream is to be flushed now
+     * */
+    public boolean flushAfterWrite(int bytesWritten);
+
+    /**
+     * called by DataProviderThread when all sensors of one tick were written
+     * @return true if output stream is to be flushed now
+     * */
+    public boolean flushOnTickEnd();
+
+    public static final FlushPolicy IMMEDIATE = new FlushPolicy() {
+        @Override
+        public boolean flushAfterWrite(int bytesWritten) { return true; }
+        @Override
+        public boolean flushOnTickEnd() { return false; }
+    };
+
+    public static FlushPolicy everyNBytes(int n){
+        return new FlushPolicy() {
+            private int bytesPending = 0;
+
+            @Override
+            public boolean flushAfterWrite(int bytesWritten) {
+                bytesPending += bytesWritten;
+                if( bytesPending < n ) return false;
+
+                bytesPending = 0;
+                return true;
+            }
+            @Override
+            public boolean flushOnTickEnd() { return false; }
+        };
+    }
+
+    public static FlushPolicy everyMillis(int m){
+        long intervalNanos = m * 1_000_000L;
+        return new FlushPolicy() {
+            private long lastFlush = System.nanoTime();
+            private boolean dataPending = false;
+
+            @Override
+            public boolean flushAfterWrite(int bytesWritten) {
+                dataPending = true;
+                return intervalPassed();
+            }
+            @Override
+            public boolean flushOnTickEnd() { return dataPending && intervalPassed(); }
+
+            private boolean intervalPassed(){
+                long now = System.nanoTime();
+                if( now - lastFlush < intervalNanos ) return false;
+
+                lastFlush = now;
+                dataPending = false;
+                return true;
+            }
+        };
+    }
+
+    public static FlushPolicy endOfTick(){
+        return new FlushPolicy() {
+            private boolean dataPending = false;
+
+            @Override
+            public boolean flushAfterWrite(int bytesWritten) {
+                dataPending = true;
+                return false;
+            }
+            @Override
+            public boolean flushOnTickEnd() {
+                boolean flush = dataPending;
+                dataPending = false;
+                return flush;
+            }
+        };
+    }
+}
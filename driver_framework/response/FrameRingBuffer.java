@@ -0,0 +1,240 @@
+package driver_framework.response;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single producer / single consumer ring buffer of sensor frames, used to decouple reading sensor's input stream from writing to the client.
+ * All slots are preallocated as one byte array, frames are copied in and out so neither side allocates.
+ * Each slot also keeps when its frame was read and board's tick sent with it, see SampleTimestamps.
+ *
+ * Producer is SensorIngestThread, consumer is DataProviderThread.
+ * Consumer takes frames in order through poll(), or only the newest one through pollLatest(). The latter is for a consumer sampling at its own deadlines,
+ * frames it skips arrived between two of its deadlines and are counted as downsampled, not as dropped.
+ * When buffer is full, OverflowPolicy decides what happens with the next frame:
+ *      DROP_OLDEST - oldest frame not yet taken by consumer is dropped, buffer keeps the most recent frames
+ *      DROP_NEWEST - incoming frame is dropped
+ *      BLOCK - producer waits for consumer, sensor's input stream is not read in the meantime
+ *
+ * @see SensorIngestThread
+ * */
+public class FrameRingBuffer {
+
+    public enum OverflowPolicy{
+        DROP_OLDEST,
+        DROP_NEWEST,
+        BLOCK
+    }
+
+    public static final int DEFAULT_CAPACITY = 16;
+    private static final long PRODUCER_PARK_NANOS = 100_000;//upper bound of a blocked producer's park, in case consumer's unpark is missed
+
+    private final byte[] slots;
+    private final long[] slotReadNanos;//System.nanoTime() frame in the slot was read at
+    private final int[] slotBoardTicks;
+    private final int frameLength;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+
+    private volatile long writeIndex = 0;//only producer moves it
+    private final AtomicLong readIndex = new AtomicLong();//moved by consumer, and by producer when it drops oldest frame
+    private volatile Thread waitingConsumer = null;
+    private volatile Thread waitingProducer = null;
+    private volatile boolean closed = false;
+    private volatile boolean consumerWokenUp = false;//consumer is to return from poll() without a frame, see wakeUpConsumer()
+
+    private volatile long droppedOldest = 0;//only producer writes counters
+    private volatile long droppedNewest = 0;
+    private volatile long downsampled = 0;//only consumer writes it
+
+    private long polledReadNanos = 0;//of the frame last taken by consumer, consumer only
+    private int polledBoardTick = 0;
+
+    public FrameRingBuffer(int frameLength, int capacity, OverflowPolicy overflowPolicy){
+        if( capacity <= 0 ) throw new IllegalArgumentException("Capacity has to be positive");
+
+        this.frameLength = frameLength;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.slots = new byte[frameLength * capacity];
+        this.slotReadNanos = new long[capacity];
+        this.slotBoardTicks = new int[capacity];
+    }
+
+    /**
+     * producer side, copies a frame read just now into the next free slot
+     * @return false if frame was dropped or buffer was closed
+     * */
+    public boolean offer(byte[] frame, int offset){
+        return offer(frame, offset, System.nanoTime(), 0);
+    }
+
+    /**
+     * producer side, copies a frame into the next free slot
+     * @param readNanos System.nanoTime() frame was read from sensor's input stream at
+     * @param boardTick board's tick sent with the frame, 0 if board doesn't send it
+     * @return false if frame was dropped or buffer was closed
+     * */
+    public boolean offer(byte[] frame, int offset, long readNanos, int boardTick){
+        long w = writeIndex;
+        long r;
+        while( w - (r = readIndex.get()) >= capacity ){//full
+            if( closed ) return false;
+
+            switch (overflowPolicy){
+                case DROP_NEWEST -> {
+                    droppedNewest++;
+                    return false;
+                }
+                case DROP_OLDEST -> {
+                    if( readIndex.compareAndSet(r, r + 1) )//if consumer took it in the meantime there is space already
+                        droppedOldest++;
+                }
+                case BLOCK -> {
+                    waitingProducer = Thread.currentThread();
+                    if( w - readIndex.get() >= capacity )
+                        LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+                    waitingProducer = null;
+                }
+            }
+        }
+
+        System.arraycopy(frame, offset, slots, slotOffset(w), frameLength);
+        int slot = (int)(w % capacity);
+        slotReadNanos[slot] = readNanos;
+        slotBoardTicks[slot] = boardTick;
+        writeIndex = w + 1;//publishes the frame
+
+        Thread consumer = waitingConsumer;
+        if( consumer != null )
+            LockSupport.unpark(consumer);
+        return true;
+    }
+
+    /**
+     * consumer side, copies the oldest frame into destination, waits for one if buffer is empty.
+     * When it was read and its board tick are available through getPolledReadNanos() and getPolledBoardTick() afterwards
+     * @return false if no frame arrived within timeout, buffer was closed or consumer was woken up
+     * */
+    public boolean poll(byte[] destination, int offset, long timeoutNanos){
+        return poll(destination, offset, timeoutNanos, false);
+    }
+
+    /**
+     * consumer side, copies the newest frame into destination and skips all older ones, waits for a frame if buffer is empty.
+     * Skipped frames are counted by getDownsampledCount()
+     * @return false if no frame arrived within timeout, buffer was closed or consumer was woken up
+     * */
+    public boolean pollLatest(byte[] destination, int offset, long timeoutNanos){
+        return poll(destination, offset, timeoutNanos, true);
+    }
+
+    private boolean poll(byte[] destination, int offset, long timeoutNanos, boolean latest){
+        long deadline = System.nanoTime() + timeoutNanos;
+        while( true ){
+            long r = readIndex.get();
+            if( r == writeIndex ){//empty
+                long remaining = deadline - System.nanoTime();
+                if( closed || remaining <= 0 ) return false;
+                if( consumerWokenUp ){
+                    consumerWokenUp = false;
+                    return false;
+                }
+
+                waitingConsumer = Thread.currentThread();
+                if( r == writeIndex && !consumerWokenUp )
+                    LockSupport.parkNanos(this, remaining);
+                waitingConsumer = null;
+                continue;
+            }
+
+            long taken = latest ? writeIndex - 1 : r;//producer can't overwrite it before readIndex moves past it
+            System.arraycopy(slots, slotOffset(taken), destination, offset, frameLength);
+            int slot = (int)(taken % capacity);
+            long readNanos = slotReadNanos[slot];
+            int boardTick = slotBoardTicks[slot];
+            if( readIndex.compareAndSet(r, taken + 1) ){
+                if( taken != r )
+                    downsampled += taken - r;
+                polledReadNanos = readNanos;
+                polledBoardTick = boardTick;
+                Thread producer = waitingProducer;
+                if( producer != null )
+                    LockSupport.unpark(producer);
+                return true;
+            }
+            //producer dropped the oldest frame while this one was being copied, it might have been overwritten, try again
+        }
+    }
+
+    /**
+     * makes consumer waiting for a frame return from poll() right away, or its next poll() finding buffer empty.
+     * Used by data provider to react to being stopped without waiting for poll's timeout
+     * */
+    public void wakeUpConsumer(){
+        consumerWokenUp = true;
+        Thread consumer = waitingConsumer;
+        if( consumer != null ) LockSupport.unpark(consumer);
+    }
+
+    /**
+     * wakes up both sides, no more frames are accepted afterwards
+     * */
+    public void close(){
+        closed = true;
+        Thread thread = waitingConsumer;
+        if( thread != null ) LockSupport.unpark(thread);
+        thread = waitingProducer;
+        if( thread != null ) LockSupport.unpark(thread);
+    }
+
+    private int slotOffset(long index){
+        return (int)(index % capacity) * frameLength;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+    public int size(){
+        return (int)(writeIndex - readIndex.get());
+    }
+    public int getCapacity() {
+        return capacity;
+    }
+    public int getFrameLength() {
+        return frameLength;
+    }
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+    public long getDroppedOldestCount() {
+        return droppedOldest;
+    }
+    public long getDroppedNewestCount() {
+        return droppedNewest;
+    }
+    /**
+     * @return System.nanoTime() frame last taken by poll() was read at, consumer only
+     * */
+    public long getPolledReadNanos() {
+        return polledReadNanos;
+    }
+
+    /**
+     * @return board's tick of the frame last taken by poll(), consumer only
+     * */
+    public int getPolledBoardTick() {
+        return polledBoardTick;
+    }
+
+    public long getDroppedCount() {
+        return droppedOldest + droppedNewest;
+    }
+
+    /**
+     * @return frames skipped by pollLatest() in favour of a newer one
+     * */
+    public long getDownsampledCount() {
+        return downsampled;
+    }
+}
@@ -23,12 +23,18 @@ package driver_framework.response;
  *      Response type: READING
  *          [ READING.byteValue, x, x, x, x, ... , n^th 'x' byte ]
  *      etc.
+ *
+ * Responses to pipelined requests ( see Request.CONNECT_FLAG_PIPELINED_REQUESTS ) echo request's correlation id, sensor data responses never carry one
+ * | Response | CORRELATION ID | BODY | ADDITIONAL DATA |
+ *      1             2            4          n
  * */
 public enum Response {
     //positive responses
     /**
      *  Request = | CONNECT | - - - - |
      *  Response = | CONNECT_Y | n sensors | (sensorPackage - id + sensor type)
+     *  if client set Request.CONNECT_FLAG_PACKED_FORMATTED_DATA, sensor packages are followed by each sensor's formatted schema, in the same order:
+     *      | ( schema length (4 bytes), 0 if sensor has no schema | schema, see FormattedSchema ) x n |
      * */
     CONNECT_Y((byte)200),
 
@@ -55,6 +61,7 @@ public enum Response {
      * Request = | START_READ | - - - - |
      * This response is given if data is available for reading. Checking IS_CONNECTED beforehand with desired sensor type advised. Otherwise, might be returning data of some other sensor
      * Response = | START_READ_Y | nBytes |
+     * Response = | START_READ_Y | timestamp flags | epoch (8 bytes) | if client set Request.CONNECT_FLAG_SAMPLE_TIMESTAMPS, see SampleTimestamps
      * */
     START_READ_Y((byte)0b00000_10_1),
 
@@ -73,6 +80,22 @@ public enum Response {
      * */
     STOP_READ_Y((byte)0b00000_11_1),
 
+    /**
+     * Request = | CONNECT_SENSORS | n | sensor id x n |
+     * at least one of requested sensors is available and got connected
+     * Response = | CONNECT_SENSORS_Y | n | bitmap ( (n + 7) / 8 bytes ) |
+     * bit i ( i % 8 of byte i / 8, least significant first ) is set if i^th requested sensor got connected.
+     * For wildcard request n is the number of available sensors and i^th bit stands for i^th sensor of CONNECT_Y
+     * */
+    CONNECT_SENSORS_Y((byte)11),
+
+    /**
+     * Request = | CONFIGURE_SENSORS | n | sensor id x n | configuration |
+     * at least one of requested sensors got configured
+     * Response = | CONFIGURE_SENSORS_Y | n | bitmap ( (n + 7) / 8 bytes ) |, bits as of CONNECT_SENSORS_Y
+     * */
+    CONFIGURE_SENSORS_Y((byte)204),
+
     //negative responses
 
     /**
@@ -120,6 +143,20 @@ public enum Response {
      */
     DISCONNECT_SENSOR_N((byte)8),
 
+    /**
+     * Request = | CONNECT_SENSORS | n | sensor id x n |
+     * none of requested sensors is available
+     * Response = | CONNECT_SENSORS_N | n | bitmap, all bits clear |
+     * */
+    CONNECT_SENSORS_N((byte)10),
+
+    /**
+     * Request = | CONFIGURE_SENSORS | n | sensor id x n | configuration |
+     * none of requested sensors is available or no sensor was connected beforehand
+     * Response = | CONFIGURE_SENSORS_N | n | bitmap, all bits clear |
+     * */
+    CONFIGURE_SENSORS_N((byte)205),
+
     //other
     /**
      * Request = none -> this response sent only while data is being read from the sensor
@@ -130,9 +167,42 @@ public enum Response {
 
     /**
      * same as READING_SENSOR_DATA, though additionally it also reads the formatted data!
+     * Response = | READING_SENSOR_DATA_FORMATTED | sensor id | raw data | formatted data's length in bytes ( 4 bytes ) | formatted data ( UTF-8 JSON ) |
      */
     READING_SENSOR_DATA_FORMATTED((byte)254),
 
+    /**
+     * Request = none -> sent instead of READING_SENSOR_DATA / READING_SENSOR_DATA_FORMATTED if client opted in on CONNECT ( see Request.CONNECT_FLAG_BATCHED_SENSOR_DATA )
+     * carries every changed sensor of one sampling tick in a single message. Payload is raw data, or raw data + formatted data's length + formatted data if sensor is formatted
+     * deltas ( see READING_SENSOR_DATA_DELTA ) are sent as payload with the highest bit of payload length set
+     * Response = | READING_SENSOR_DATA_BATCH | n sensors | ( sensor id (4 bytes) | payload length (4 bytes) | payload ) x n |
+     * */
+    READING_SENSOR_DATA_BATCH((byte)253),
+
+    /**
+     * Request = none -> sent instead of READING_SENSOR_DATA_FORMATTED for sensors having a FormattedSchema, if client opted in on CONNECT ( see Request.CONNECT_FLAG_PACKED_FORMATTED_DATA )
+     * formatted values are packed big endian primitives, of types and in order declared by sensor's schema received on CONNECT, so their length is known beforehand
+     * in READING_SENSOR_DATA_BATCH such sensor's payload is raw data + packed values
+     * Response = | READING_SENSOR_DATA_PACKED | sensor id | raw data | packed values |
+     * */
+    READING_SENSOR_DATA_PACKED((byte)252),
+
+    /**
+     * Request = none -> sent instead of READING_SENSOR_DATA for sensors configured with SensorEntry.CONFIGURE_FLAG_DELTA_ENCODED, between keyframes ( READING_SENSOR_DATA )
+     * carries zig-zag varint differences to the previous sample of the sensor, see DeltaEncoding for their layout and a decoder
+     * in READING_SENSOR_DATA_BATCH such entry has the highest bit of its payload length set
+     * Response = | READING_SENSOR_DATA_DELTA | sensor id | deltas |
+     * */
+    READING_SENSOR_DATA_DELTA((byte)251),
+
+    /**
+     * Request = none -> sent instead of any other sensor data for sensors configured with SensorEntry.CONFIGURE_FLAG_AGGREGATED, once per aggregation window
+     * summarizes each numeric value of samples taken within the window, values are 8 byte doubles. n values is 0 if sensor's values are not numeric
+     * in READING_SENSOR_DATA_BATCH such sensor's payload is the aggregate, starting with count
+     * Response = | READING_SENSOR_DATA_AGGREGATED | sensor id | count (4 bytes) | n values (1 byte) | ( min | max | mean | last ) x n values |
+     * */
+    READING_SENSOR_DATA_AGGREGATED((byte)250),
+
     /**
      * Request = 'ANY'
      * Informs that one sending the request is not following framework's conventions and sends the rejected request type alongside with the response.
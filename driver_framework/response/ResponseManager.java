@@ -2,18 +2,21 @@ package driver_framework.response;
 
 import arduino_simulator.SensorType;
 import arduino_simulator.sensors.SensorEntry;
+import driver_framework.FrameworkUtils;
+import driver_framework.ExecutionMode;
+import driver_framework.metrics.MeteredOutputStream;
+import driver_framework.metrics.SessionMetrics;
 import driver_framework.request.Request;
 import driver_framework.request.RequestObserver;
 import driver_framework.request.RequestPackage;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.math.BigInteger;
-import java.nio.ByteBuffer;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
-import static arduino_simulator.sensors.SensorEntry.SENSOR_ENTRY_BYTE_LENGTH;
-
 
 /**
  * observer of requests.
@@ -31,10 +34,14 @@ import static arduino_simulator.sensors.SensorEntry.SENSOR_ENTRY_BYTE_LENGTH;
  *      3. IS_CONNECTED_Y / IS_CONNECTED_N <- IS_CONNECTED          //Note: optionally called, won't affect request order
  *      4. START_READ_Y / START_READ_N <- START_READ
  *      6. STOP_READ_Y / STOP_READ_N <- STOP_READ
- *      5. READING_SENSOR_DATA <- sent after START_READ_Y
+ *      5. READING_SENSOR_DATA <- sent after START_READ_Y ( READING_SENSOR_DATA_BATCH if client opted in on CONNECT )
  *      7. INVALID_REQUEST <- if current request does not follow framework rules
  *      8. DISCONNECT -> no response, disconnects, terminates
  *
+ * CONNECT_SENSORS and CONFIGURE_SENSORS act as CONNECT_SENSOR and CONFIGURE on many sensors at once, answered by a single response carrying a bitmap of results
+ *
+ * Responses to pipelined requests echo request's correlation id and are flushed together once no more requests are buffered ( see Request.CONNECT_FLAG_PIPELINED_REQUESTS )
+ *
  * @see Request
  * @see Response
  * */
@@ -43,7 +50,9 @@ public class ResponseManager implements RequestObserver{
 
     private DataProviderThread dataProviderThread = null; //thread is used to write sensor data to client's output stream
     private OutputStream outputStreamClient = null; // output stream is used to write sensor data to client / Android developer
-    private InputStream inputStreamSensor = null; // input stream is used to get sensor data
+    private final BufferedOutputStream bufferedOutputStreamClient;//client's buffer, written through outputStreamClient which might also count written bytes
+    private final ClientBackpressure clientBackpressure;//set if client's output stream queues writes instead of blocking, see ClientBackpressure
+    private SensorHub sensorHub = null; // reads sensor data, either shared with other clients or owned by this one
 
     private RequestPackage currentRequestPackage = null;
     private Response previousResponse = null;
@@ -53,19 +62,146 @@ public class ResponseManager implements RequestObserver{
     private boolean isSensorConnected = false;//this field is needed for Request.CONNECT_SENSOR request
 
     private int generalSampleRateSensors = -1;
+    private boolean batchedSensorData = false;//client opted in for READING_SENSOR_DATA_BATCH on CONNECT
+    private boolean packedFormattedData = false;//client opted in for READING_SENSOR_DATA_PACKED on CONNECT
+    private boolean sampleTimestamps = false;//client opted in for SampleTimestamps on CONNECT
+    private FlushPolicy flushPolicy = FlushPolicy.IMMEDIATE;//used for sensor data, control responses are flushed right away unless request was pipelined
+    private boolean responsesPending = false;//responses to pipelined requests were written but not flushed yet
+
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;//kind of thread data provider runs on
+
+    private SessionMetrics sessionMetrics = SessionMetrics.NO_OP;
+    private long requestArrivalNanos = 0;//System.nanoTime() of current request's arrival, taken only if metrics are enabled
+
+    private FrameRingBuffer frameRingBuffer = null;//this client's frames from sensor hub, subscribed on first START_READ
+    private int frameBufferCapacity = FrameRingBuffer.DEFAULT_CAPACITY;
+    private FrameRingBuffer.OverflowPolicy overflowPolicy = FrameRingBuffer.OverflowPolicy.DROP_OLDEST;
 
     List<SensorEntry> availableSensors = new ArrayList<>();
+    private final SensorRegistry sensorRegistry;//finds sensor's index by its id
+    private SensorEntry.SensorConfiguration[] sensorConfigurations;//this client's own settings of each available sensor, same order
+    private final ConnectedSensors connectedSensors;//this client's connected sensors, data provider writes only these
+    private static final int CLIENT_OUTPUT_BUFFER_SIZE = 8192;
+
+    //responses to pipelined requests are left in client's buffer until requests are drained, buffer flushes itself once full
+    private static final FlushPolicy UNTIL_REQUESTS_DRAINED = new FlushPolicy() {
+        @Override
+        public boolean flushAfterWrite(int bytesWritten) { return false; }
+        @Override
+        public boolean flushOnTickEnd() { return false; }
+    };
+
+    /**
+     * client is the only one reading given sensor's input stream
+     * */
     public ResponseManager(InputStream inputStreamSensor, OutputStream outputStreamClient, List<SensorEntry> availableSensors ){
-        this.outputStreamClient = outputStreamClient;
-        this.inputStreamSensor = inputStreamSensor;
-        this.availableSensors = availableSensors;
+        this(new SensorHub(inputStreamSensor, availableSensors, false), outputStreamClient);
     }
+
+    /**
+     * client shares sensor data read by the hub with other clients
+     * */
+    public ResponseManager(SensorHub sensorHub, OutputStream outputStreamClient){
+        this.bufferedOutputStreamClient = new BufferedOutputStream(outputStreamClient, CLIENT_OUTPUT_BUFFER_SIZE);//responses are gathered here until flushed
+        this.clientBackpressure = outputStreamClient instanceof ClientBackpressure ? (ClientBackpressure) outputStreamClient : null;
+        this.outputStreamClient = bufferedOutputStreamClient;
+        this.sensorHub = sensorHub;
+        this.sensorRegistry = sensorHub.getSensorRegistry();
+        this.availableSensors = sensorRegistry.getSensors();
+
+        this.sensorConfigurations = new SensorEntry.SensorConfiguration[availableSensors.size()];
+        for( int i = 0; i<availableSensors.size(); ++i )
+            sensorConfigurations[i] = availableSensors.get(i).newConfiguration();
+        this.connectedSensors = new ConnectedSensors(sensorConfigurations);
+    }
+    /**
+     * sets policy used for flushing sensor data written while reading, takes effect on next START_READ
+     * @see FlushPolicy
+     * */
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
+    /**
+     * sets kind of thread sensor data is written to the client on, as well as the one reading sensor's input stream if this client is the only one reading it
+     * @see ExecutionMode
+     * */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+        if( !sensorHub.isShared() )
+            sensorHub.setExecutionMode(executionMode);
+    }
+
+    /**
+     * records this client's requests, responses, bytes sent and sensor data, has to be set before client sends its first request.
+     * Bytes received are counted by whoever reads client's requests
+     * @see SessionMetrics
+     * */
+    public void setSessionMetrics(SessionMetrics sessionMetrics) {
+        if( dataProviderThread != null ) throw new IllegalStateException("Session metrics have to be set before reading starts");
+        this.outputStreamClient = sessionMetrics.isEnabled() ? new MeteredOutputStream(bufferedOutputStreamClient, sessionMetrics) : bufferedOutputStreamClient;//counts bytes as they are written to client's buffer
+        this.sessionMetrics = sessionMetrics;
+    }
+
+    public SessionMetrics getSessionMetrics() {
+        return sessionMetrics;
+    }
+
+    /**
+     * sets how many sensor frames can wait for the client and what happens when client can't keep up, takes effect on first START_READ
+     * @see FrameRingBuffer
+     * */
+    public void setSensorFrameBuffer(int capacity, FrameRingBuffer.OverflowPolicy overflowPolicy) {
+        sensorHub.checkOverflowPolicy(overflowPolicy);
+        this.frameBufferCapacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * informs that board frames its data with a sync marker and optionally a checksum, has to be set before sensor hub starts reading
+     * @see SensorFrameReader
+     * */
+    public void setSensorFraming(byte[] syncMarker, boolean checksum) {
+        sensorHub.setSensorFraming(syncMarker, checksum);
+    }
+
+    /**
+     * @param boardTick board sends its own tick with each frame, passed on to clients asking for sample timestamps
+     * @see SampleTimestamps
+     * */
+    public void setSensorFraming(byte[] syncMarker, boolean checksum, boolean boardTick) {
+        sensorHub.setSensorFraming(syncMarker, checksum, boardTick);
+    }
+
+    /**
+     * @return how many times frame alignment of sensor's input stream was lost and found again
+     * */
+    public long getSensorResyncCount() {
+        return sensorHub.getResyncCount();
+    }
+
+    /**
+     * @return buffer between sensor's input stream and the client, null if reading has never been started. Exposes drop counters
+     * */
+    public FrameRingBuffer getSensorFrameBuffer() {
+        return frameRingBuffer;
+    }
+
+    /**
+     * @return this client's settings of sensor at given index of available sensors
+     * */
+    public SensorEntry.SensorConfiguration getSensorConfiguration(int sensorIndex) {
+        return sensorConfigurations[sensorIndex];
+    }
+
     /**
      * observer's method is triggered here as soon as data arrives
      * */
     @Override
     public void onRequestArrived(RequestPackage currentRequestPackage) {
         this.currentRequestPackage = currentRequestPackage;
+        if( sessionMetrics.isEnabled() )
+            requestArrivalNanos = System.nanoTime();
 
         processNewRequest();
     }
@@ -76,21 +212,53 @@ public class ResponseManager implements RequestObserver{
         this.isSensorConnected = false;
         if( dataProviderThread != null )
             dataProviderThread.disconnect();
+        if( frameRingBuffer != null )
+            sensorHub.unsubscribe(frameRingBuffer);
+        if( !sensorHub.isShared() )
+            sensorHub.shutdown();
+        sessionMetrics.close();
     }
 
     /**
-     * waits for data provider thread to disconnect ( stop reading ) !
+     * flushes responses gathered for pipelined requests received so far
      * */
-    private void waitStopReading(){
-        if( dataProviderThread != null )
-            dataProviderThread.stopReading();//data provider suspends itself
+    @Override
+    public void onRequestsDrained() {
+        flushPendingResponses();
+    }
+
+    private void flushPendingResponses() {
+        if( !responsesPending ) return;
+        responsesPending = false;
+        try {
+            outputStreamClient.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * waits for data provider to stop reading, it finishes writing the frame it is writing first
+     * @return false if data provider wasn't reading
+     * */
+    private boolean waitStopReading(){
+        return dataProviderThread != null && dataProviderThread.stopReading();//data provider pauses itself
+    }
+
+    /**
+     * lets an event loop answer STOP_READ without waiting for data provider: provider is asked to stop and onStopped runs on its thread once it paused.
+     * STOP_READ passed on to onRequestArrived afterwards is answered right away
+     * @return false if reading isn't being stopped, STOP_READ can be passed on right away
+     * */
+    public boolean stopReadingWithoutWaiting(Runnable onStopped){
+        return previousResponse == Response.START_READ_Y && dataProviderThread != null && dataProviderThread.requestStop(onStopped);
     }
 
     private void disconnectReading(){
         if( dataProviderThread != null ){
             dataProviderThread.disconnect();//stops writing data, disconnects from tied input stream
             try {
-                dataProviderThread.join();//wait for disconnect confirmation from the thread
+                dataProviderThread.awaitTermination();//wait for disconnect confirmation from the thread
             } catch (InterruptedException e) {
                 e.printStackTrace();
             }
@@ -111,8 +279,11 @@ public class ResponseManager implements RequestObserver{
      *              -> if framework conventions are not satisfied -> INVALID_REQUEST is the response
      * */
     private void processNewRequest() {
-        if( previousResponse != Response.START_READ_Y ){
-            switch (currentRequestPackage.getRequestType()){
+        Request requestType = currentRequestPackage.getRequestType();
+        if( requestType == null ){//unknown request type
+            sendInvalidRequestResponse();
+        }else if( previousResponse != Response.START_READ_Y ){
+            switch (requestType){
                 case CONNECT -> connectResponse();
                 case CONNECT_SENSOR -> connectSensorResponse();
                 case DISCONNECT_SENSOR -> disconnectSensorResponse();
@@ -121,21 +292,42 @@ public class ResponseManager implements RequestObserver{
                 case STOP_READ -> stopReadResponse();
                 case DISCONNECT -> {
                     disconnectResponse();
+                    flushPendingResponses();
+                    recordRequestHandled(null);
                     return;
                 }
                 case CONFIGURE -> configureResponse();
-                default -> sendInvalidRequestResponse();
+                case CONNECT_SENSORS -> connectSensorsResponse();
+                case CONFIGURE_SENSORS -> configureSensorsResponse();
+                default -> {
+                    discardAdditionalData();
+                    sendInvalidRequestResponse();
+                }
             }
-        }else if( currentRequestPackage.getRequestType() == Request.STOP_READ ){
+        }else if( requestType == Request.STOP_READ ){
             stopReadResponse();
-        }else if( currentRequestPackage.getRequestType() == Request.DISCONNECT ){
+        }else if( requestType == Request.DISCONNECT ){
             disconnectResponse();
+            flushPendingResponses();
+            recordRequestHandled(null);
             return;
+        }else{//only STOP_READ and DISCONNECT are expected while reading
+            discardAdditionalData();
+            sendInvalidRequestResponse();
         }
 
 
-        this.previousResponse = currentResponsePackage.getResponseType();
-        currentResponsePackage.sendResponse(outputStreamClient);
+        if( currentResponsePackage.getResponseType() != Response.INVALID_REQUEST )//rejected request doesn't change what is expected next, reading goes on
+            this.previousResponse = currentResponsePackage.getResponseType();
+        int correlationId = currentRequestPackage.getCorrelationId();
+        currentResponsePackage.setCorrelationId(correlationId);
+        if( correlationId == RequestPackage.NO_CORRELATION_ID )
+            currentResponsePackage.sendResponse(outputStreamClient);
+        else{
+            currentResponsePackage.sendResponse(outputStreamClient, UNTIL_REQUESTS_DRAINED);
+            responsesPending = true;
+        }
+        recordRequestHandled(currentResponsePackage.getResponseType());
 
         if( this.currentResponsePackage.responseType == Response.START_READ_Y )
             startReadingThread();
@@ -143,6 +335,14 @@ public class ResponseManager implements RequestObserver{
         this.currentResponsePackage = null;
     }
 
+    /**
+     * @param responseType null if request wasn't answered
+     * */
+    private void recordRequestHandled(Response responseType) {
+        if( sessionMetrics.isEnabled() )
+            sessionMetrics.requestHandled(currentRequestPackage.getRequestType(), responseType, System.nanoTime() - requestArrivalNanos);
+    }
+
     /**
      * if there are no sensors available, sends CONNECT_N
      * otherwise:
@@ -154,44 +354,18 @@ public class ResponseManager implements RequestObserver{
         if( availableSensors.size() == 0)
             currentResponsePackage = new ResponsePackage(Response.CONNECT_N);
         else{
-
-            //set up body
-            byte[] sizeBytes = ByteBuffer.allocate(4).putInt(availableSensors.size()).array();
-
-            //set up additional data
-            byte[] additionalData = new byte[availableSensors.size() * SENSOR_ENTRY_BYTE_LENGTH];//+ 4 + 4 - 2 additional integer values for MIN and MAX
-            for( int i = 0; i<availableSensors.size(); ++i ){//set sensor type, sensor id, n length
-                SensorType sensorType = availableSensors.get(i).getSensorType();
-                int sensorID = availableSensors.get(i).getSensorID();
-                int dataSampleLength = availableSensors.get(i).getDataSampleByteLength();
-
-                byte sensorTypeByte = sensorType.getValue();
-                byte[] sensorIdBytes = ByteBuffer.allocate(4).putInt(sensorID).array();
-                byte[] dataSampleLengthBytes = ByteBuffer.allocate(4).putInt(dataSampleLength).array();
-
-                additionalData[i*SENSOR_ENTRY_BYTE_LENGTH] = sensorTypeByte;
-                for( int j = 1; j<5; ++j )
-                    additionalData[i*SENSOR_ENTRY_BYTE_LENGTH+j] = sensorIdBytes[j-1];//send sensor's id
-
-                for( int j = 5; j<9; ++j )
-                    additionalData[i*SENSOR_ENTRY_BYTE_LENGTH+j] = dataSampleLengthBytes[j-5];//send length of its byte
-
-                byte[] minValueBytes = ByteBuffer.allocate(4).putInt(availableSensors.get(i).getMinValue()).array();
-                for( int j = 9; j<13; ++j )//send minimum value
-                    additionalData[i*SENSOR_ENTRY_BYTE_LENGTH+j] = minValueBytes[j-9];//send sensor's id
-
-                byte[] maxValueBytes = ByteBuffer.allocate(4).putInt(availableSensors.get(i).getMaxValue()).array();
-                for( int j = 13; j<SENSOR_ENTRY_BYTE_LENGTH; ++j )//send maximum value
-                    additionalData[i*SENSOR_ENTRY_BYTE_LENGTH+j] = maxValueBytes[j-13];//send length of its byte
-            }
-            currentResponsePackage = new ResponsePackage(Response.CONNECT_Y, sizeBytes, additionalData);
-
             isSensorConnected = true;
 
             //instantiate data transfer thread with provided sample rate
-            byte[] generalSampleRateBytes = currentRequestPackage.getRequestBody();
-            int generalSampleRate = new BigInteger(generalSampleRateBytes).intValue();
-            this.generalSampleRateSensors = generalSampleRate;
+            int connectBody = currentRequestPackage.getRequestBodyInt();
+            this.generalSampleRateSensors = Request.getConnectSampleRate(connectBody);
+            this.batchedSensorData = (Request.getConnectFlags(connectBody) & Request.CONNECT_FLAG_BATCHED_SENSOR_DATA) != 0;
+            this.packedFormattedData = (Request.getConnectFlags(connectBody) & Request.CONNECT_FLAG_PACKED_FORMATTED_DATA) != 0;
+            this.sampleTimestamps = (Request.getConnectFlags(connectBody) & Request.CONNECT_FLAG_SAMPLE_TIMESTAMPS) != 0;
+            currentRequestPackage.setPipelined( (Request.getConnectFlags(connectBody) & Request.CONNECT_FLAG_PIPELINED_REQUESTS) != 0 );//requests following this one
+
+            //sensor entries ( and schemas ) are the same for every client, encoded once by sensor registry
+            currentResponsePackage = ResponsePackage.encoded(Response.CONNECT_Y, sensorRegistry.getConnectResponse(packedFormattedData));
         }
     }
 
@@ -199,13 +373,7 @@ public class ResponseManager implements RequestObserver{
      * starts reading sensor's data and sending it to the client
      * */
     private void startReadingThread() {
-        if( dataProviderThread.getState() == Thread.State.WAITING ) {//if it was suspended, continue
-                synchronized (dataProviderThread) {
-                    dataProviderThread.notify();
-                }
-        }
-        else//start for the first time
-            dataProviderThread.start();
+        dataProviderThread.startReading();//starts it the first time, resumes it afterwards
     }
 
 
@@ -217,19 +385,16 @@ public class ResponseManager implements RequestObserver{
      * */
     private void connectSensorResponse() {//check if given sensor type is present
         //independent response
-        int sensorID = new BigInteger(currentRequestPackage.getRequestBody()).intValue();
+        int sensorID = currentRequestPackage.getRequestBodyInt();
         Response responseType = null;
 
         responseType = (Response.CONNECT_SENSOR_N);//assume not present
 
-        isSensorConnected = false;
-        for( SensorEntry sensor: availableSensors ){//change assumption if you find a contradiction
-            if (sensorID == sensor.getSensorID()) {
-                responseType = Response.CONNECT_SENSOR_Y;//form a package and send it
-                sensor.setConnected(true);
-                isSensorConnected = true;
-                break;
-            }
+        int sensorIndex = sensorRegistry.indexOf(sensorID);
+        isSensorConnected = sensorIndex != -1;
+        if( isSensorConnected ){
+            responseType = Response.CONNECT_SENSOR_Y;//form a package and send it
+            connectedSensors.setConnected(sensorIndex, true);
         }
 
         currentResponsePackage = new ResponsePackage(responseType, currentRequestPackage.getRequestBody());
@@ -240,57 +405,166 @@ public class ResponseManager implements RequestObserver{
         return SensorType.getSensorTypeFromByte(sensorTypeByte);
     }
 
+    /**
+     * Response = | INVALID_REQUEST | rejected request type (1 byte) - - - |
+     * */
     private void sendInvalidRequestResponse() {
         currentResponsePackage = new ResponsePackage(Response.INVALID_REQUEST);
+        currentResponsePackage.getResponseBody()[0] = currentRequestPackage.getRequestTypeByte();
+    }
+
+    /**
+     * reads and drops additional data of a rejected request, so that the next request is read from where it starts.
+     * Channel transport has skipped it already, reading it again from the request's view is harmless
+     * */
+    private void discardAdditionalData() {
+        Request requestType = currentRequestPackage.getRequestType();
+        if( requestType != Request.CONFIGURE && requestType != Request.CONNECT_SENSORS && requestType != Request.CONFIGURE_SENSORS ) return;
+
+        InputStream inputStream = currentRequestPackage.getInputStream();
+        try {
+            if( requestType != Request.CONFIGURE )//count was checked by RequestPackage
+                inputStream.skipNBytes(Request.getBulkSensorIDsByteLength(currentRequestPackage.getRequestBodyInt()));
+            if( requestType != Request.CONNECT_SENSORS )
+                new SensorEntry.SensorConfiguration().configure(inputStream);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     private void configureResponse() {//sets sample rate for the given sensor id
+       int sensorID = currentRequestPackage.getRequestBodyInt();//get sensor id
+       SensorEntry.SensorConfiguration configuration = new SensorEntry.SensorConfiguration();
+       configuration.configure( currentRequestPackage.getInputStream() );//read even if not applied, next request starts after it
+
        if( !isSensorConnected ) { currentResponsePackage = new ResponsePackage(Response.CONFIGURE_N); return; }//performs configuration only if initial handshake has been established
 
-       currentResponsePackage = new ResponsePackage(Response.CONFIGURE_Y, currentRequestPackage.getRequestBody());
-       byte[] sensorIdBytes = currentRequestPackage.getRequestBody();
-       int sensorID = new BigInteger(sensorIdBytes).intValue();//get sensor id
-
-       boolean id_exists = false;//check if given id requested for configuration exists
-       for(SensorEntry sensor : availableSensors){
-           if( sensor.getSensorID() == sensorID ) {
-               id_exists = true;
-               sensor.configureSensor( currentRequestPackage.getInputStream() );
-               break;
-           }
+       int sensorIndex = sensorRegistry.indexOf(sensorID);//check if given id requested for configuration exists
+       boolean id_exists = sensorIndex != -1 && canConfigure(sensorIndex, configuration);
+       if( id_exists )
+           sensorConfigurations[sensorIndex].configure(configuration);//only this client's configuration changes
+       else if( sensorID == Request.BULK_WILDCARD ){//configuration is applied to every available sensor that can take it
+           for( int i = 0; i<sensorConfigurations.length; ++i )
+               if( canConfigure(i, configuration) ) sensorConfigurations[i].configure(configuration);
        }
 
-       if( id_exists || sensorID == -1 )//return id and response is Y or N
+       if( id_exists || sensorID == Request.BULK_WILDCARD )//return id and response is Y or N
            currentResponsePackage = new ResponsePackage(Response.CONFIGURE_Y, currentRequestPackage.getRequestBody());
        else
            currentResponsePackage = new ResponsePackage(Response.CONFIGURE_N, currentRequestPackage.getRequestBody());
 
     }
 
-    private void disconnectResponse(){
-        synchronized (dataProviderThread){
-            if( dataProviderThread.getState() == Thread.State.WAITING )
-                dataProviderThread.notify();//ensures thread will quit
+    /**
+     * @return false if configuration sets an aggregation window for a sensor whose samples have more values than an aggregate holds
+     * */
+    private boolean canConfigure(int sensorIndex, SensorEntry.SensorConfiguration configuration){
+        return configuration.getAggregationWindow() == null || SampleAggregator.canAggregate(availableSensors.get(sensorIndex));
+    }
+
+    /**
+     * Request = | CONNECT_SENSORS | n | sensor id x n | ( n = Request.BULK_WILDCARD for all available sensors )
+     * Response = | CONNECT_SENSORS_Y | n | bitmap of connected sensors |
+     * Response = | CONNECT_SENSORS_N | n | bitmap | if none of requested sensors is available
+     * */
+    private void connectSensorsResponse() {
+        int[] sensorIndexes = readBulkSensorIndexes();
+        if( sensorIndexes == null ){ sendInvalidRequestResponse(); return; }
+
+        byte[] results = new byte[getBulkResultsByteLength(sensorIndexes.length)];
+        boolean anyConnected = false;
+        for( int i = 0; i<sensorIndexes.length; ++i ){
+            if( sensorIndexes[i] == -1 ) continue;
+            results[i >>> 3] |= (byte)(1 << (i & 7));
+            anyConnected = true;
         }
+        connectedSensors.setConnected(sensorIndexes, true);//data provider sees all of them at once
+        isSensorConnected = anyConnected;//same as CONNECT_SENSOR
 
-        dataProviderThread.disconnect();
+        currentResponsePackage = getBulkResponsePackage(anyConnected ? Response.CONNECT_SENSORS_Y : Response.CONNECT_SENSORS_N, sensorIndexes.length, results);
+    }
+
+    /**
+     * Request = | CONFIGURE_SENSORS | n | sensor id x n | configuration, same as following CONFIGURE |
+     * Response = | CONFIGURE_SENSORS_Y | n | bitmap of configured sensors |
+     * Response = | CONFIGURE_SENSORS_N | n | bitmap | if none of requested sensors is available or handshake hasn't been established
+     * */
+    private void configureSensorsResponse() {
+        int[] sensorIndexes = readBulkSensorIndexes();
+        if( sensorIndexes == null ){ sendInvalidRequestResponse(); return; }
+
+        SensorEntry.SensorConfiguration configuration = new SensorEntry.SensorConfiguration();
+        configuration.configure( currentRequestPackage.getInputStream() );//read even if not applied, next request starts after it
+
+        byte[] results = new byte[getBulkResultsByteLength(sensorIndexes.length)];
+        boolean anyConfigured = false;
+        for( int i = 0; isSensorConnected && i<sensorIndexes.length; ++i ){//performs configuration only if initial handshake has been established
+            if( sensorIndexes[i] == -1 || !canConfigure(sensorIndexes[i], configuration) ) continue;
+            sensorConfigurations[sensorIndexes[i]].configure(configuration);//each sensor gets its own copy, only this client's configuration changes
+            results[i >>> 3] |= (byte)(1 << (i & 7));
+            anyConfigured = true;
+        }
+
+        currentResponsePackage = getBulkResponsePackage(anyConfigured ? Response.CONFIGURE_SENSORS_Y : Response.CONFIGURE_SENSORS_N, sensorIndexes.length, results);
+    }
+
+    /**
+     * reads sensor ids following a bulk request
+     * @return index of each requested sensor within available sensors, -1 for ids that aren't available. Every available sensor for wildcard.
+     *         null if ids couldn't be read. RequestPackage closes the session on a number of ids out of range before it gets here
+     * */
+    private int[] readBulkSensorIndexes() {
+        int n = currentRequestPackage.getRequestBodyInt();
+        if( n == Request.BULK_WILDCARD ){
+            int[] sensorIndexes = new int[sensorRegistry.size()];
+            for( int i = 0; i<sensorIndexes.length; ++i )
+                sensorIndexes[i] = i;
+            return sensorIndexes;
+        }
+        if( !Request.isValidBulkCount(n) ) return null;
+
+        byte[] sensorIDs = new byte[Request.getBulkSensorIDsByteLength(n)];
+        try {
+            if( FrameworkUtils.readFully(currentRequestPackage.getInputStream(), sensorIDs, 0, sensorIDs.length) != sensorIDs.length )
+                throw new IOException("Returned -1 while trying to get sensor ids");
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        int[] sensorIndexes = new int[n];
+        for( int i = 0; i<n; ++i )
+            sensorIndexes[i] = sensorRegistry.indexOf(FrameworkUtils.readInt(sensorIDs, i * 4));
+        return sensorIndexes;
+    }
+
+    private static int getBulkResultsByteLength(int n_sensors) {
+        return (n_sensors + 7) >>> 3;
+    }
+
+    private static ResponsePackage getBulkResponsePackage(Response responseType, int n_sensors, byte[] results) {
+        byte[] responseBody = new byte[ResponsePackage.RESPONSE_BODY_SIZE];
+        FrameworkUtils.writeInt(responseBody, 0, n_sensors);
+        return new ResponsePackage(responseType, responseBody, results);
+    }
+
+    private void disconnectResponse(){
+        if( dataProviderThread != null )
+            dataProviderThread.disconnect();//also wakes it up if suspended, ensures thread will quit
     }
 
     private void disconnectSensorResponse() {
 
         //independent response
-        int sensorID = new BigInteger(currentRequestPackage.getRequestBody()).intValue();
+        int sensorID = currentRequestPackage.getRequestBodyInt();
         Response responseType = null;
 
         responseType = (Response.DISCONNECT_SENSOR_N);//assume not present
 
-        for( SensorEntry sensor: availableSensors ){//change assumption if you find a contradiction
-            if (sensorID == sensor.getSensorID()) {
-                responseType = Response.DISCONNECT_SENSOR_Y;//form a package and send it
-                sensor.setConnected(false);
-                dataProviderThread.sensorDisconnected(sensorID);
-                break;
-            }
+        int sensorIndex = sensorRegistry.indexOf(sensorID);
+        if( sensorIndex != -1 ){
+            responseType = Response.DISCONNECT_SENSOR_Y;//form a package and send it
+            connectedSensors.setConnected(sensorIndex, false);//data provider shares this client's connected sensors
         }
 
         currentResponsePackage = new ResponsePackage(responseType, currentRequestPackage.getRequestBody());
@@ -303,15 +577,9 @@ public class ResponseManager implements RequestObserver{
         Response responseType = null;
 
         //check if requested sensor ID is connected
-        boolean isSensorConnected = false;
-        int sensorID = new BigInteger(currentRequestPackage.getRequestBody()).intValue();
-
-        for( SensorEntry sensor: availableSensors ) {
-            if (sensorID == sensor.getSensorID() && sensor.isConnected()) {//if sensor's id is found and sensor pointed to by the given id is connected => return that a sensor is connected
-                isSensorConnected = true;
-                break;
-            }
-        }
+        int sensorID = currentRequestPackage.getRequestBodyInt();
+        int sensorIndex = sensorRegistry.indexOf(sensorID);
+        boolean isSensorConnected = sensorIndex != -1 && connectedSensors.isConnected(sensorIndex);//if sensor's id is found and sensor pointed to by the given id is connected => return that a sensor is connected
         //form a package and send it
         //send that sensor is connected
         responseType  = isSensorConnected ? Response.IS_CONNECTED_Y : Response.IS_CONNECTED_N;//return that sensor is not connected alongside with the provided ID, body is ID
@@ -325,23 +593,68 @@ public class ResponseManager implements RequestObserver{
      * Case 2: was reading before -> continue reading
      *
      * | START_READING_Y | NUM_OF_BYTES |
+     * | START_READING_Y | timestamp flags | epoch | if client asked for sample timestamps, each START_READ_Y starts a new epoch
      * */
     private void startReadResponse() {//if handshake done you can start reading now
         if( isSensorConnected ){
             currentResponsePackage = new ResponsePackage( Response.START_READ_Y);
-            dataProviderThread = new DataProviderThread(outputStreamClient, inputStreamSensor, availableSensors, generalSampleRateSensors);
+            if( dataProviderThread == null ){//one data provider for the whole session, paused by STOP_READ
+                dataProviderThread = new DataProviderThread(outputStreamClient, subscribeToSensorHub(), sensorRegistry, sensorConfigurations, connectedSensors, generalSampleRateSensors);
+                dataProviderThread.setExecutionMode(executionMode);
+                dataProviderThread.setSessionMetrics(sessionMetrics);
+                dataProviderThread.setClientBackpressure(clientBackpressure);
+            }
+            //provider is not streaming, it takes over settings of a CONNECT sent since reading stopped once it resumes
+            dataProviderThread.setGeneralSampleRate(generalSampleRateSensors);
+            dataProviderThread.setBatchedSensorData(batchedSensorData);
+            dataProviderThread.setPackedFormattedData(packedFormattedData);
+            dataProviderThread.setFlushPolicy(flushPolicy);
+            setSampleTimestamps();
         }else //if sensor is not / has not previously been connected send an invalid request response
             currentResponsePackage = new ResponsePackage(Response.START_READ_N);
     }
 
+    /**
+     * epoch is taken while data provider isn't streaming, so every sample sent after START_READ_Y is timestamped relative to it
+     * @see SampleTimestamps
+     * */
+    private void setSampleTimestamps() {
+        if( !sampleTimestamps ){
+            dataProviderThread.setSampleTimestamps(0, 0);
+            return;
+        }
+
+        int timestampFlags = SampleTimestamps.TIMESTAMP_FLAG_READ_TIME;
+        if( sensorHub.hasBoardTick() )
+            timestampFlags |= SampleTimestamps.TIMESTAMP_FLAG_BOARD_TICK;
+        long epochNanos = System.nanoTime();
+        Instant epoch = Instant.now();
+        dataProviderThread.setSampleTimestamps(timestampFlags, epochNanos);
+
+        currentResponsePackage.setResponseBody(timestampFlags);
+        currentResponsePackage.setAdditionalData(SampleTimestamps.encodeEpoch(epoch.getEpochSecond() * 1_000_000 + epoch.getNano() / 1000));
+    }
+
+    /**
+     * client subscribes to sensor hub once for the whole session, no matter how many times reading is stopped and started
+     * @return buffer sensor hub fills with frames for this client
+     * */
+    private FrameRingBuffer subscribeToSensorHub() {
+        if( frameRingBuffer == null ){
+            frameRingBuffer = sensorHub.subscribe(frameBufferCapacity, overflowPolicy);
+            sessionMetrics.setDroppedFrames(frameRingBuffer::getDroppedCount);
+            sessionMetrics.setDownsampledFrames(frameRingBuffer::getDownsampledCount);
+        }
+        return frameRingBuffer;
+    }
+
     /**
      * stops reading of sensor data / terminates the thread that was responsible for reading data and sending it to client's output stream
      * Case 1: was reading and now stops reading
      * Case 2: wasn't reading -> response is invalid -> STOP_READ_N since it was not reading beforehand
      * */
     private void stopReadResponse() {
-        if( previousResponse == Response.START_READ_Y ) {
-            waitStopReading();
+        if( previousResponse == Response.START_READ_Y && waitStopReading() ) {//acknowledged once every frame written before is flushed
             currentResponsePackage = new ResponsePackage(Response.STOP_READ_Y);
         }
         else
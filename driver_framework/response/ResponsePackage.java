@@ -1,5 +1,8 @@
 package driver_framework.response;
 
+import driver_framework.FrameworkUtils;
+import driver_framework.request.RequestPackage;
+
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -7,30 +10,92 @@ public class ResponsePackage {
     private byte[] responseBody = new byte[RESPONSE_BODY_SIZE];
     private byte responseTypeByte;//used to represent response header
     private byte[] additionalData;
+    private int additionalDataOffset = 0;
+    private int additionalDataLength = 0;
+    private byte[] trailingData;//written after additional data, e.g. sample timestamps
+    private int trailingDataLength = 0;
+
+    private byte[] responseInBytes = new byte[RESPONSE_HEADER_SIZE + RESPONSE_BODY_SIZE];//header, body and additional data are encoded here on each send, reused and grown when needed
+    private byte[] encodedResponse = null;//whole response encoded beforehand, written as it is
+    private int correlationId = RequestPackage.NO_CORRELATION_ID;//echoed after header if request had one
 
     Response responseType = null;
+
+    /**
+     * writes the response and flushes it right away, used for control responses
+     * */
     public void sendResponse(OutputStream outputStream) {
-        try {
-            byte[] responseInBytes = new byte[RESPONSE_BODY_SIZE + RESPONSE_HEADER_SIZE];
-            responseInBytes[0] = responseTypeByte;
-            for( int i = 0; i<RESPONSE_BODY_SIZE; ++i )
-                responseInBytes[i+1] = responseBody[i];
+        sendResponse(outputStream, FlushPolicy.IMMEDIATE);
+    }
 
-            outputStream.write(responseInBytes);//write the response
-            if( additionalData != null && additionalData.length > 0 )//write additional data if it was previously set
-                outputStream.write(additionalData);
+    /**
+     * writes header, body and additional data with a single write, flushing is left to the given policy
+     * */
+    public void sendResponse(OutputStream outputStream, FlushPolicy flushPolicy) {
+        try {
+            if( encodedResponse != null ){
+                if( correlationId == RequestPackage.NO_CORRELATION_ID )
+                    outputStream.write(encodedResponse);
+                else{//cached response is shared, correlation id is written in between its header and the rest
+                    outputStream.write(encodedResponse, 0, RESPONSE_HEADER_SIZE);
+                    outputStream.write(correlationId >>> 8);
+                    outputStream.write(correlationId);
+                    outputStream.write(encodedResponse, RESPONSE_HEADER_SIZE, encodedResponse.length - RESPONSE_HEADER_SIZE);
+                }
+                if( flushPolicy.flushAfterWrite(encodedResponse.length) )
+                    outputStream.flush();
+                return;
+            }
+
+            int headerSize = getHeaderSize();
+            int responseLength = headerSize + RESPONSE_BODY_SIZE + additionalDataLength + trailingDataLength;
+            if( responseInBytes.length < responseLength )
+                responseInBytes = new byte[responseLength];
 
-            outputStream.flush();//wait for response to reach its destination
+            responseInBytes[0] = responseTypeByte;
+            if( correlationId != RequestPackage.NO_CORRELATION_ID ){
+                responseInBytes[1] = (byte)(correlationId >>> 8);
+                responseInBytes[2] = (byte)correlationId;
+            }
+            System.arraycopy(responseBody, 0, responseInBytes, headerSize, RESPONSE_BODY_SIZE);
+            if( additionalDataLength > 0 )//append additional data if it was previously set
+                System.arraycopy(additionalData, additionalDataOffset, responseInBytes, headerSize + RESPONSE_BODY_SIZE, additionalDataLength);
+            if( trailingDataLength > 0 )
+                System.arraycopy(trailingData, 0, responseInBytes, headerSize + RESPONSE_BODY_SIZE + additionalDataLength, trailingDataLength);
+
+            outputStream.write(responseInBytes, 0, responseLength);//write the whole response at once
+
+            if( flushPolicy.flushAfterWrite(responseLength) )
+                outputStream.flush();//wait for response to reach its destination
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     public void setAdditionalData(byte[] additionalData){
+        setAdditionalData(additionalData, 0, additionalData == null ? 0 : additionalData.length);
+    }
+
+    /**
+     * sets a slice of an array as additional data, array is not copied so caller must not change it until response is sent
+     * used by DataProviderThread in order to reuse the same package and frame array for every sample
+     * */
+    public void setAdditionalData(byte[] additionalData, int offset, int length){
         this.additionalData = additionalData;
+        this.additionalDataOffset = offset;
+        this.additionalDataLength = length;
     }
 
 
+    /**
+     * sets data written after additional data, kept for every following send until changed. Array is not copied
+     * used by DataProviderThread to append sample timestamps without copying the payload
+     * @param length 0 for none
+     * */
+    public void setTrailingData(byte[] trailingData, int length){
+        this.trailingData = trailingData;
+        this.trailingDataLength = length;
+    }
 
     public ResponsePackage(Response responseType, byte[] responseBody){
         this.responseBody = responseBody;
@@ -47,10 +112,43 @@ public class ResponsePackage {
         setAdditionalData(additionalData);
     }
 
+    /**
+     * response whose header, body and additional data are already encoded, e.g. cached CONNECT_Y. Array is written as it is and never changed
+     * */
+    public static ResponsePackage encoded(Response responseType, byte[] encodedResponse){
+        ResponsePackage responsePackage = new ResponsePackage(responseType);
+        System.arraycopy(encodedResponse, RESPONSE_HEADER_SIZE, responsePackage.responseBody, 0, RESPONSE_BODY_SIZE);
+        responsePackage.encodedResponse = encodedResponse;
+        return responsePackage;
+    }
+
+    /**
+     * @param correlationId correlation id of the request being answered, RequestPackage.NO_CORRELATION_ID if it had none
+     * @see driver_framework.request.Request#CONNECT_FLAG_PIPELINED_REQUESTS
+     * */
+    public void setCorrelationId(int correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    public int getCorrelationId() {
+        return correlationId;
+    }
+
+    private int getHeaderSize() {
+        return correlationId == RequestPackage.NO_CORRELATION_ID ? RESPONSE_HEADER_SIZE : RESPONSE_HEADER_SIZE + RequestPackage.CORRELATION_ID_SIZE;
+    }
+
     public void setResponseBody(byte[] responseBody) {
         this.responseBody = responseBody;
     }
 
+    /**
+     * writes an integer (big endian) into the existing response body in place
+     * */
+    public void setResponseBody(int responseBodyValue) {
+        FrameworkUtils.writeInt(responseBody, 0, responseBodyValue);
+    }
+
     private void setResponseTypeByte(byte responseTypeByte) {
         this.responseTypeByte = responseTypeByte;
     }
@@ -78,4 +176,12 @@ public class ResponsePackage {
     public byte[] getAdditionalData() {
         return additionalData;
     }
+
+    public int getAdditionalDataOffset() {
+        return additionalDataOffset;
+    }
+
+    public int getAdditionalDataLength() {
+        return additionalDataLength;
+    }
 }
@@ -0,0 +1,148 @@
+package driver_framework.response;
+
+import arduino_simulator.sensors.AggregationWindow;
+import arduino_simulator.sensors.SensorEntry;
+import driver_framework.FrameworkUtils;
+
+/**
+ * accumulates one sensor's samples over its AggregationWindow, keeps only running min, max, sum and last of each value so adding a sample doesn't allocate
+ * @see Response#READING_SENSOR_DATA_AGGREGATED
+ * */
+class SampleAggregator {
+
+    static final int AGGREGATE_HEADER_BYTE_LENGTH = 4 + 1;//count + n values
+    static final int AGGREGATE_VALUE_BYTE_LENGTH = 4 * 8;//min + max + mean + last
+    static final int MAX_VALUE_COUNT = 0xFF;//n values is a single byte
+
+    private final AggregationWindow aggregationWindow;
+    private double[] values = new double[0];//current sample's values
+    private double[] min = new double[0];
+    private double[] max = new double[0];
+    private double[] sum = new double[0];
+    private double[] last = new double[0];
+    private int n_values = 0;
+    private int count = 0;
+    private long windowStartNanos;
+    private long lastSampleNanos;
+    private int n_heldValues = -1;//sample with a different number of values closed the window, it opens the next one once the aggregate is written. -1 if none
+    private long heldSampleNanos;
+
+    SampleAggregator(AggregationWindow aggregationWindow) {
+        this.aggregationWindow = aggregationWindow;
+    }
+
+    AggregationWindow getAggregationWindow() {
+        return aggregationWindow;
+    }
+
+    /**
+     * @return false if sensor's samples have more values than an aggregate holds, window can't be configured for it then
+     * */
+    static boolean canAggregate(SensorEntry sensor){
+        return sensor.getSensorValueCount() <= MAX_VALUE_COUNT;
+    }
+
+    /**
+     * adds sample to the current window, opening one if there is none.
+     * Sample with a different number of values than the window's completes the window as it is and opens the next one, see write()
+     * Sample with more than MAX_VALUE_COUNT values is counted as a sample without numeric values
+     * @param timeNanos System.nanoTime() of the sample
+     * @return true if window is complete now, aggregate is to be written and sent
+     * */
+    boolean add(SensorEntry sensor, byte[] rawData, long timeNanos){
+        int n_sampleValues = sensor.readSensorValues(rawData, values);
+        if( n_sampleValues > MAX_VALUE_COUNT ) n_sampleValues = 0;
+        if( n_sampleValues > values.length ){
+            values = new double[n_sampleValues];
+            sensor.readSensorValues(rawData, values);
+        }
+
+        if( count > 0 && n_sampleValues != n_values ){//values of both can't be aggregated together
+            n_heldValues = n_sampleValues;
+            heldSampleNanos = timeNanos;
+            return true;
+        }
+        accumulate(n_sampleValues, timeNanos);
+        return isComplete();
+    }
+
+    /**
+     * @return true if window holds its size of samples, or its last sample was taken at least its size of milliseconds after the first one
+     * */
+    boolean isComplete(){
+        if( count == 0 ) return false;
+        if( aggregationWindow.getType() == AggregationWindow.Type.SAMPLES )
+            return count >= aggregationWindow.getSize();
+        return lastSampleNanos - windowStartNanos >= aggregationWindow.getSize() * 1_000_000L;
+    }
+
+    private void accumulate(int n_sampleValues, long timeNanos){
+        if( count == 0 ){//first sample opens the window
+            open(n_sampleValues, timeNanos);
+            System.arraycopy(values, 0, min, 0, n_values);
+            System.arraycopy(values, 0, max, 0, n_values);
+            System.arraycopy(values, 0, sum, 0, n_values);
+        }
+        else {
+            for( int i = 0; i<n_values; ++i ){
+                double value = values[i];
+                if( value < min[i] ) min[i] = value;
+                if( value > max[i] ) max[i] = value;
+                sum[i] += value;
+            }
+        }
+        System.arraycopy(values, 0, last, 0, n_values);
+        lastSampleNanos = timeNanos;
+        ++count;
+    }
+
+    /**
+     * drops the open window and the held sample, next sample opens a new window
+     * */
+    void reset(){
+        count = 0;
+        n_heldValues = -1;
+    }
+
+    private void open(int n_sampleValues, long timeNanos){
+        if( min.length < n_sampleValues ){
+            min = new double[n_sampleValues];
+            max = new double[n_sampleValues];
+            sum = new double[n_sampleValues];
+            last = new double[n_sampleValues];
+        }
+        n_values = n_sampleValues;
+        windowStartNanos = timeNanos;
+    }
+
+    /**
+     * @return number of bytes write() takes
+     * */
+    int getAggregateByteLength(){
+        return AGGREGATE_HEADER_BYTE_LENGTH + n_values * AGGREGATE_VALUE_BYTE_LENGTH;
+    }
+
+    /**
+     * writes aggregate of the complete window and starts a new one, with the sample held by add() if there is one
+     * | count (4 bytes) | n values (1 byte) | ( min | max | mean | last ) x n values, 8 byte doubles |
+     * */
+    int write(byte[] destination, int offset){
+        int position = offset;
+        FrameworkUtils.writeInt(destination, position, count);
+        destination[position + 4] = (byte) n_values;
+        position += AGGREGATE_HEADER_BYTE_LENGTH;
+        for( int i = 0; i<n_values; ++i ){
+            FrameworkUtils.writeLong(destination, position, Double.doubleToLongBits(min[i]));
+            FrameworkUtils.writeLong(destination, position + 8, Double.doubleToLongBits(max[i]));
+            FrameworkUtils.writeLong(destination, position + 16, Double.doubleToLongBits(sum[i] / count));
+            FrameworkUtils.writeLong(destination, position + 24, Double.doubleToLongBits(last[i]));
+            position += AGGREGATE_VALUE_BYTE_LENGTH;
+        }
+        count = 0;
+        if( n_heldValues != -1 ){
+            accumulate(n_heldValues, heldSampleNanos);
+            n_heldValues = -1;
+        }
+        return position - offset;
+    }
+}
@@ -0,0 +1,214 @@
+package driver_framework.response;
+
+import arduino_simulator.SensorType;
+import arduino_simulator.sensors.AggregationWindow;
+import arduino_simulator.sensors.FormattedSchema;
+import arduino_simulator.sensors.SensorEntry;
+import driver_framework.FrameworkUtils;
+import org.json.simple.JSONObject;
+
+import java.nio.ByteBuffer;
+
+/**
+ * tests of SampleAggregator's windows and of the aggregates it writes, exits with status 1 if any of them fails
+ * */
+public class SampleAggregatorTest {
+
+    private static final long MS = 1_000_000;
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testSamplesWindow();
+        testMillisWindow();
+        testValueCountChange();
+        testSingleSampleWindow();
+        testReset();
+        testValueCountLimit();
+
+        if( failures > 0 ){
+            System.out.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All sample aggregator tests passed");
+    }
+
+    private static void testSamplesWindow(){
+        SensorEntry sensor = new IntSensorEntry();
+        SampleAggregator aggregator = new SampleAggregator(new AggregationWindow(AggregationWindow.Type.SAMPLES, 3));
+        check("samples window open after 1 sample", !aggregator.add(sensor, sample(4, -1), 0));
+        check("samples window open after 2 samples", !aggregator.add(sensor, sample(1, 5), MS));
+        check("samples window closes with 3rd sample", aggregator.add(sensor, sample(7, 2), 2 * MS));
+        Aggregate aggregate = write(aggregator);
+        check("samples window counts 3", aggregate.count == 3);
+        check("samples window has 2 values", aggregate.n_values == 2);
+        checkValue("first value", aggregate, 0, 1, 7, 4, 7);
+        checkValue("second value", aggregate, 1, -1, 5, 2, 2);
+
+        check("next window starts empty", !aggregator.add(sensor, sample(10, 10), 3 * MS) && !aggregator.isComplete());
+        aggregator.add(sensor, sample(20, 10), 4 * MS);
+        check("next window closes with 3rd sample", aggregator.add(sensor, sample(30, 10), 5 * MS));
+        checkValue("next window's value", write(aggregator), 0, 10, 30, 20, 30);
+    }
+
+    private static void testMillisWindow(){
+        SensorEntry sensor = new IntSensorEntry();
+        SampleAggregator aggregator = new SampleAggregator(new AggregationWindow(AggregationWindow.Type.MILLIS, 10));
+        check("millis window open at its start", !aggregator.add(sensor, sample(1), 100 * MS));
+        check("millis window open within it", !aggregator.add(sensor, sample(2), 109 * MS));
+        check("millis window closes at its size", aggregator.add(sensor, sample(6), 110 * MS));
+        Aggregate aggregate = write(aggregator);
+        check("millis window counts 3", aggregate.count == 3);
+        checkValue("millis window's value", aggregate, 0, 1, 6, 3, 6);
+
+        check("next millis window starts with next sample", !aggregator.add(sensor, sample(0), 200 * MS));
+        check("next millis window closes its size after its first sample", aggregator.add(sensor, sample(0), 210 * MS));
+    }
+
+    /**
+     * sample with another number of values sends the pending aggregate and opens the next window
+     * */
+    private static void testValueCountChange(){
+        SensorEntry sensor = new IntSensorEntry();
+        SampleAggregator aggregator = new SampleAggregator(new AggregationWindow(AggregationWindow.Type.SAMPLES, 3));
+        aggregator.add(sensor, sample(1, 2), 0);
+        aggregator.add(sensor, sample(3, 4), MS);
+        check("sample with another number of values completes window", aggregator.add(sensor, sample(9), 2 * MS));
+        Aggregate pending = write(aggregator);
+        check("pending window counts its 2 samples", pending.count == 2);
+        check("pending window keeps its 2 values", pending.n_values == 2);
+        checkValue("pending window's first value", pending, 0, 1, 3, 2, 3);
+        checkValue("pending window's second value", pending, 1, 2, 4, 3, 4);
+
+        check("held sample's window isn't complete", !aggregator.isComplete());
+        aggregator.add(sensor, sample(5), 3 * MS);
+        check("held sample counts towards next window", aggregator.add(sensor, sample(7), 4 * MS));
+        Aggregate next = write(aggregator);
+        check("next window has 1 value", next.n_values == 1 && next.count == 3);
+        checkValue("next window's value", next, 0, 5, 9, 7, 7);
+    }
+
+    private static void testSingleSampleWindow(){
+        SensorEntry sensor = new IntSensorEntry();
+        SampleAggregator aggregator = new SampleAggregator(new AggregationWindow(AggregationWindow.Type.SAMPLES, 1));
+        check("single sample window closes with it", aggregator.add(sensor, sample(1), 0));
+        check("single sample aggregate has 1 value", write(aggregator).n_values == 1);
+        check("sample with another number of values closes its own single sample window", aggregator.add(sensor, sample(2, 3), MS));
+        Aggregate aggregate = write(aggregator);
+        check("single sample aggregate has 2 values", aggregate.count == 1 && aggregate.n_values == 2);
+        checkValue("single sample's value", aggregate, 1, 3, 3, 3, 3);
+        check("nothing left after single sample window", !aggregator.isComplete());
+    }
+
+    /**
+     * reading resumed after a pause starts with empty windows
+     * */
+    private static void testReset(){
+        SensorEntry sensor = new IntSensorEntry();
+        SampleAggregator aggregator = new SampleAggregator(new AggregationWindow(AggregationWindow.Type.SAMPLES, 2));
+        aggregator.add(sensor, sample(100), 0);
+        aggregator.reset();
+        check("window after reset is empty", !aggregator.isComplete() && !aggregator.add(sensor, sample(1), MS));
+        check("window after reset closes with its size", aggregator.add(sensor, sample(3), 2 * MS));
+        Aggregate aggregate = write(aggregator);
+        check("window after reset counts samples since", aggregate.count == 2);
+        checkValue("window after reset drops samples before", aggregate, 0, 1, 3, 2, 3);
+
+        SampleAggregator millis = new SampleAggregator(new AggregationWindow(AggregationWindow.Type.MILLIS, 10));
+        millis.add(sensor, sample(1), 0);
+        millis.reset();
+        check("millis window after reset starts with next sample", !millis.add(sensor, sample(1), 10 * MS));
+
+        aggregator.add(sensor, sample(1), 0);
+        aggregator.add(sensor, sample(1, 2), MS);
+        aggregator.reset();
+        check("reset drops held sample", !aggregator.isComplete() && !aggregator.add(sensor, sample(5), 2 * MS));
+    }
+
+    private static void testValueCountLimit(){
+        check("sensor with " + SampleAggregator.MAX_VALUE_COUNT + " values can be aggregated", SampleAggregator.canAggregate(new IntSensorEntry(SampleAggregator.MAX_VALUE_COUNT)));
+        check("sensor with more values than an aggregate holds can't be aggregated", !SampleAggregator.canAggregate(new IntSensorEntry(SampleAggregator.MAX_VALUE_COUNT + 1)));
+
+        SensorEntry sensor = new IntSensorEntry();
+        SampleAggregator aggregator = new SampleAggregator(new AggregationWindow(AggregationWindow.Type.SAMPLES, 1));
+        aggregator.add(sensor, sample(new int[SampleAggregator.MAX_VALUE_COUNT + 1]), 0);
+        Aggregate aggregate = write(aggregator);
+        check("sample with too many values is counted without values", aggregate.count == 1 && aggregate.n_values == 0);
+    }
+
+    private static byte[] sample(int... values){
+        ByteBuffer sample = ByteBuffer.allocate(values.length * 4);
+        for( int value : values )
+            sample.putInt(value);
+        return sample.array();
+    }
+
+    private static Aggregate write(SampleAggregator aggregator){
+        byte[] destination = new byte[aggregator.getAggregateByteLength()];
+        int length = aggregator.write(destination, 0);
+        check("aggregate takes getAggregateByteLength() bytes", length == destination.length);
+        return new Aggregate(destination);
+    }
+
+    private static void checkValue(String name, Aggregate aggregate, int valueIndex, double min, double max, double mean, double last){
+        if( valueIndex >= aggregate.n_values ){
+            check(name + " is missing", false);
+            return;
+        }
+        double[] value = aggregate.values[valueIndex];
+        check(name + " min " + value[0] + ", expected " + min, value[0] == min);
+        check(name + " max " + value[1] + ", expected " + max, value[1] == max);
+        check(name + " mean " + value[2] + ", expected " + mean, value[2] == mean);
+        check(name + " last " + value[3] + ", expected " + last, value[3] == last);
+    }
+
+    private static void check(String name, boolean passed){
+        if( passed ) return;
+        ++failures;
+        System.out.println("FAILED: " + name);
+    }
+
+    /**
+     * aggregate read back from the bytes written by SampleAggregator.write()
+     * */
+    private static class Aggregate {
+        final int count;
+        final int n_values;
+        final double[][] values;//min, max, mean, last of each value
+
+        Aggregate(byte[] bytes) {
+            count = FrameworkUtils.readInt(bytes, 0);
+            n_values = bytes[4] & 0xFF;
+            values = new double[n_values][4];
+            for( int i = 0; i<n_values; ++i )
+                for( int j = 0; j<4; ++j )
+                    values[i][j] = Double.longBitsToDouble(FrameworkUtils.readLong(bytes, SampleAggregator.AGGREGATE_HEADER_BYTE_LENGTH + i * SampleAggregator.AGGREGATE_VALUE_BYTE_LENGTH + j * 8));
+        }
+    }
+
+    /**
+     * sample is a number of 4 byte integers, either fixed ( through the value encoding ) or given by the sample's length
+     * */
+    private static class IntSensorEntry extends SensorEntry {
+        IntSensorEntry() {
+            super(SensorType.LIGHT_SENSOR, 1, 4, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+
+        IntSensorEntry(int n_values) {
+            super(SensorType.LIGHT_SENSOR, 1, n_values * 4, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            setSensorValueEncoding(FormattedSchema.FieldType.INT32);
+        }
+
+        @Override
+        public JSONObject formatRawData(byte[] rawData) {
+            return new JSONObject();
+        }
+
+        @Override
+        public Object[] getSensorValue(byte[] rawData) {
+            Object[] values = new Object[rawData.length / 4];
+            for( int i = 0; i<values.length; ++i )
+                values[i] = FrameworkUtils.readInt(rawData, i * 4);
+            return values;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package driver_framework.response;
+
+import java.util.BitSet;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps absolute System.nanoTime() deadlines of each sensor's next sample in a min-heap, so time spent reading and writing doesn't make rates drift.
+ * Sensors are referenced by their index in the list of available sensors.
+ * Sensors with sample rate 0 are due on every frame, they have no deadline and are kept out of the heap, so they never cause a timed wakeup.
+ *
+ * Usage per tick:
+ *      1. pollDue(now, connected) - marks sensors whose deadline passed as due and schedules their next deadline
+ *      2. isDue(i) - checks if sensor is to be sampled in this tick
+ *      3. parkUntilNextDeadline() - parks until earliest deadline, unless isDueEveryFrame(connected) says the next frame is to be taken right away
+ *
+ * Statistics are kept per connected sensor in order to verify delivered rates, deadlines passing while sensor is disconnected are not counted:
+ *      lateness - how long after its deadline sensor was sampled
+ *      jitter - mean absolute difference between actual interval of two samples and the configured sample rate
+ *      missed - deadlines skipped because provider fell behind by more than a whole period
+ * */
+public class SampleScheduler {
+
+    private final long[] periods;//sample rate of each sensor in nanoseconds
+    private final long[] nextDue;
+    private final boolean[] due;
+    private final BitSet everyFrame;//sensors with period 0, not in the heap
+    private final int[] heap;//indices of sensors with a period, ordered by nextDue, heap[0] is the earliest
+    private final int size;
+    private int heapSize = 0;
+
+    //statistics
+    private final long[] samples;
+    private final long[] samplesSinceReset;
+    private final long[] firstSampleTime;
+    private final long[] lastSampleTime;
+    private final long[] totalLateness;
+    private final long[] maxLateness;
+    private final long[] totalJitter;
+    private final long[] intervals;//number of intervals jitter was measured on
+    private final long[] missed;
+
+    /**
+     * @param sampleRates sample rate of each sensor in milliseconds, 0 or less samples sensor on every frame
+     * */
+    public SampleScheduler(int[] sampleRates){
+        size = sampleRates.length;
+        periods = new long[size];
+        nextDue = new long[size];
+        due = new boolean[size];
+        everyFrame = new BitSet(size);
+        heap = new int[size];
+
+        samples = new long[size];
+        samplesSinceReset = new long[size];
+        firstSampleTime = new long[size];
+        lastSampleTime = new long[size];
+        totalLateness = new long[size];
+        maxLateness = new long[size];
+        totalJitter = new long[size];
+        intervals = new long[size];
+        missed = new long[size];
+
+        for( int i = 0; i<size; ++i )
+            periods[i] = Math.max(sampleRates[i], 0) * 1_000_000L;
+
+        reset(System.nanoTime());
+    }
+
+    /**
+     * changes sensor's sample rate, takes effect with its next deadline. Not to be called while provider is polling
+     * @param sampleRate in milliseconds, 0 or less samples sensor on every frame
+     * */
+    public void setSampleRate(int i, int sampleRate){
+        long period = Math.max(sampleRate, 0) * 1_000_000L;
+        if( period != 0 && periods[i] == 0 )
+            nextDue[i] = System.nanoTime();//was due on every frame, had no deadline so far
+        periods[i] = period;
+        buildHeap();
+    }
+
+    /**
+     * makes every sensor due at the given time, used when (re)starting to read
+     * */
+    public void reset(long now){
+        for( int i = 0; i<size; ++i ) {
+            nextDue[i] = now;
+            samplesSinceReset[i] = 0;
+        }
+        buildHeap();
+    }
+
+    /**
+     * marks sensors due on every frame and all sensors whose deadline is at or before now as due, schedules their next deadline.
+     * Deadlines of disconnected sensors move on as well, so they are on schedule once connected, but they don't count towards statistics
+     * @param connected indexes of connected sensors
+     * @return number of due sensors
+     * */
+    public int pollDue(long now, BitSet connected){
+        for( int i = 0; i<size; ++i )
+            due[i] = false;
+
+        int n_due = 0;
+        for( int i = everyFrame.nextSetBit(0); i >= 0; i = everyFrame.nextSetBit(i + 1) ){
+            due[i] = true;
+            ++n_due;
+            recordSample(i, now, now, connected.get(i));
+        }
+
+        while( heapSize > 0 && nextDue[heap[0]] <= now ){
+            int i = heap[0];
+            long deadline = nextDue[i];
+            boolean isConnected = connected.get(i);
+            due[i] = true;
+            ++n_due;
+            recordSample(i, deadline, now, isConnected);
+
+            long period = periods[i];
+            long next = deadline + period;
+            if( next <= now ){//fell behind by more than a period, skip missed samples instead of sending them in a burst
+                long behind = (now - deadline) / period;
+                if( isConnected )
+                    missed[i] += behind;
+                next = deadline + (behind + 1) * period;
+            }
+            nextDue[i] = next;
+            siftDown(0);
+        }
+        return n_due;
+    }
+
+    /**
+     * @return true if any of the connected sensors is due on every frame, there is no waiting for deadlines then
+     * */
+    public boolean isDueEveryFrame(BitSet connected){
+        return everyFrame.intersects(connected);
+    }
+
+    public boolean isDue(int i){
+        return due[i];
+    }
+
+    /**
+     * @return earliest deadline of sensors with a sample rate, Long.MAX_VALUE if all of them are due on every frame
+     * */
+    public long nextDeadline(){
+        return heapSize == 0 ? Long.MAX_VALUE : nextDue[heap[0]];
+    }
+
+    /**
+     * parks current thread until earliest deadline, returns earlier if thread is interrupted. Returns right away if there is no deadline
+     * */
+    public void parkUntilNextDeadline(){
+        if( heapSize == 0 ) return;
+        long deadline = nextDeadline();
+        long remaining;
+        while( (remaining = deadline - System.nanoTime()) > 0 ){
+            LockSupport.parkNanos(this, remaining);
+            if( Thread.interrupted() ) return;
+        }
+    }
+
+    private void recordSample(int i, long deadline, long now, boolean connected){
+        if( !connected ){//intervals restart once sensor is connected again
+            samplesSinceReset[i] = 0;
+            return;
+        }
+
+        long lateness = now - deadline;
+        totalLateness[i] += lateness;
+        if( lateness > maxLateness[i] )
+            maxLateness[i] = lateness;
+
+        if( samplesSinceReset[i] == 0 )
+            firstSampleTime[i] = now;
+        else {
+            totalJitter[i] += Math.abs((now - lastSampleTime[i]) - periods[i]);
+            ++intervals[i];
+        }
+
+        lastSampleTime[i] = now;
+        ++samplesSinceReset[i];
+        ++samples[i];
+    }
+
+    /**
+     * puts sensors with a period into the heap, the others into everyFrame
+     * */
+    private void buildHeap(){
+        everyFrame.clear();
+        heapSize = 0;
+        for( int i = 0; i<size; ++i ){
+            if( periods[i] == 0 ) everyFrame.set(i);
+            else heap[heapSize++] = i;
+        }
+        for( int k = (heapSize >>> 1) - 1; k >= 0; --k )
+            siftDown(k);
+    }
+
+    private void siftDown(int k){
+        int sensor = heap[k];
+        int half = heapSize >>> 1;
+        while( k < half ){
+            int child = 2*k + 1;
+            int right = child + 1;
+            if( right < heapSize && nextDue[heap[right]] < nextDue[heap[child]] )
+                child = right;
+            if( nextDue[sensor] <= nextDue[heap[child]] )
+                break;
+            heap[k] = heap[child];
+            k = child;
+        }
+        heap[k] = sensor;
+    }
+
+    //statistics getters
+    public long getSampleCount(int i) {
+        return samples[i];
+    }
+    public long getMissedCount(int i) {
+        return missed[i];
+    }
+    public long getMeanLatenessNanos(int i) {
+        return samples[i] == 0 ? 0 : totalLateness[i] / samples[i];
+    }
+    public long getMaxLatenessNanos(int i) {
+        return maxLateness[i];
+    }
+    public long getMeanJitterNanos(int i) {
+        return intervals[i] == 0 ? 0 : totalJitter[i] / intervals[i];
+    }
+
+    /**
+     * @return delivered samples per second since sensor's first sample after last reset
+     * */
+    public double getEffectiveRateHz(int i) {
+        if( samplesSinceReset[i] < 2 ) return 0;
+        return (samplesSinceReset[i] - 1) * 1e9 / (lastSampleTime[i] - firstSampleTime[i]);
+    }
+}
@@ -0,0 +1,128 @@
+package driver_framework.response;
+
+import java.util.BitSet;
+
+/**
+ * tests of SampleScheduler's deadlines and statistics, driven by a made up clock. Exits with status 1 if any of them fails
+ * */
+public class SampleSchedulerTest {
+
+    private static final long MS = 1_000_000;
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        testOrdering();
+        testMissedDeadlines();
+        testStatistics();
+        testDisconnectedSensors();
+        testEveryFrame();
+
+        if( failures > 0 ){
+            System.out.println(failures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All sample scheduler tests passed");
+    }
+
+    private static void testOrdering(){
+        SampleScheduler scheduler = new SampleScheduler(new int[]{30, 10, 20});
+        BitSet connected = connected(3);
+        scheduler.reset(0);
+
+        check("every sensor due at reset", scheduler.pollDue(0, connected) == 3);
+        check("earliest deadline is the shortest period", scheduler.nextDeadline() == 10 * MS);
+        check("nothing due before earliest deadline", scheduler.pollDue(10 * MS - 1, connected) == 0);
+
+        int[][] dueAt = {{10, 1}, {20, 1, 2}, {30, 1, 0}, {40, 1, 2}, {60, 1, 2, 0}};
+        for( int[] expected : dueAt ){
+            long now = expected[0] * MS;
+            int n_due = scheduler.pollDue(now, connected);
+            check("number of sensors due at " + expected[0] + "ms", n_due == expected.length - 1);
+            for( int k = 1; k<expected.length; ++k )
+                check("sensor " + expected[k] + " due at " + expected[0] + "ms", scheduler.isDue(expected[k]));
+        }
+        check("next deadline after 60ms", scheduler.nextDeadline() == 70 * MS);
+    }
+
+    private static void testMissedDeadlines(){
+        SampleScheduler scheduler = new SampleScheduler(new int[]{10});
+        BitSet connected = connected(1);
+        scheduler.reset(0);
+        scheduler.pollDue(0, connected);
+
+        check("late sensor sampled once", scheduler.pollDue(35 * MS, connected) == 1);
+        check("deadlines at 10ms, 20ms and 30ms, only one sample, two missed", scheduler.getMissedCount(0) == 2);
+        check("next deadline stays on the original grid", scheduler.nextDeadline() == 40 * MS);
+        check("lateness of the sample", scheduler.getMaxLatenessNanos(0) == 25 * MS);
+        check("no burst of missed samples", scheduler.pollDue(39 * MS, connected) == 0);
+    }
+
+    private static void testStatistics(){
+        SampleScheduler scheduler = new SampleScheduler(new int[]{10});
+        BitSet connected = connected(1);
+        scheduler.reset(0);
+        long[] sampledAt = {0, 11, 21, 30, 42};//lateness 0, 1, 1, 0, 2 ms
+        for( long at : sampledAt )
+            scheduler.pollDue(at * MS, connected);
+
+        check("sample count", scheduler.getSampleCount(0) == sampledAt.length);
+        check("missed none", scheduler.getMissedCount(0) == 0);
+        check("mean lateness", scheduler.getMeanLatenessNanos(0) == 4 * MS / 5);
+        check("max lateness", scheduler.getMaxLatenessNanos(0) == 2 * MS);
+        check("mean jitter", scheduler.getMeanJitterNanos(0) == (1 + 0 + 1 + 2) * MS / 4);//intervals 11, 10, 9, 12
+        check("effective rate", Math.abs(scheduler.getEffectiveRateHz(0) - 4 / 0.042) < 1e-6);
+    }
+
+    private static void testDisconnectedSensors(){
+        SampleScheduler scheduler = new SampleScheduler(new int[]{10, 10});
+        BitSet connected = new BitSet();
+        connected.set(0);
+        scheduler.reset(0);
+        scheduler.pollDue(0, connected);
+        scheduler.pollDue(55 * MS, connected);
+
+        check("disconnected sensor has no samples", scheduler.getSampleCount(1) == 0);
+        check("disconnected sensor misses nothing", scheduler.getMissedCount(1) == 0 && scheduler.getMaxLatenessNanos(1) == 0);
+        check("connected sensor counted", scheduler.getSampleCount(0) == 2 && scheduler.getMissedCount(0) == 4);
+
+        connected.set(1);
+        scheduler.pollDue(60 * MS, connected);
+        scheduler.pollDue(70 * MS, connected);
+        check("connected sensor on schedule", scheduler.getSampleCount(1) == 2 && scheduler.getMaxLatenessNanos(1) == 0);
+        check("jitter starts with connecting", scheduler.getMeanJitterNanos(1) == 0);
+    }
+
+    private static void testEveryFrame(){
+        SampleScheduler scheduler = new SampleScheduler(new int[]{0, 10});
+        BitSet connected = connected(2);
+        scheduler.reset(0);
+
+        check("sensor with period 0 due on every frame", scheduler.isDueEveryFrame(connected));
+        check("next deadline is the timed sensor's", scheduler.pollDue(0, connected) == 2 && scheduler.nextDeadline() == 10 * MS);
+        for( long at = 1; at<10; ++at ){
+            check("every frame sensor due at " + at + "ms", scheduler.pollDue(at * MS, connected) == 1 && scheduler.isDue(0) && !scheduler.isDue(1));
+        }
+        check("every frame sensor never misses", scheduler.getMissedCount(0) == 0 && scheduler.getSampleCount(0) == 10);
+
+        BitSet timedOnly = new BitSet();
+        timedOnly.set(1);
+        check("disconnected every frame sensor doesn't count", !scheduler.isDueEveryFrame(timedOnly));
+
+        SampleScheduler untimed = new SampleScheduler(new int[]{0});
+        check("no timed wakeup without deadlines", untimed.nextDeadline() == Long.MAX_VALUE);
+        untimed.setSampleRate(0, 5);
+        check("sensor given a period gets a deadline", untimed.nextDeadline() != Long.MAX_VALUE && !untimed.isDueEveryFrame(connected(1)));
+    }
+
+    private static BitSet connected(int n_sensors){
+        BitSet connected = new BitSet(n_sensors);
+        connected.set(0, n_sensors);
+        return connected;
+    }
+
+    private static void check(String name, boolean passed){
+        if( passed ) return;
+        ++failures;
+        System.out.println("FAILED: " + name);
+    }
+}
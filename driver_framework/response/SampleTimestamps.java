@@ -0,0 +1,127 @@
+package driver_framework.response;
+
+import driver_framework.FrameworkUtils;
+
+/**
+ * Timestamps following each sensor data response of clients which set Request.CONNECT_FLAG_SAMPLE_TIMESTAMPS on CONNECT.
+ *
+ * START_READ_Y establishes the session epoch, each START_READ_Y a new one:
+ *      | START_READ_Y | timestamp flags | epoch ( wall clock, microseconds since 1970, 8 bytes ) |
+ * Every READING_SENSOR_DATA* response is then followed by ( READING_SENSOR_DATA_BATCH once for the whole batch ):
+ *      | read time | board tick ( only if TIMESTAMP_FLAG_BOARD_TICK is set ) |
+ * read time - microseconds from epoch until server read the frame from sensor's input stream, zig-zag varint.
+ *             Negative if frame was read before epoch and waited for the client meanwhile
+ * board tick - microseconds from board's tick of the first frame written after epoch until board's tick of this frame, varint.
+ *              Board ticks are 32 bits and wrap around, so are these differences. Sent if board frames its data with ticks,
+ *              see SensorFrameReader, growing difference between read time and board tick means frames queue up before reaching the server
+ *
+ * Both are monotonic, sample's age on the client is its receive time minus ( epoch + read time ), given clocks of both sides are in sync.
+ * Varints are written 7 bits per byte, high bit set on all but the last byte, same as DeltaEncoding's
+ *
+ * Client's side:
+ *      SampleTimestamps.Decoder decoder = new SampleTimestamps.Decoder(startReadBody, epochMicros);//on each START_READ_Y
+ *      after each sensor data response -> decoder.decode(data, offset) returns bytes consumed, then getReadTimeMicros() / getBoardTickMicros()
+ *
+ * @see driver_framework.request.Request#CONNECT_FLAG_SAMPLE_TIMESTAMPS
+ * */
+public class SampleTimestamps {
+
+    public static final int TIMESTAMP_FLAG_READ_TIME = 0x01;//always set if timestamps are sent
+    public static final int TIMESTAMP_FLAG_BOARD_TICK = 0x02;
+
+    public static final int EPOCH_BYTE_LENGTH = 8;
+    public static final int MAX_ENCODED_LENGTH = 10 + 5;//64 bit read time + 32 bit board tick
+
+    private SampleTimestamps(){}
+
+    /**
+     * writes timestamps of a frame
+     * @param readTimeMicros microseconds from epoch until frame was read
+     * @param boardTickMicros board tick's difference to board tick of the epoch, ignored unless boardTick is set
+     * @return number of bytes written, at most MAX_ENCODED_LENGTH
+     * */
+    public static int encode(long readTimeMicros, boolean boardTick, int boardTickMicros, byte[] destination, int offset){
+        int position = writeVarint((readTimeMicros << 1) ^ (readTimeMicros >> 63), destination, offset);
+        if( boardTick )
+            position = writeVarint(boardTickMicros & 0xFFFF_FFFFL, destination, position);
+        return position - offset;
+    }
+
+    /**
+     * @return epoch as sent after START_READ_Y
+     * */
+    public static byte[] encodeEpoch(long epochMicros){
+        byte[] epoch = new byte[EPOCH_BYTE_LENGTH];
+        FrameworkUtils.writeLong(epoch, 0, epochMicros);
+        return epoch;
+    }
+
+    private static int writeVarint(long value, byte[] destination, int position){
+        while( (value & ~0x7FL) != 0 ){
+            destination[position++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        destination[position++] = (byte)value;
+        return position;
+    }
+
+    public static class Decoder{
+        private final boolean boardTick;
+        private final long epochMicros;
+        private long readTimeMicros = 0;
+        private long boardTickMicros = 0;
+        private int position;
+
+        /**
+         * @param timestampFlags body of START_READ_Y
+         * @param epochMicros epoch following START_READ_Y
+         * */
+        public Decoder(int timestampFlags, long epochMicros){
+            this.boardTick = (timestampFlags & TIMESTAMP_FLAG_BOARD_TICK) != 0;
+            this.epochMicros = epochMicros;
+        }
+
+        /**
+         * @return number of bytes consumed
+         * */
+        public int decode(byte[] source, int offset){
+            position = offset;
+            long zigZag = readVarint(source);
+            readTimeMicros = (zigZag >>> 1) ^ -(zigZag & 1);
+            if( boardTick )
+                boardTickMicros = readVarint(source);
+            return position - offset;
+        }
+
+        private long readVarint(byte[] source){
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do{
+                b = source[position++];
+                value |= (long)(b & 0x7F) << shift;
+                shift += 7;
+            }while( (b & 0x80) != 0 );
+            return value;
+        }
+
+        public long getReadTimeMicros() {
+            return readTimeMicros;
+        }
+
+        /**
+         * @return wall clock time frame was read at, microseconds since 1970
+         * */
+        public long getReadEpochMicros() {
+            return epochMicros + readTimeMicros;
+        }
+
+        public long getBoardTickMicros() {
+            return boardTickMicros;
+        }
+
+        public boolean hasBoardTick() {
+            return boardTick;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package driver_framework.response;
+
+import driver_framework.FrameworkUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reassembles exact length frames from sensor's input stream. Serial and bluetooth streams often return less than requested, so a single read() is not enough.
+ *
+ * Without a sync marker frame is just the data of all sensors, it is read straight into the destination until complete.
+ * With a sync marker board is expected to send:
+ *      | sync marker | board tick (4 bytes, optional) | data of all sensors | checksum (1 byte, optional) |
+ * board tick is board's own clock in microseconds ( e.g. Arduino's micros() ), big endian, checksum is XOR of board tick's and all data bytes. If marker or checksum don't match, reader drops bytes one at a time until it finds a valid frame again.
+ * Each time that happens is counted as a resync.
+ *
+ * @see arduino_simulator.ArduinoSimulator#setFraming(byte[], boolean)
+ * */
+public class SensorFrameReader {
+
+    private final InputStream inputStream;
+    private final int frameLength;//data of all sensors
+    private final byte[] syncMarker;
+    private final boolean checksum;
+    private final int boardTickLength;//4 if board sends its tick, else 0
+    private final int framedLength;//marker + board tick + data + checksum
+
+    private final byte[] buffer;//bytes read ahead while looking for frame boundaries, only used with a sync marker
+    private int start = 0;
+    private int end = 0;
+
+    private boolean resyncing = false;
+    private volatile long resyncCount = 0;//only reading thread moves it, metrics read it from others
+    private int boardTick = 0;//tick of the last frame read
+
+    public SensorFrameReader(InputStream inputStream, int frameLength){
+        this(inputStream, frameLength, null, false);
+    }
+
+    public SensorFrameReader(InputStream inputStream, int frameLength, byte[] syncMarker, boolean checksum){
+        this(inputStream, frameLength, syncMarker, checksum, false);
+    }
+
+    /**
+     * @param syncMarker bytes board sends before each frame, null or empty if board doesn't send it
+     * @param checksum true if board sends a checksum byte after each frame, only used with a sync marker
+     * @param boardTick true if board sends its tick after the sync marker, only used with a sync marker
+     * */
+    public SensorFrameReader(InputStream inputStream, int frameLength, byte[] syncMarker, boolean checksum, boolean boardTick){
+        this.inputStream = inputStream;
+        this.frameLength = frameLength;
+        this.syncMarker = syncMarker == null ? new byte[0] : syncMarker.clone();
+        this.checksum = checksum && this.syncMarker.length > 0;
+        this.boardTickLength = boardTick && this.syncMarker.length > 0 ? 4 : 0;
+        this.framedLength = this.syncMarker.length + boardTickLength + frameLength + (this.checksum ? 1 : 0);
+        this.buffer = this.syncMarker.length > 0 ? new byte[2 * framedLength] : null;
+    }
+
+    /**
+     * blocks until a whole frame is read into destination
+     * @return false if end of stream was reached before a whole frame arrived
+     * */
+    public boolean readFrame(byte[] destination, int offset) throws IOException {
+        if( buffer == null )
+            return FrameworkUtils.readFully(inputStream, destination, offset, frameLength) == frameLength;
+
+        while( true ){
+            if( !fill(framedLength) ) return false;
+
+            if( isFrameAt(start) ){
+                int payloadStart = start + syncMarker.length;
+                if( boardTickLength > 0 )
+                    boardTick = FrameworkUtils.readInt(buffer, payloadStart);
+                System.arraycopy(buffer, payloadStart + boardTickLength, destination, offset, frameLength);
+                start += framedLength;
+                resyncing = false;
+                return true;
+            }
+
+            if( !resyncing ){//count each loss of alignment once, not every byte dropped
+                resyncing = true;
+                ++resyncCount;
+            }
+            ++start;
+        }
+    }
+
+    private boolean isFrameAt(int position){
+        for( int i = 0; i<syncMarker.length; ++i )
+            if( buffer[position + i] != syncMarker[i] ) return false;
+
+        if( !checksum ) return true;
+
+        int payloadStart = position + syncMarker.length;
+        return checksum(buffer, payloadStart, boardTickLength + frameLength) == buffer[payloadStart + boardTickLength + frameLength];
+    }
+
+    /**
+     * makes sure at least n bytes are buffered starting from start, moving unread bytes to the beginning of the buffer if there is no room
+     * */
+    private boolean fill(int n) throws IOException {
+        if( start + n > buffer.length ){
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        while( end - start < n ){
+            int n_read = inputStream.read(buffer, end, buffer.length - end);
+            if( n_read == -1 ) return false;
+            end += n_read;
+        }
+        return true;
+    }
+
+    /**
+     * @return checksum of given data as board has to compute it
+     * */
+    public static byte checksum(byte[] data, int offset, int length){
+        byte xor = 0;
+        for( int i = 0; i<length; ++i )
+            xor ^= data[offset + i];
+        return xor;
+    }
+
+    public long getResyncCount() {
+        return resyncCount;
+    }
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /**
+     * @return board's tick sent with the last frame read, 0 if board doesn't send it
+     * */
+    public int getBoardTick() {
+        return boardTick;
+    }
+
+    public boolean hasBoardTick() {
+        return boardTickLength > 0;
+    }
+}
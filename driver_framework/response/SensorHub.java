@@ -0,0 +1,154 @@
+package driver_framework.response;
+
+import arduino_simulator.sensors.SensorEntry;
+import driver_framework.ExecutionMode;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Reads each frame from the board once and fans it out to every client reading sensor data.
+ * Several SensorServerManager / ChannelSensorServer sessions can share one hub, each with its own connected sensors, sample rates, precision and formatting.
+ *
+ * Each client gets its own FrameRingBuffer, so a slow client only loses its own frames. For the same reason a shared hub doesn't accept OverflowPolicy.BLOCK,
+ * a blocked client would stop frames for everyone.
+ *
+ * Usage:
+ *      1. instantiate with sensor's input stream and available sensors, optionally setSensorFraming(...)
+ *      2. pass it to each client's SensorServerManager ( or ChannelSensorServer.register ) instead of sensor's input stream
+ *      3. hub starts reading on first client's START_READ, shutdown() stops it
+ *
+ * @see SensorIngestThread
+ * @see FrameRingBuffer
+ * */
+public class SensorHub {
+
+    private final InputStream sensorInputStream;
+    private final List<SensorEntry> availableSensors;
+    private final SensorRegistry sensorRegistry;//index of available sensors' ids, shared by all clients
+    private final int frameLength;
+    private final boolean shared;//a hub owned by a single ResponseManager may block on its only client
+
+    private byte[] syncMarker = null;
+    private boolean checksum = false;
+    private boolean boardTick = false;
+    private SensorIngestThread sensorIngestThread = null;
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+
+    public SensorHub(InputStream sensorInputStream, List<SensorEntry> availableSensors){
+        this(sensorInputStream, availableSensors, true);
+    }
+
+    SensorHub(InputStream sensorInputStream, List<SensorEntry> availableSensors, boolean shared){
+        this.sensorInputStream = sensorInputStream;
+        this.availableSensors = availableSensors;
+        this.sensorRegistry = new SensorRegistry(availableSensors);
+        this.shared = shared;
+
+        int frameLength = 0;
+        for( SensorEntry sensor : availableSensors )
+            frameLength += sensor.getDataSampleByteLength();
+        this.frameLength = frameLength;
+    }
+
+    /**
+     * informs that board frames its data with a sync marker and optionally a checksum, has to be called before the hub starts reading
+     * @see SensorFrameReader
+     * */
+    public synchronized void setSensorFraming(byte[] syncMarker, boolean checksum){
+        setSensorFraming(syncMarker, checksum, false);
+    }
+
+    /**
+     * @param boardTick board sends its own tick after the sync marker, passed on to clients asking for sample timestamps
+     * @see SampleTimestamps
+     * */
+    public synchronized void setSensorFraming(byte[] syncMarker, boolean checksum, boolean boardTick){
+        if( sensorIngestThread != null ) throw new IllegalStateException("Sensor hub already started reading");
+
+        this.syncMarker = syncMarker;
+        this.checksum = checksum;
+        this.boardTick = boardTick && syncMarker != null && syncMarker.length > 0;
+    }
+
+    /**
+     * sets kind of thread sensor's input stream is read on, has to be called before the hub starts reading
+     * @see ExecutionMode
+     * */
+    public synchronized void setExecutionMode(ExecutionMode executionMode){
+        if( sensorIngestThread != null ) throw new IllegalStateException("Sensor hub already started reading");
+
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * starts reading sensor's input stream if it isn't read already
+     * */
+    public synchronized void start(){
+        if( sensorIngestThread != null ) return;
+
+        sensorIngestThread = new SensorIngestThread(new SensorFrameReader(sensorInputStream, frameLength, syncMarker, checksum, boardTick));
+        sensorIngestThread.setExecutionMode(executionMode);
+        sensorIngestThread.start();
+    }
+
+    /**
+     * @return buffer receiving every frame read from now on, until unsubscribed
+     * */
+    public synchronized FrameRingBuffer subscribe(int capacity, FrameRingBuffer.OverflowPolicy overflowPolicy){
+        checkOverflowPolicy(overflowPolicy);
+
+        start();
+        FrameRingBuffer frameRingBuffer = new FrameRingBuffer(frameLength, capacity, overflowPolicy);
+        sensorIngestThread.addFrameRingBuffer(frameRingBuffer);
+        return frameRingBuffer;
+    }
+
+    public synchronized void unsubscribe(FrameRingBuffer frameRingBuffer){
+        if( sensorIngestThread != null )
+            sensorIngestThread.removeFrameRingBuffer(frameRingBuffer);
+    }
+
+    /**
+     * @throws IllegalArgumentException if policy would let one client stop frames of others
+     * */
+    public void checkOverflowPolicy(FrameRingBuffer.OverflowPolicy overflowPolicy){
+        if( shared && overflowPolicy == FrameRingBuffer.OverflowPolicy.BLOCK )
+            throw new IllegalArgumentException("OverflowPolicy.BLOCK is not allowed on a shared sensor hub");
+    }
+
+    /**
+     * stops reading sensor's input stream, subscribed clients get no more frames
+     * */
+    public synchronized void shutdown(){
+        if( sensorIngestThread != null )
+            sensorIngestThread.stopIngesting();
+    }
+
+    /**
+     * @return how many times frame alignment of sensor's input stream was lost and found again
+     * */
+    public long getResyncCount(){
+        SensorIngestThread thread = sensorIngestThread;
+        return thread == null ? 0 : thread.getSensorFrameReader().getResyncCount();
+    }
+
+    public List<SensorEntry> getAvailableSensors() {
+        return availableSensors;
+    }
+    public SensorRegistry getSensorRegistry() {
+        return sensorRegistry;
+    }
+    public int getFrameLength() {
+        return frameLength;
+    }
+    /**
+     * @return true if frames carry board's tick
+     * */
+    public synchronized boolean hasBoardTick() {
+        return boardTick;
+    }
+    public boolean isShared() {
+        return shared;
+    }
+}
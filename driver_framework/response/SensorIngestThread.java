@@ -0,0 +1,91 @@
+package driver_framework.response;
+
+import driver_framework.FrameworkThread;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Continuously reads whole frames ( data of all sensors, in order of available sensors ) from sensor's input stream and puts them into each subscribed FrameRingBuffer.
+ * Keeps sensor's input stream drained even if client is slow, what happens with frames client can't keep up with depends on FrameRingBuffer.OverflowPolicy
+ *
+ * @see FrameRingBuffer
+ * @see SensorHub
+ * @see DataProviderThread
+ * */
+public class SensorIngestThread extends FrameworkThread{
+
+    private final SensorFrameReader sensorFrameReader;
+    private final List<FrameRingBuffer> frameRingBuffers = new CopyOnWriteArrayList<>();//one for each client reading sensor data
+    private final byte[] frame;//reused for each frame read
+    private volatile boolean ingesting = true;
+
+    public SensorIngestThread(InputStream sensorInputStream, FrameRingBuffer frameRingBuffer){
+        this(new SensorFrameReader(sensorInputStream, frameRingBuffer.getFrameLength()), frameRingBuffer);
+    }
+
+    public SensorIngestThread(SensorFrameReader sensorFrameReader, FrameRingBuffer frameRingBuffer){
+        this(sensorFrameReader);
+        addFrameRingBuffer(frameRingBuffer);
+    }
+
+    public SensorIngestThread(SensorFrameReader sensorFrameReader){
+        this.sensorFrameReader = sensorFrameReader;
+        this.frame = new byte[sensorFrameReader.getFrameLength()];
+        setDaemon(true);//might stay blocked on read after client disconnected
+    }
+
+    @Override
+    public void run() {
+        super.run();
+
+        while( ingesting ){
+            try {
+                if( !sensorFrameReader.readFrame(frame, 0) ) throw new IOException("While reading data from external sensor error occurred, end of stream reached");
+            } catch (IOException e) {
+                if( ingesting ) e.printStackTrace();//stream ending after stopIngesting() is expected
+                break;
+            }
+            long readNanos = System.nanoTime();//same for every client, their frames might wait in their buffers for different times
+            int boardTick = sensorFrameReader.getBoardTick();
+            for( FrameRingBuffer frameRingBuffer : frameRingBuffers )
+                frameRingBuffer.offer(frame, 0, readNanos, boardTick);
+        }
+
+        ingesting = false;
+        for( FrameRingBuffer frameRingBuffer : frameRingBuffers )
+            frameRingBuffer.close();
+    }
+
+    /**
+     * frames read from now on are also put into the given buffer
+     * */
+    public void addFrameRingBuffer(FrameRingBuffer frameRingBuffer){
+        if( frameRingBuffer.getFrameLength() != frame.length ) throw new IllegalArgumentException("Frame length of buffer doesn't match sensors' frame length");
+
+        frameRingBuffers.add(frameRingBuffer);
+        if( !ingesting )//stream already ended, there will be no frames
+            frameRingBuffer.close();
+    }
+
+    public void removeFrameRingBuffer(FrameRingBuffer frameRingBuffer){
+        frameRingBuffers.remove(frameRingBuffer);
+        frameRingBuffer.close();
+    }
+
+    public void stopIngesting(){
+        ingesting = false;
+        for( FrameRingBuffer frameRingBuffer : frameRingBuffers )
+            frameRingBuffer.close();
+    }
+
+    public boolean isIngesting() {
+        return ingesting;
+    }
+
+    public SensorFrameReader getSensorFrameReader() {
+        return sensorFrameReader;
+    }
+}
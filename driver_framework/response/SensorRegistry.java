@@ -0,0 +1,167 @@
+package driver_framework.response;
+
+import arduino_simulator.sensors.FormattedSchema;
+import arduino_simulator.sensors.PackedSink;
+import arduino_simulator.sensors.SensorEntry;
+import driver_framework.FrameworkUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * available sensors, fixed once built, with index of their ids.
+ * Sensor's index ( its position within available sensors ) is what per sensor arrays are indexed by: configurations, frame offsets, scheduler's deadlines.
+ * Ids are looked up in an open addressing table instead of scanning available sensors, for boards exposing hundreds of channels.
+ * Handshake sent on CONNECT depends only on available sensors, so it is encoded once per registry and sent as it is to every client.
+ * Formatted schemas are checked against the values sensor packs once, a sensor whose values don't match its schema sends formatted data as JSON.
+ * */
+public final class SensorRegistry {
+
+    private static final int NO_SENSOR = -1;
+    private static final Logger LOGGER = Logger.getLogger( SensorRegistry.class.getName() );
+
+    private final List<SensorEntry> sensors;
+    private final int[] sensorIDs;//open addressing table of ids, slot is taken if its index isn't NO_SENSOR
+    private final int[] sensorIndexes;
+    private final int mask;
+
+    //CONNECT_Y responses, encoded on first use. Racing threads may both encode them, result is the same
+    private volatile byte[] connectResponse = null;
+    private volatile byte[] connectResponseWithSchemas = null;
+    private volatile FormattedSchema[] formattedSchemas = null;//checked schema of each sensor, null for sensors sending JSON
+
+    public SensorRegistry(List<SensorEntry> availableSensors) {
+        this.sensors = List.copyOf(availableSensors);
+
+        int capacity = Integer.highestOneBit(Math.max(2, sensors.size() * 2 - 1)) << 1;//load factor at most 1/2
+        this.sensorIDs = new int[capacity];
+        this.sensorIndexes = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(sensorIndexes, NO_SENSOR);
+
+        for( int i = 0; i<sensors.size(); ++i ){
+            int sensorID = sensors.get(i).getSensorID();
+            int slot = slot(sensorID);
+            while( sensorIndexes[slot] != NO_SENSOR && sensorIDs[slot] != sensorID )
+                slot = (slot + 1) & mask;
+            if( sensorIndexes[slot] != NO_SENSOR ) continue;//duplicate id, first sensor having it is the one found, same as scanning would
+            sensorIDs[slot] = sensorID;
+            sensorIndexes[slot] = i;
+        }
+    }
+
+    /**
+     * @return index of sensor having given id, -1 if there is no such sensor
+     * */
+    public int indexOf(int sensorID) {
+        int slot = slot(sensorID);
+        while( sensorIndexes[slot] != NO_SENSOR ){
+            if( sensorIDs[slot] == sensorID ) return sensorIndexes[slot];
+            slot = (slot + 1) & mask;
+        }
+        return NO_SENSOR;
+    }
+
+    public SensorEntry get(int sensorIndex) {
+        return sensors.get(sensorIndex);
+    }
+
+    public int size() {
+        return sensors.size();
+    }
+
+    /**
+     * @return unmodifiable list of available sensors
+     * */
+    public List<SensorEntry> getSensors() {
+        return sensors;
+    }
+
+    /**
+     * @param withFormattedSchemas client asked for packed formatted data, sensor entries are followed by formatted schemas
+     * @return whole CONNECT_Y response: | CONNECT_Y | n sensors | sensor entry x n | ( schema length (4 bytes) | schema ) x n |. Not to be modified
+     * @see Response#CONNECT_Y
+     * */
+    public byte[] getConnectResponse(boolean withFormattedSchemas) {
+        byte[] encoded = withFormattedSchemas ? connectResponseWithSchemas : connectResponse;
+        if( encoded != null ) return encoded;
+
+        encoded = encodeConnectResponse(withFormattedSchemas);
+        if( withFormattedSchemas ) connectResponseWithSchemas = encoded;
+        else connectResponse = encoded;
+        return encoded;
+    }
+
+    /**
+     * @return sensor's formatted schema if values it packs match it, null if sensor formats its data only as JSON
+     * */
+    public FormattedSchema getFormattedSchema(int sensorIndex) {
+        FormattedSchema[] checked = formattedSchemas;
+        if( checked == null ){
+            checked = new FormattedSchema[sensors.size()];
+            for( int i = 0; i<sensors.size(); ++i )
+                checked[i] = checkFormattedSchema(sensors.get(i));
+            formattedSchemas = checked;
+        }
+        return checked[sensorIndex];
+    }
+
+    /**
+     * packs a sample of zeros the way data provider packs each sample
+     * @return sensor's schema, null if it has none or packed values don't match it
+     * */
+    private static FormattedSchema checkFormattedSchema(SensorEntry sensor) {
+        FormattedSchema formattedSchema = sensor.getFormattedSchema();
+        if( formattedSchema == null ) return null;
+
+        PackedSink packedSink = new PackedSink();
+        packedSink.reset(0, formattedSchema);
+        try {
+            sensor.formatRawData(new byte[sensor.getDataSampleByteLength()], packedSink);
+        } catch (RuntimeException e) {
+            LOGGER.warning("Sensor " + sensor.getSensorID() + " failed packing values of its formatted schema, its formatted data is sent as JSON: " + e);
+            return null;
+        }
+        if( packedSink.valuesLength() != formattedSchema.getValuesByteLength() ){
+            LOGGER.warning("Sensor " + sensor.getSensorID() + " packed " + packedSink.valuesLength() + " bytes of values, its formatted schema has " + formattedSchema.getValuesByteLength() + ". Its formatted data is sent as JSON");
+            return null;
+        }
+        return formattedSchema;
+    }
+
+    private byte[] encodeConnectResponse(boolean withFormattedSchemas) {
+        int headerLength = ResponsePackage.RESPONSE_HEADER_SIZE + ResponsePackage.RESPONSE_BODY_SIZE;
+        int n_bytes = headerLength + sensors.size() * SensorEntry.SENSOR_ENTRY_BYTE_LENGTH;
+        byte[][] schemas = new byte[sensors.size()][];
+        if( withFormattedSchemas ){
+            for( int i = 0; i<sensors.size(); ++i ){
+                FormattedSchema formattedSchema = getFormattedSchema(i);
+                schemas[i] = formattedSchema == null ? new byte[0] : formattedSchema.encode();//client gets JSON of sensors without schema
+                n_bytes += 4 + schemas[i].length;
+            }
+        }
+
+        byte[] encoded = new byte[n_bytes];
+        encoded[0] = Response.CONNECT_Y.getValue();
+        FrameworkUtils.writeInt(encoded, ResponsePackage.RESPONSE_HEADER_SIZE, sensors.size());
+        int offset = headerLength;
+        for( SensorEntry sensor : sensors ){
+            sensor.encodeSensorEntry(encoded, offset);
+            offset += SensorEntry.SENSOR_ENTRY_BYTE_LENGTH;
+        }
+        if( withFormattedSchemas ){
+            for( byte[] schema : schemas ){
+                FrameworkUtils.writeInt(encoded, offset, schema.length);
+                System.arraycopy(schema, 0, encoded, offset + 4, schema.length);
+                offset += 4 + schema.length;
+            }
+        }
+        return encoded;
+    }
+
+    private int slot(int sensorID) {
+        int hash = sensorID * 0x9E3779B9;//ids are often consecutive, spreads them over the table
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}